@@ -1,4 +1,8 @@
 module BFSPuzzleSolver {
     requires transitive javafx.controls;
+    requires static jdk.incubator.vector;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
     exports puzzles.slide.gui;
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package puzzles.benchmark;
+
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solver;
+import puzzles.crossing.CrossingConfiguration;
+import puzzles.slide.model.SlideConfig;
+import puzzles.strings.StringsConfiguration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures breadth first search throughput when several puzzle types are solved
+ * in one JVM. Run it with one workload to see that puzzle alone, and with
+ * several to see what sharing the JVM costs each of them: every workload is
+ * warmed up first, then they are timed in turn.
+ */
+public class SolverBenchmark {
+
+    /** Solves of each workload before timing starts. */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /** Timed solves of each workload. */
+    private static final int TIMED_ROUNDS = 10;
+
+    /** The workloads that can be chosen, by name. */
+    private static final Map<String, Supplier<Configuration>> WORKLOADS = new LinkedHashMap<>();
+
+    static {
+        WORKLOADS.put("slide", () -> new SlideConfig(new int[][] {{8, 6, 7}, {2, 0, 4}, {3, 5, 1}}));
+        WORKLOADS.put("strings", () -> new StringsConfiguration("AAAA", "GJHE"));
+        WORKLOADS.put("crossing", () -> new CrossingConfiguration(300, 200));
+    }
+
+    /**
+     * Solves one configuration.
+     * @param start the configuration
+     * @return the number of configurations generated and the time it took in nanoseconds
+     */
+    private static long[] solve(Configuration start) {
+        long begin = System.nanoTime();
+        Solver<Configuration> solver = new Solver<>(start);
+        solver.solve();
+        return new long[] {solver.getTotalConfigurations(), System.nanoTime() - begin};
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args the workloads to run, every one when none are given
+     */
+    public static void main(String[] args) {
+        List<String> names = new ArrayList<>(List.of(args));
+        if (names.isEmpty()) {
+            names.addAll(WORKLOADS.keySet());
+        }
+        for (String name : names) {
+            if (!WORKLOADS.containsKey(name)) {
+                System.out.println("Usage: java SolverBenchmark [" + String.join("|", WORKLOADS.keySet()) + "]...");
+                return;
+            }
+        }
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (String name : names) {
+                solve(WORKLOADS.get(name).get());
+            }
+        }
+        long[] nodes = new long[names.size()];
+        long[] nanos = new long[names.size()];
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            for (int i = 0; i < names.size(); i++) {
+                long[] run = solve(WORKLOADS.get(names.get(i)).get());
+                nodes[i] += run[0];
+                nanos[i] += run[1];
+            }
+        }
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < names.size(); i++) {
+            System.out.printf("%-9s %9d nodes/solve %10.0f nodes/s%n", names.get(i), nodes[i] / TIMED_ROUNDS,
+                    nodes[i] / (nanos[i] / 1e9));
+            totalNodes += nodes[i];
+            totalNanos += nanos[i];
+        }
+        System.out.printf("%-9s %31.0f nodes/s%n", "all", totalNodes / (totalNanos / 1e9));
+    }
+}
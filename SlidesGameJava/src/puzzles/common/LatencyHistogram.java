@@ -0,0 +1,121 @@
+package puzzles.common;
+
+/**
+ * Counts latencies in buckets that grow with the value, four per power of two,
+ * so any latency from a nanosecond to hours is kept to within 25 percent in a
+ * fixed, small array. Not thread safe: give every thread its own histogram
+ * and add them up afterwards.
+ */
+public class LatencyHistogram {
+
+    /** Buckets per power of two. */
+    private static final int SUB_BUCKETS = 4;
+
+    /** Number of buckets, enough for every positive long. */
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    /** Number of values in each bucket. */
+    private final long[] counts = new long[BUCKETS];
+
+    /** Number of values recorded. */
+    private long count;
+
+    /** Sum of the values recorded. */
+    private long sum;
+
+    /** Largest value recorded. */
+    private long max;
+
+    /**
+     * Records one latency.
+     * @param nanos the latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Finds the bucket of a value.
+     * @param value the value, not negative
+     * @return the bucket index
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return SUB_BUCKETS * (exponent - 1) + (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gives the largest value that falls in a bucket.
+     * @param bucket the bucket index
+     * @return the bucket's upper bound
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Gives the latency a share of the recorded values are at or below.
+     * @param percentile the share, from 0 to 100
+     * @return the upper bound of the bucket holding that share, at most the largest value, 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     * @return the mean in nanoseconds, 0 if empty
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+}
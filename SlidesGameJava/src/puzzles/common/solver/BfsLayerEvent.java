@@ -0,0 +1,49 @@
+package puzzles.common.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one layer of a {@link Solver}'s breadth first search, from the
+ * first expansion of the layer to the last. Only recorded while a flight
+ * recording with the event enabled is running.
+ */
+@Name("puzzles.BfsLayer")
+@Label("BFS Layer")
+@Category({"Puzzles", "Solver"})
+@Description("One layer of a breadth first search")
+public class BfsLayerEvent extends Event {
+
+    /** What is being solved. */
+    @Label("Puzzle")
+    String puzzle;
+
+    /** Depth of the layer. */
+    @Label("Depth")
+    int depth;
+
+    /** Configurations in the layer. */
+    @Label("Layer Size")
+    int layerSize;
+
+    /** Configurations waiting to be expanded at the end of the layer. */
+    @Label("Frontier Size")
+    int frontierSize;
+
+    /** Distinct configurations seen by the end of the layer. */
+    @Label("Visited")
+    int visited;
+
+    /** Configurations generated by the end of the layer. */
+    @Label("Nodes")
+    long nodes;
+
+    /** Bytes used by the off-heap store, 0 when searching on the heap. */
+    @Label("Off-Heap Bytes")
+    @DataAmount
+    long offHeapBytes;
+}
@@ -0,0 +1,430 @@
+package puzzles.common.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Breadth first search over the ranks of a {@link RankedStateSpace}, for puzzles
+ * small enough to give every configuration a bit.
+ * <p>
+ * The visited set and the two frontiers are bitsets indexed by rank, and the
+ * predecessor of each rank is packed into just enough bits to hold a rank. A
+ * layer is expanded in parallel: the frontier is cut into chunks of whole words,
+ * and each fork/join task takes the set bits of its chunk, asks the space for
+ * their neighbor ranks and claims the ones not yet visited with an atomic or.
+ * No configuration is built until the solution path is read back, so the search
+ * runs at the speed of the bitsets and the moves on ranks.
+ * <p>
+ * Memory is fixed by the size of the space, see {@link #memoryNeeded(long)},
+ * however few configurations the start reaches. Which of two neighbors in the
+ * same layer claims a configuration first varies from run to run, so the path
+ * may differ between runs, but is always as short as any. The counts only
+ * include the work done up to the layer the solution is found in.
+ *
+ * @param <C> the type of configuration
+ */
+public class BitsetSolver<C extends Configuration> {
+
+    /** Words of the frontier in one fork/join task. */
+    private static final int CHUNK_WORDS = 1024;
+
+    /** Largest array the solver allocates, in longs. */
+    private static final long MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    /** Sets bits in an atomic array. */
+    private static final LongBinaryOperator OR = (a, b) -> a | b;
+
+    /** The space the search runs on. */
+    private final RankedStateSpace<C> space;
+
+    /** The initial configuration. */
+    private final C initialConfig;
+
+    /** Number of longs in each bitset. */
+    private final int words;
+
+    /** Bits a packed predecessor takes. */
+    private final int parentBits;
+
+    /** Number of fork/join threads. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Token that stops the search when cancelled, null if the solve cannot be cancelled. */
+    private CancellationToken cancellationToken;
+
+    /** Maximum number of configurations to generate. */
+    private long nodeBudget = Solver.UNLIMITED;
+
+    /** Maximum running time in milliseconds. */
+    private long timeBudgetMillis = Solver.UNLIMITED;
+
+    /** Listener for progress reports, null if nobody is listening. */
+    private ProgressListener progressListener;
+
+    /** Milliseconds between two progress reports. */
+    private long progressIntervalMillis;
+
+    /** Ranks seen so far. */
+    private AtomicLongArray visited;
+
+    /** Ranks of the layer being expanded. */
+    private long[] frontier;
+
+    /** Ranks found while expanding the layer, the next frontier. */
+    private AtomicLongArray next;
+
+    /** The predecessor of every visited rank but the start, parentBits each. */
+    private AtomicLongArray parents;
+
+    /** Rank of the initial configuration. */
+    private long startRank;
+
+    /** Rank of the solution, -1 until one is found. */
+    private final AtomicLong solution = new AtomicLong(-1);
+
+    /** Number of configurations generated. */
+    private final LongAdder totalConfigurations = new LongAdder();
+
+    /** Number of distinct configurations seen. */
+    private final LongAdder uniqueConfigurations = new LongAdder();
+
+    /** Why the search stopped early, null while it may go on. */
+    private volatile SolveOutcome stopped;
+
+    /** Time the search must stop at, in nanoseconds. */
+    private long deadline;
+
+    /** Depth of the layer being expanded. */
+    private int depth;
+
+    /**
+     * Prepares a search of a space from a configuration.
+     * @param space the ranks of the puzzle's configurations
+     * @param initialConfig the configuration to solve
+     * @throws IllegalArgumentException if the space has too many ranks for bitsets
+     */
+    public BitsetSolver(RankedStateSpace<C> space, C initialConfig) {
+        long size = space.size();
+        if (size <= 0 || bitsetWords(size) > MAX_WORDS || parentWords(size) > MAX_WORDS) {
+            throw new IllegalArgumentException("A space of " + size + " configurations does not fit in bitsets");
+        }
+        this.space = space;
+        this.initialConfig = initialConfig;
+        this.words = (int) bitsetWords(size);
+        this.parentBits = bitsFor(size);
+    }
+
+    /**
+     * Gives the memory a search of a space takes, whatever the start.
+     * @param size the number of ranks of the space
+     * @return the size of the bitsets and the packed predecessors, in bytes
+     */
+    public static long memoryNeeded(long size) {
+        return (3 * bitsetWords(size) + parentWords(size)) * Long.BYTES;
+    }
+
+    /**
+     * Gives the number of longs in a bitset of a space.
+     * @param size the number of ranks
+     * @return the number of longs
+     */
+    private static long bitsetWords(long size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * Gives the number of longs holding the packed predecessors of a space.
+     * @param size the number of ranks
+     * @return the number of longs, one more than needed so the last entry may spill over
+     */
+    private static long parentWords(long size) {
+        double bits = (double) size * bitsFor(size);
+        return bits / 64 >= MAX_WORDS ? Long.MAX_VALUE : (long) (bits / 64) + 2;
+    }
+
+    /**
+     * Gives the number of bits a rank of a space takes.
+     * @param size the number of ranks
+     * @return the number of bits, at least 1
+     */
+    private static int bitsFor(long size) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(size - 1));
+    }
+
+    /**
+     * Sets the number of threads the layers are expanded on.
+     * @param threads the number of threads, one per core by default
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the token checked by the search, cancelling it makes solve return CANCELLED.
+     * @param cancellationToken the token, or null to make the solve uncancellable
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Limits the number of configurations the search may generate.
+     * @param nodeBudget the maximum number of generated configurations, or UNLIMITED
+     */
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Limits how long the search may run.
+     * @param timeBudgetMillis the maximum running time in milliseconds, or UNLIMITED
+     */
+    public void setTimeBudget(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Registers a listener told about the search at the end of a layer, at most once per interval.
+     * @param progressListener the listener, or null to stop reporting
+     * @param intervalMillis the least time between two reports in milliseconds
+     */
+    public void setProgressListener(ProgressListener progressListener, long intervalMillis) {
+        this.progressListener = progressListener;
+        this.progressIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Searches the space one layer at a time until a solution is found.
+     * @return SOLVED, NO_SOLUTION if every configuration the start reaches was seen,
+     *         CANCELLED or BUDGET_EXCEEDED
+     */
+    public SolveOutcome solve() {
+        long startNanos = System.nanoTime();
+        deadline = timeBudgetMillis == Solver.UNLIMITED ? Long.MAX_VALUE
+                : startNanos + timeBudgetMillis * 1_000_000;
+        visited = new AtomicLongArray(words);
+        frontier = new long[words];
+        next = new AtomicLongArray(words);
+        parents = new AtomicLongArray((int) parentWords(space.size()));
+        totalConfigurations.reset();
+        uniqueConfigurations.reset();
+        solution.set(-1);
+        stopped = null;
+        depth = 0;
+        startRank = space.rank(initialConfig);
+        visited.set((int) (startRank >>> 6), 1L << startRank);
+        frontier[(int) (startRank >>> 6)] = 1L << startRank;
+        if (space.isSolution(startRank)) {
+            solution.set(startRank);
+            return SolveOutcome.SOLVED;
+        }
+        int chunks = (words + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        long lastReport = startNanos;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long frontierSize = 1;
+            while (frontierSize > 0) {
+                submit(pool, () -> {
+                    IntStream.range(0, chunks).parallel().forEach(this::expand);
+                    return null;
+                });
+                if (solution.get() >= 0) {
+                    return SolveOutcome.SOLVED;
+                }
+                if (stopped != null) {
+                    return stopped;
+                }
+                frontierSize = submit(pool, () -> IntStream.range(0, chunks).parallel().mapToLong(this::advance).sum());
+                depth++;
+                long now = System.nanoTime();
+                if (progressListener != null && now - lastReport >= progressIntervalMillis * 1_000_000) {
+                    lastReport = now;
+                    long nodes = totalConfigurations.sum();
+                    progressListener.onProgress(depth, (int) Math.min(frontierSize, Integer.MAX_VALUE), nodes,
+                            nodes / (Math.max(now - startNanos, 1) / 1e9));
+                }
+            }
+            return SolveOutcome.NO_SOLUTION;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SolveOutcome.CANCELLED;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a task on the pool so parallel streams use its threads.
+     * @param pool the pool
+     * @param task the task
+     * @param <T> the type of result
+     * @return the result of the task
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    private static <T> T submit(ForkJoinPool pool, Callable<T> task) throws InterruptedException {
+        try {
+            return pool.submit(task).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Checks the token and the budgets, and records why the search has to stop.
+     * @return true if the search has to stop
+     */
+    private boolean mustStop() {
+        if (stopped != null || solution.get() >= 0) {
+            return true;
+        }
+        if (cancellationToken != null && cancellationToken.isCancelled()) {
+            stopped = SolveOutcome.CANCELLED;
+        } else if (totalConfigurations.sum() >= nodeBudget || System.nanoTime() > deadline) {
+            stopped = SolveOutcome.BUDGET_EXCEEDED;
+        }
+        return stopped != null;
+    }
+
+    /**
+     * Expands the frontier ranks of one chunk, claiming their unvisited neighbors
+     * for the next frontier.
+     * @param chunk the number of the chunk
+     */
+    private void expand(int chunk) {
+        if (mustStop()) {
+            return;
+        }
+        int from = chunk * CHUNK_WORDS;
+        int to = Math.min(from + CHUNK_WORDS, words);
+        RankedStateSpace.Expander expander = space.expander();
+        long[] neighbors = new long[space.maxNeighbors()];
+        long generated = 0;
+        long found = 0;
+        for (int word = from; word < to && solution.get() < 0; word++) {
+            for (long bits = frontier[word]; bits != 0; bits &= bits - 1) {
+                long rank = ((long) word << 6) | Long.numberOfTrailingZeros(bits);
+                int count = expander.neighbors(rank, neighbors);
+                generated += count;
+                for (int i = 0; i < count; i++) {
+                    long neighbor = neighbors[i];
+                    if (claim(neighbor)) {
+                        found++;
+                        setParent(neighbor, rank);
+                        next.getAndAccumulate((int) (neighbor >>> 6), 1L << neighbor, OR);
+                        if (space.isSolution(neighbor)) {
+                            solution.compareAndSet(-1, neighbor);
+                        }
+                    }
+                }
+            }
+        }
+        totalConfigurations.add(generated);
+        uniqueConfigurations.add(found);
+    }
+
+    /**
+     * Moves the next frontier of one chunk into the frontier and clears it.
+     * @param chunk the number of the chunk
+     * @return the number of ranks in the chunk's new frontier
+     */
+    private long advance(int chunk) {
+        int from = chunk * CHUNK_WORDS;
+        int to = Math.min(from + CHUNK_WORDS, words);
+        long count = 0;
+        for (int word = from; word < to; word++) {
+            long bits = next.getAndSet(word, 0);
+            frontier[word] = bits;
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Marks a rank visited.
+     * @param rank the rank
+     * @return true if this call marked it, false if it was already visited
+     */
+    private boolean claim(long rank) {
+        int word = (int) (rank >>> 6);
+        long bit = 1L << rank;
+        if ((visited.get(word) & bit) != 0) {
+            return false;
+        }
+        return (visited.getAndAccumulate(word, bit, OR) & bit) == 0;
+    }
+
+    /**
+     * Records the predecessor of a rank. Each rank is claimed once, so its bits
+     * are still zero and can be or-ed in, even when the entry spans two longs.
+     * @param rank the rank
+     * @param parent the rank it was reached from
+     */
+    private void setParent(long rank, long parent) {
+        long bit = rank * parentBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        parents.getAndAccumulate(word, parent << shift, OR);
+        if (shift + parentBits > 64) {
+            parents.getAndAccumulate(word + 1, parent >>> (64 - shift), OR);
+        }
+    }
+
+    /**
+     * Reads the predecessor of a rank.
+     * @param rank the rank
+     * @return the rank it was reached from
+     */
+    private long getParent(long rank) {
+        long bit = rank * parentBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = parents.get(word) >>> shift;
+        if (shift + parentBits > 64) {
+            value |= parents.get(word + 1) << (64 - shift);
+        }
+        return value & ((1L << parentBits) - 1);
+    }
+
+    /**
+     * Returns the solution path, building its configurations from their ranks.
+     * @return the path from the initial configuration to the solution, empty if no solution was found
+     */
+    public List<C> getSolutionPath() {
+        List<C> path = new ArrayList<>();
+        long rank = solution.get();
+        if (rank < 0) {
+            return path;
+        }
+        for (; rank != startRank; rank = getParent(rank)) {
+            path.add(space.unrank(rank));
+        }
+        path.add(initialConfig);
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Returns the number of configurations generated during the search.
+     * @return total number of configurations
+     */
+    public long getTotalConfigurations() {
+        return totalConfigurations.sum();
+    }
+
+    /**
+     * Returns the number of distinct configurations reached from the start, as Solver counts them.
+     * @return the number of unique configurations
+     */
+    public long getUniqueConfigurations() {
+        return uniqueConfigurations.sum();
+    }
+}
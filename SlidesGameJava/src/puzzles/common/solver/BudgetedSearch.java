@@ -0,0 +1,21 @@
+package puzzles.common.solver;
+
+/**
+ * A search that stops with BUDGET_EXCEEDED once it has generated too many
+ * configurations or run for too long, so SolverOptions can apply --nodes and
+ * --time to it.
+ */
+public interface BudgetedSearch {
+
+    /**
+     * Limits the number of configurations the search may generate.
+     * @param nodeBudget the maximum number of generated configurations, or Solver.UNLIMITED
+     */
+    void setNodeBudget(long nodeBudget);
+
+    /**
+     * Limits the time the search may run.
+     * @param timeBudgetMillis the maximum running time in milliseconds, or Solver.UNLIMITED
+     */
+    void setTimeBudget(long timeBudgetMillis);
+}
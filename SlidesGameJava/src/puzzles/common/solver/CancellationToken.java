@@ -0,0 +1,26 @@
+package puzzles.common.solver;
+
+/**
+ * A flag shared between a running search and the code that wants to stop it.
+ * Any thread may cancel the token, the search checks it between expansions.
+ */
+public class CancellationToken {
+
+    /** Whether cancel has been called. */
+    private volatile boolean cancelled;
+
+    /**
+     * Asks every search holding this token to stop as soon as possible.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the token has been cancelled.
+     * @return true if cancel was called, false otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -1,6 +1,7 @@
 package puzzles.common.solver;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * Represents a configuration or state in a problem-solving domain.
@@ -22,6 +23,32 @@ public interface Configuration {
      */
     Collection<Configuration> getNeighbors();
 
+    /**
+     * Iterates over the neighboring configurations in the order getNeighbors
+     * gives them. Configurations that can make each neighbor on demand override
+     * this, so a search that stops at a neighbor never builds the ones after it.
+     * @return an iterator over the neighboring configurations
+     */
+    default Iterator<Configuration> neighborIterator() {
+        return getNeighbors().iterator();
+    }
+
+    /**
+     * Iterates over the neighbors a search still has to look at, in neighbor
+     * order. Configurations that remember the move that made them leave out
+     * neighbors that are reached as quickly some other way: the one the move
+     * that undoes it leads back to, and, where moves commute, the ones that
+     * make the same moves in a different order. A breadth first search still
+     * reaches every configuration at its shortest distance, as long as it
+     * expands its own start with neighborIterator, since the move that made
+     * the start was not made by the search. Configurations that were not made
+     * by a move, and puzzles without such rules, give every neighbor.
+     * @return an iterator over the neighbors worth searching
+     */
+    default Iterator<Configuration> successorIterator() {
+        return neighborIterator();
+    }
+
     /**
      * Compares the current configuration with another object for equality.
      * @param other The object to compare with.
@@ -0,0 +1,34 @@
+package puzzles.common.solver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts configurations of one puzzle to and from a compact binary form.
+ * Anything a configuration shares with every other configuration of the same
+ * solve (a target string, a goal board) belongs to the codec, not to the encoding.
+ *
+ * @param <C> the type of configuration this codec handles
+ */
+public interface ConfigurationCodec<C extends Configuration> {
+
+    /**
+     * Gives the number of bytes encode will write for a configuration.
+     * @param config the configuration to measure
+     * @return the encoded size in bytes
+     */
+    int encodedSize(C config);
+
+    /**
+     * Writes a configuration at the buffer's position and advances the position.
+     * @param config the configuration to write
+     * @param out the buffer to write into, with at least encodedSize bytes remaining
+     */
+    void encode(C config, ByteBuffer out);
+
+    /**
+     * Reads a configuration at the buffer's position and advances the position.
+     * @param in the buffer to read from
+     * @return the decoded configuration
+     */
+    C decode(ByteBuffer in);
+}
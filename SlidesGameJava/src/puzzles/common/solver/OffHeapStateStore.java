@@ -0,0 +1,265 @@
+package puzzles.common.solver;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The visited set and frontier of a breadth first search, kept outside the Java heap.
+ * <p>
+ * Every configuration is stored once, encoded, as a fixed-width record followed
+ * by the index of its predecessor. Records are appended in the order they are
+ * found, which for a breadth first search is also the order they are expanded
+ * in, so the frontier is simply the records from the next one to expand up to
+ * the last one and needs no queue of its own. Lookups go through an open
+ * addressing table of record indices. Records and table live in direct buffers,
+ * the heap only holds the handful of buffer objects, so the garbage collector
+ * has nothing to trace however large the search grows.
+ * <p>
+ * The memory is bounded by a budget given up front. An insert that would need
+ * more reports FULL instead. The memory goes back to the system when the store
+ * is no longer referenced.
+ */
+public class OffHeapStateStore {
+
+    /** Returned by add when the configuration was stored before. */
+    public static final int PRESENT = -1;
+
+    /** Returned by add when storing the configuration would go over the budget. */
+    public static final int FULL = -2;
+
+    /** Largest size of the buffers records are appended to. */
+    private static final int CHUNK_BYTES = 16 << 20;
+
+    /** Slots in the first lookup table. */
+    private static final int INITIAL_SLOTS = 1 << 16;
+
+    /** How full the lookup table may get, in eighths, before it is doubled. */
+    private static final int MAX_LOAD_EIGHTHS = 6;
+
+    /** Number of bytes of an encoded configuration. */
+    private final int width;
+
+    /** Number of bytes of a record, the configuration and its predecessor. */
+    private final int recordBytes;
+
+    /** Number of records in each chunk. */
+    private final int recordsPerChunk;
+
+    /** Most bytes the store may allocate. */
+    private final long budgetBytes;
+
+    /** Bytes allocated so far. */
+    private long usedBytes;
+
+    /** The record chunks, filled one after the other. */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /** Lookup table, each slot holds a record index plus one, 0 when empty. */
+    private ByteBuffer table;
+
+    /** Number of slots of the table minus one, the table size is a power of two. */
+    private int mask;
+
+    /** Number of records. */
+    private int size;
+
+    /**
+     * Creates an empty store.
+     * @param width the number of bytes every encoded configuration takes
+     * @param budgetBytes the most memory the store may allocate
+     */
+    public OffHeapStateStore(int width, long budgetBytes) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Record width must be positive: " + width);
+        }
+        this.width = width;
+        this.recordBytes = width + Integer.BYTES;
+        // small budgets get small chunks, so a chunk never takes more than a quarter of the budget
+        this.recordsPerChunk = (int) Math.max(1, Math.min(CHUNK_BYTES, budgetBytes / 4) / recordBytes);
+        this.budgetBytes = budgetBytes;
+        if (!reserve((long) INITIAL_SLOTS * Integer.BYTES)) {
+            throw new IllegalArgumentException("Budget of " + budgetBytes + " bytes is too small for the lookup table");
+        }
+        this.table = ByteBuffer.allocateDirect(INITIAL_SLOTS * Integer.BYTES);
+        this.mask = INITIAL_SLOTS - 1;
+    }
+
+    /**
+     * Stores a configuration unless it is stored already.
+     * @param state the encoded configuration, width bytes from position 0
+     * @param predecessor the index of the configuration it was reached from, -1 for the start
+     * @return the index of the new record, PRESENT or FULL
+     */
+    public int add(ByteBuffer state, int predecessor) {
+        int slot = hash(state, 0) & mask;
+        int entry;
+        while ((entry = table.getInt(slot * Integer.BYTES)) != 0) {
+            if (matches(entry - 1, state)) {
+                return PRESENT;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((long) (size + 1) * 8 > (long) (mask + 1) * MAX_LOAD_EIGHTHS) {
+            if (!grow()) {
+                return FULL;
+            }
+            slot = hash(state, 0) & mask;
+            while (table.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (size % recordsPerChunk == 0) {
+            long chunkBytes = (long) recordsPerChunk * recordBytes;
+            if (!reserve(chunkBytes)) {
+                return FULL;
+            }
+            chunks.add(ByteBuffer.allocateDirect((int) chunkBytes));
+        }
+        int index = size;
+        ByteBuffer chunk = chunks.get(index / recordsPerChunk);
+        int offset = (index % recordsPerChunk) * recordBytes;
+        chunk.put(offset, state, 0, width);
+        chunk.putInt(offset + width, predecessor);
+        size++;
+        table.putInt(slot * Integer.BYTES, index + 1);
+        return index;
+    }
+
+    /**
+     * Finds a stored configuration.
+     * @param state the encoded configuration, width bytes from position 0
+     * @return the index of its record, -1 if it is not stored
+     */
+    public int indexOf(ByteBuffer state) {
+        int slot = hash(state, 0) & mask;
+        int entry;
+        while ((entry = table.getInt(slot * Integer.BYTES)) != 0) {
+            if (matches(entry - 1, state)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Estimates how many configurations fit in a budget. Besides its record, each one
+     * needs a slot of the lookup table, which is kept at most three quarters full and
+     * may be up to twice the size that needs.
+     * @param width the number of bytes every encoded configuration takes
+     * @param budgetBytes the most memory the store may allocate
+     * @return about the most records a store with this budget can hold
+     */
+    public static long capacity(int width, long budgetBytes) {
+        long tableBytes = 2L * Integer.BYTES * 8 / MAX_LOAD_EIGHTHS;
+        return budgetBytes / (width + Integer.BYTES + tableBytes);
+    }
+
+    /**
+     * Doubles the lookup table and puts every record back in it.
+     * @return false if the larger table does not fit the budget
+     */
+    private boolean grow() {
+        int slots = (mask + 1) * 2;
+        if (slots <= 0 || !reserve((long) slots * Integer.BYTES)) {
+            return false;
+        }
+        usedBytes -= (long) (mask + 1) * Integer.BYTES;
+        ByteBuffer larger = ByteBuffer.allocateDirect(slots * Integer.BYTES);
+        int largerMask = slots - 1;
+        for (int index = 0; index < size; index++) {
+            ByteBuffer chunk = chunks.get(index / recordsPerChunk);
+            int slot = hash(chunk, (index % recordsPerChunk) * recordBytes) & largerMask;
+            while (larger.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & largerMask;
+            }
+            larger.putInt(slot * Integer.BYTES, index + 1);
+        }
+        table = larger;
+        mask = largerMask;
+        return true;
+    }
+
+    /**
+     * Counts memory against the budget.
+     * @param bytes the bytes about to be allocated
+     * @return false if they would go over the budget
+     */
+    private boolean reserve(long bytes) {
+        if (usedBytes + bytes > budgetBytes) {
+            return false;
+        }
+        usedBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Hashes an encoded configuration.
+     * @param buffer the buffer holding it
+     * @param offset where it starts
+     * @return the hash
+     */
+    private int hash(ByteBuffer buffer, int offset) {
+        int hash = 1;
+        for (int i = 0; i < width; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compares a record with an encoded configuration.
+     * @param index the record index
+     * @param state the encoded configuration, from position 0
+     * @return true if the record holds the same bytes
+     */
+    private boolean matches(int index, ByteBuffer state) {
+        ByteBuffer chunk = chunks.get(index / recordsPerChunk);
+        int offset = (index % recordsPerChunk) * recordBytes;
+        for (int i = 0; i < width; i++) {
+            if (chunk.get(offset + i) != state.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives a view of the encoded configuration of a record.
+     * @param index the record index
+     * @return a buffer holding just the configuration's bytes
+     */
+    public ByteBuffer state(int index) {
+        int offset = (index % recordsPerChunk) * recordBytes;
+        return chunks.get(index / recordsPerChunk).slice(offset, width);
+    }
+
+    /**
+     * Gives the predecessor of a record.
+     * @param index the record index
+     * @return the index of its predecessor, -1 for the start
+     */
+    public int predecessor(int index) {
+        int offset = (index % recordsPerChunk) * recordBytes;
+        return chunks.get(index / recordsPerChunk).getInt(offset + width);
+    }
+
+    /**
+     * Returns the number of stored configurations.
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the memory the store has allocated.
+     * @return the allocated bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,18 @@
+package puzzles.common.solver;
+
+/**
+ * Receives periodic progress reports from a running {@link Solver}.
+ * Reports are made on the solving thread, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called by the solver at the configured cadence.
+     * @param depth the depth of the BFS layer currently being expanded
+     * @param frontierSize the number of configurations waiting in the queue
+     * @param nodes the number of configurations generated so far
+     * @param nodesPerSecond the average generation rate since the solve started
+     */
+    void onProgress(int depth, int frontierSize, long nodes, double nodesPerSecond);
+}
@@ -0,0 +1,71 @@
+package puzzles.common.solver;
+
+/**
+ * Numbers every configuration of a puzzle with a rank from 0 to size - 1, one
+ * rank per configuration, and makes the moves on ranks directly. A search that
+ * only handles ranks, like {@link BitsetSolver}, needs a bit per configuration
+ * for its visited set and never builds a configuration until it has a solution.
+ * Like a codec, the space belongs to one solve and holds what its
+ * configurations share, such as the target string or the goal board.
+ *
+ * @param <C> the type of configuration the ranks stand for
+ */
+public interface RankedStateSpace<C extends Configuration> {
+
+    /**
+     * Gives the number of ranks, which may count configurations the start cannot reach.
+     * @return the size of the space
+     */
+    long size();
+
+    /**
+     * Gives the rank of a configuration.
+     * @param config the configuration
+     * @return its rank, from 0 to size - 1
+     * @throws IllegalArgumentException if the configuration is not in this space
+     */
+    long rank(C config);
+
+    /**
+     * Builds the configuration of a rank.
+     * @param rank the rank, from 0 to size - 1
+     * @return the configuration
+     */
+    C unrank(long rank);
+
+    /**
+     * Checks whether the configuration of a rank is a solution.
+     * @param rank the rank
+     * @return true if it is a solution
+     */
+    boolean isSolution(long rank);
+
+    /**
+     * Gives the most neighbors a configuration of this space has.
+     * @return the largest number of ranks an expander writes for one rank
+     */
+    int maxNeighbors();
+
+    /**
+     * Makes an expander for one search thread. Expanders may keep scratch space,
+     * so each thread needs its own.
+     * @return a new expander
+     */
+    Expander expander();
+
+    /**
+     * Lists the neighbors of ranks, as ranks.
+     */
+    @FunctionalInterface
+    interface Expander {
+
+        /**
+         * Writes the ranks of the neighbors of a rank, in the order the
+         * configuration's neighborIterator gives them.
+         * @param rank the rank to expand
+         * @param neighbors where to write the neighbor ranks, at least maxNeighbors long
+         * @return the number of ranks written
+         */
+        int neighbors(long rank, long[] neighbors);
+    }
+}
@@ -0,0 +1,325 @@
+package puzzles.common.solver;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Answers many solves that share one target with a single search run backwards from it.
+ * <p>
+ * build runs a breadth first search from the target over predecessors, up to a
+ * radius or until every configuration that can reach the target is found. The
+ * configurations are kept encoded in an OffHeapStateStore, a few bytes each.
+ * They are stored in the order they are found, so the distance of each one to
+ * the target is the layer its record falls in and needs no room of its own, and
+ * the predecessor of each record is the configuration it was found from, which
+ * is the next move towards the target.
+ * <p>
+ * A start inside the cache is answered by following the next moves. Any other
+ * start gets a forward breadth first search that stops as soon as it meets the
+ * cache. Every configuration the forward search meets first lies on the edge of
+ * the cache, at the full radius from the target, so the path through the first
+ * one found is a shortest one. When the backward search ran to completion a
+ * start outside the cache cannot reach the target at all.
+ * <p>
+ * The node budget and the memory budget bound the backward search as well as the
+ * forward ones. A backward search that runs out of either keeps the layers it
+ * finished.
+ *
+ * @param <C> the type of configuration, every start must aim for the cache's target
+ */
+public class ReverseSearchCache<C extends ReversibleConfiguration> {
+
+    /** Radius that lets the backward search run to completion. */
+    public static final int UNLIMITED_RADIUS = Integer.MAX_VALUE;
+
+    /** Memory the cache may take when no budget is set, a quarter of the heap's limit. */
+    public static final long DEFAULT_MEMORY_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    /** The configuration every solve aims for. */
+    private final C target;
+
+    /** How configurations are encoded for the cache. */
+    private final ConfigurationCodec<C> codec;
+
+    /** Number of bytes of an encoded configuration, the target's. */
+    private final int width;
+
+    /** Buffer configurations are encoded into before they are looked up or stored. */
+    private final ByteBuffer scratch;
+
+    /** The cached configurations, in the order the backward search found them. */
+    private OffHeapStateStore store;
+
+    /** Number of records of the finished layers, later records are ignored. */
+    private int cached;
+
+    /** Largest distance in the cache. */
+    private int radius;
+
+    /** Whether the backward search found every configuration that can reach the target. */
+    private boolean complete;
+
+    /** Maximum number of configurations a backward or forward search may generate. */
+    private long nodeBudget = Solver.UNLIMITED;
+
+    /** Most memory the cached configurations may take. */
+    private long memoryBudget = DEFAULT_MEMORY_BYTES;
+
+    /** The solution path of the last solve. */
+    private final List<C> solution = new ArrayList<>();
+
+    /** Number of configurations the last backward search generated. */
+    private long backwardConfigurations;
+
+    /** Number of configurations the last forward search generated. */
+    private long forwardConfigurations;
+
+    /**
+     * Creates an empty cache for a target.
+     * @param target the configuration every solve aims for
+     * @param codec how configurations are encoded for the cache
+     */
+    public ReverseSearchCache(C target, ConfigurationCodec<C> codec) {
+        this.target = target;
+        this.codec = codec;
+        this.width = codec.encodedSize(target);
+        this.scratch = ByteBuffer.allocate(width);
+    }
+
+    /**
+     * Runs the backward search from the target, replacing whatever was cached.
+     * @param maxRadius the largest distance to cache, or UNLIMITED_RADIUS
+     * @return SOLVED once the cache is built, or BUDGET_EXCEEDED if the node or memory
+     *         budget ran out first, in which case the layers finished so far are cached
+     * @throws IllegalStateException if a predecessor does not encode to as many bytes as the target
+     */
+    @SuppressWarnings("unchecked")
+    public SolveOutcome build(int maxRadius) {
+        if (maxRadius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative: " + maxRadius);
+        }
+        store = new OffHeapStateStore(width, memoryBudget);
+        store.add(encode(target), -1);
+        cached = 1;
+        radius = 0;
+        complete = false;
+        backwardConfigurations = 0;
+        int layerStart = 0;
+        while (radius < maxRadius) {
+            for (int index = layerStart; index < cached; index++) {
+                C config = codec.decode(store.state(index));
+                for (Configuration predecessor : config.getPredecessors()) {
+                    backwardConfigurations++;
+                    if (codec.encodedSize((C) predecessor) != width) {
+                        throw new IllegalStateException("Predecessor " + predecessor + " of " + config
+                                + " does not encode to " + width + " bytes like the target");
+                    }
+                    if (store.add(encode((C) predecessor), index) == OffHeapStateStore.FULL
+                            || backwardConfigurations >= nodeBudget) {
+                        return SolveOutcome.BUDGET_EXCEEDED;
+                    }
+                }
+            }
+            if (store.size() == cached) {
+                complete = true;
+                break;
+            }
+            layerStart = cached;
+            cached = store.size();
+            radius++;
+        }
+        return SolveOutcome.SOLVED;
+    }
+
+    /**
+     * Limits the number of configurations the backward search and each forward search may generate.
+     * @param nodeBudget the maximum number of generated configurations, or Solver.UNLIMITED
+     */
+    public void setNodeBudget(long nodeBudget) {
+        if (nodeBudget <= 0) {
+            throw new IllegalArgumentException("Node budget must be positive: " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Limits the memory the cached configurations may take.
+     * @param memoryBudget the most bytes the cache may allocate
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Checks whether a number of configurations fits in the memory budget, so that
+     * a backward search over all of them can run to completion.
+     * @param configurations the number of configurations
+     * @return true if about that many fit
+     */
+    public boolean fits(double configurations) {
+        return configurations <= OffHeapStateStore.capacity(width, memoryBudget);
+    }
+
+    /**
+     * Finds a shortest path from a start to the target.
+     * @param start the configuration to start from, aiming for the cache's target
+     * @return SOLVED, NO_SOLUTION, or BUDGET_EXCEEDED if the forward search ran out of nodes
+     * @throws IllegalStateException if build was not called
+     */
+    @SuppressWarnings("unchecked")
+    public SolveOutcome solve(C start) {
+        if (store == null) {
+            throw new IllegalStateException("The cache has not been built");
+        }
+        solution.clear();
+        forwardConfigurations = 0;
+        int index = indexOf(start);
+        if (index >= 0) {
+            walkDown(start, index);
+            return SolveOutcome.SOLVED;
+        }
+        if (complete) {
+            return SolveOutcome.NO_SOLUTION;
+        }
+        Map<C, C> predecessor = new HashMap<>();
+        predecessor.put(start, null);
+        Queue<C> queue = new LinkedList<>();
+        queue.offer(start);
+        while (!queue.isEmpty()) {
+            C current = queue.poll();
+            // the start may have been made by a move that is worth undoing
+            Iterator<Configuration> successors = current == start
+                    ? current.neighborIterator() : current.successorIterator();
+            while (successors.hasNext()) {
+                C neighbor = (C) successors.next();
+                forwardConfigurations++;
+                if (predecessor.containsKey(neighbor)) {
+                    continue;
+                }
+                predecessor.put(neighbor, current);
+                index = indexOf(neighbor);
+                if (index >= 0) {
+                    // met the cache, its edge is at the same distance everywhere
+                    for (C step = current; step != null; step = predecessor.get(step)) {
+                        solution.add(step);
+                    }
+                    Collections.reverse(solution);
+                    walkDown(neighbor, index);
+                    return SolveOutcome.SOLVED;
+                }
+                queue.offer(neighbor);
+            }
+            if (forwardConfigurations >= nodeBudget) {
+                return SolveOutcome.BUDGET_EXCEEDED;
+            }
+        }
+        return SolveOutcome.NO_SOLUTION;
+    }
+
+    /**
+     * Adds the path from a cached configuration to the target to the solution,
+     * following the next move kept with each record.
+     * @param config a configuration in the cache
+     * @param index the index of its record
+     * @throws IllegalStateException if a next move is not one of the configuration's
+     *         neighbors, which means its predecessors and neighbors disagree
+     */
+    private void walkDown(C config, int index) {
+        solution.add(config);
+        for (int next = store.predecessor(index); next >= 0; next = store.predecessor(next)) {
+            C closer = codec.decode(store.state(next));
+            boolean moves = false;
+            for (Iterator<Configuration> neighbors = config.neighborIterator(); neighbors.hasNext() && !moves; ) {
+                moves = neighbors.next().equals(closer);
+            }
+            if (!moves) {
+                throw new IllegalStateException("No move turns " + config + " into " + closer
+                        + ", its predecessors do not match its neighbors");
+            }
+            config = closer;
+            solution.add(config);
+        }
+    }
+
+    /**
+     * Looks a configuration up in the finished layers of the cache.
+     * @param config the configuration
+     * @return the index of its record, -1 if it is not cached
+     */
+    private int indexOf(C config) {
+        if (codec.encodedSize(config) != width) {
+            return -1;
+        }
+        int index = store.indexOf(encode(config));
+        return index < cached ? index : -1;
+    }
+
+    /**
+     * Encodes a configuration into the scratch buffer.
+     * @param config the configuration, encoding to width bytes
+     * @return the scratch buffer, holding the encoded bytes from position 0
+     */
+    private ByteBuffer encode(C config) {
+        scratch.clear();
+        codec.encode(config, scratch);
+        return scratch.flip();
+    }
+
+    /**
+     * Returns the solution path of the last solve, starting with its start.
+     * @return the solution path, empty if no solution was found
+     */
+    public List<C> getSolutionPath() {
+        return solution;
+    }
+
+    /**
+     * Returns the number of configurations the last backward search generated.
+     * @return the number of predecessors made while building the cache
+     */
+    public long getBackwardConfigurations() {
+        return backwardConfigurations;
+    }
+
+    /**
+     * Returns the number of configurations the last forward search generated.
+     * @return 0 when the start was already cached
+     */
+    public long getForwardConfigurations() {
+        return forwardConfigurations;
+    }
+
+    /**
+     * Returns the number of cached configurations.
+     * @return the size of the cache
+     */
+    public int size() {
+        return cached;
+    }
+
+    /**
+     * Returns the largest distance in the cache.
+     * @return the radius the backward search reached
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Checks whether the backward search found every configuration that can reach the target.
+     * @return true if starts outside the cache have no solution
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
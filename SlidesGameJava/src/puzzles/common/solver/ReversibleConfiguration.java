@@ -0,0 +1,17 @@
+package puzzles.common.solver;
+
+import java.util.Collection;
+
+/**
+ * A configuration whose predecessors can be listed, so a search can run
+ * backwards from the goal. Puzzles whose every move can be undone in one move
+ * simply return their neighbors.
+ */
+public interface ReversibleConfiguration extends Configuration {
+
+    /**
+     * Retrieves the configurations that have this one among their neighbors.
+     * @return A collection of predecessor configurations.
+     */
+    Collection<Configuration> getPredecessors();
+}
@@ -0,0 +1,599 @@
+package puzzles.common.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Solutions kept on disk, shared by every process that solves the same puzzles.
+ * <p>
+ * The cache is a directory with two files. The log holds one record per solve:
+ * the key, which is the puzzle name and the encoded start and target
+ * configurations, the outcome with the search counts, and the solution as the
+ * position of each step among the neighbors of the step before it, mostly one
+ * byte per move. Records are only ever appended. The index is a memory-mapped
+ * open addressing table from the hash of a key to the offset of its newest
+ * record. The index can always be rebuilt from the log, so it is not forced to
+ * disk; the log is forced before the index points into it.
+ * <p>
+ * Every record carries a CRC32. A record that fails it, or whose moves do not
+ * lead from the start to a solution, is treated as missing. A damaged index
+ * header, or an index left behind by a crash in the middle of a compaction, is
+ * rebuilt from the log up to its first damaged record.
+ * <p>
+ * Processes take an exclusive lock on the index for every lookup and store.
+ * Within a process the methods are synchronized, and one SolutionCache per
+ * directory must be used, as file locks belong to the whole process. When the
+ * log would grow past its size bound, or the index gets too full, the cache is
+ * compacted: the newest records that fit in half the bound, and number at most
+ * half of what the index may hold, three eighths of its slots, are copied to a
+ * new log which replaces the old one, and the rest are evicted.
+ */
+public class SolutionCache implements Closeable {
+
+    /** Size bound of the log when none is given, in bytes. */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /** Identifies an index file. */
+    private static final int INDEX_MAGIC = 0x505A5349; // "PZSI"
+
+    /** Identifies a log file. */
+    private static final int LOG_MAGIC = 0x505A534C; // "PZSL"
+
+    /** Version of both file layouts. */
+    private static final int VERSION = 1;
+
+    /** Size of the index header in bytes. */
+    private static final int HEADER_SIZE = 64;
+
+    /** Size of the log header in bytes. */
+    private static final int LOG_HEADER_SIZE = 16;
+
+    /** Slots in the index, a power of two. */
+    private static final int SLOTS = 1 << 16;
+
+    /** Bytes of an index slot, the key hash and the record offset. */
+    private static final int SLOT_BYTES = 16;
+
+    /** How full the index may get, in eighths, before it is compacted. */
+    private static final int MAX_LOAD_EIGHTHS = 6;
+
+    /** Bytes of a record besides its key and payload: two lengths and the checksum. */
+    private static final int RECORD_OVERHEAD = 3 * Integer.BYTES;
+
+    /** Outcome byte of a solved record. */
+    private static final byte SOLVED = 0;
+
+    /** Outcome byte of a record without a solution. */
+    private static final byte NO_SOLUTION = 1;
+
+    /**
+     * A finished solve, as stored in the cache.
+     * @param outcome SOLVED or NO_SOLUTION
+     * @param path the solution steps, starting with the start configuration, empty without a solution
+     * @param totalConfigurations the number of configurations the solve generated
+     * @param uniqueConfigurations the number of distinct configurations the solve saw
+     * @param <C> the type of configuration
+     */
+    public record Result<C extends Configuration>(SolveOutcome outcome, List<C> path,
+                                                  long totalConfigurations, long uniqueConfigurations) {
+
+        /**
+         * Takes the result of a breadth first search.
+         * @param solver the solver after solve returned
+         * @param outcome what solve returned
+         * @param <C> the type of configuration
+         * @return the result
+         */
+        public static <C extends Configuration> Result<C> of(Solver<C> solver, SolveOutcome outcome) {
+            return new Result<>(outcome, solver.getSolutionPath(), solver.getTotalConfigurations(),
+                    solver.getUniqueConfigurations());
+        }
+    }
+
+    /**
+     * A record read back from the log.
+     * @param key the key bytes
+     * @param payload the outcome, counts and moves
+     * @param size the number of bytes the record takes in the log
+     */
+    private record Stored(byte[] key, ByteBuffer payload, int size) {
+    }
+
+    /** The cache directory. */
+    private final Path directory;
+
+    /** Size bound of the log in bytes. */
+    private final long maxBytes;
+
+    /** The index file, also the file every access locks. */
+    private final FileChannel indexChannel;
+
+    /** The mapped index, header then slots. */
+    private final MappedByteBuffer index;
+
+    /** The log file as it was when this process last opened it. */
+    private FileChannel log;
+
+    /** Generation of the opened log, raised by every compaction. */
+    private long logGeneration = -1;
+
+    /**
+     * Opens a cache directory, creating it if it does not exist.
+     * @param directory the cache directory
+     * @param maxBytes the size bound of the log
+     * @throws IOException if the files cannot be opened
+     */
+    public SolutionCache(Path directory, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.indexChannel = FileChannel.open(directory.resolve("index"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) SLOTS * SLOT_BYTES);
+        FileLock lock = indexChannel.lock();
+        try {
+            refresh();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Looks up the solution of a start configuration.
+     * @param puzzle the name of the puzzle, part of the key
+     * @param codec how the puzzle's configurations are encoded
+     * @param start the configuration to solve
+     * @param target what start is solved towards when it is not part of the codec, null otherwise
+     * @param <C> the type of configuration
+     * @return the stored result, null if there is none or it is damaged
+     * @throws IOException if the cache cannot be read
+     */
+    public synchronized <C extends Configuration> Result<C> lookup(String puzzle, ConfigurationCodec<C> codec,
+                                                                   C start, C target) throws IOException {
+        byte[] key = key(puzzle, codec, start, target);
+        Stored stored;
+        FileLock lock = indexChannel.lock();
+        try {
+            refresh();
+            int slot = locate(key, hash(key));
+            if (slot < 0) {
+                return null;
+            }
+            stored = read(index.getLong(slotOffset(slot) + Long.BYTES), index.getLong(24));
+        } finally {
+            lock.release();
+        }
+        return stored == null ? null : replay(start, stored.payload());
+    }
+
+    /**
+     * Stores the result of a finished solve. Results of solves that stopped early are not stored.
+     * @param puzzle the name of the puzzle, part of the key
+     * @param codec how the puzzle's configurations are encoded
+     * @param start the configuration that was solved
+     * @param target what start was solved towards when it is not part of the codec, null otherwise
+     * @param result the result of the solve
+     * @param <C> the type of configuration
+     * @throws IOException if the cache cannot be written
+     */
+    public synchronized <C extends Configuration> void store(String puzzle, ConfigurationCodec<C> codec, C start,
+                                                             C target, Result<C> result) throws IOException {
+        if (result.outcome() != SolveOutcome.SOLVED && result.outcome() != SolveOutcome.NO_SOLUTION) {
+            return;
+        }
+        byte[] key = key(puzzle, codec, start, target);
+        byte[] payload = payload(result);
+        if (payload == null) {
+            return;
+        }
+        int size = RECORD_OVERHEAD + key.length + payload.length;
+        if (LOG_HEADER_SIZE + size > maxBytes / 2) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(key.length).putInt(payload.length).put(key).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, size - Integer.BYTES);
+        record.putInt((int) crc.getValue()).flip();
+        FileLock lock = indexChannel.lock();
+        try {
+            refresh();
+            long entries = index.getLong(32);
+            if (index.getLong(24) + size > maxBytes || (entries + 1) * 8 > (long) SLOTS * MAX_LOAD_EIGHTHS) {
+                compact(size);
+                entries = index.getLong(32);
+            }
+            long offset = index.getLong(24);
+            writeFully(log, record, offset);
+            log.force(false);
+            long hash = hash(key);
+            int slot = locate(key, hash);
+            if (slot < 0) {
+                slot = -slot - 1;
+                entries++;
+            }
+            index.putLong(slotOffset(slot), hash);
+            index.putLong(slotOffset(slot) + Long.BYTES, offset);
+            writeHeader(offset + size, entries);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Builds the key of a solve.
+     * @param puzzle the puzzle name
+     * @param codec the puzzle's codec
+     * @param start the start configuration
+     * @param target the target configuration, or null
+     * @param <C> the type of configuration
+     * @return the name, then the start and target encodings, each after its length
+     */
+    private static <C extends Configuration> byte[] key(String puzzle, ConfigurationCodec<C> codec, C start, C target) {
+        byte[] name = puzzle.getBytes(StandardCharsets.UTF_8);
+        int startSize = codec.encodedSize(start);
+        int targetSize = target == null ? 0 : codec.encodedSize(target);
+        ByteBuffer key = ByteBuffer.allocate(Short.BYTES + name.length + 2 * Integer.BYTES + startSize + targetSize);
+        key.putShort((short) name.length).put(name).putInt(startSize);
+        codec.encode(start, key);
+        key.putInt(targetSize);
+        if (target != null) {
+            codec.encode(target, key);
+        }
+        return key.array();
+    }
+
+    /**
+     * Writes the outcome, counts and moves of a result.
+     * @param result the result
+     * @return the payload bytes, null if the path is not made of single moves
+     */
+    private static byte[] payload(Result<?> result) {
+        List<? extends Configuration> path = result.path();
+        int steps = result.outcome() == SolveOutcome.SOLVED ? path.size() - 1 : 0;
+        int[] choices = new int[Math.max(steps, 0)];
+        int widest = 0;
+        for (int i = 0; i < steps; i++) {
+            choices[i] = new ArrayList<>(path.get(i).getNeighbors()).indexOf(path.get(i + 1));
+            if (choices[i] < 0 || choices[i] > 0xFFFF) {
+                return null;
+            }
+            widest = Math.max(widest, choices[i]);
+        }
+        int width = widest > 0xFF ? Short.BYTES : 1;
+        ByteBuffer payload = ByteBuffer.allocate(1 + 2 * Long.BYTES + Integer.BYTES + 1 + width * choices.length);
+        payload.put(result.outcome() == SolveOutcome.SOLVED ? SOLVED : NO_SOLUTION)
+                .putLong(result.totalConfigurations()).putLong(result.uniqueConfigurations())
+                .putInt(choices.length).put((byte) width);
+        for (int choice : choices) {
+            if (width == 1) {
+                payload.put((byte) choice);
+            } else {
+                payload.putShort((short) choice);
+            }
+        }
+        return payload.array();
+    }
+
+    /**
+     * Rebuilds a result by playing its moves from the start configuration.
+     * @param start the start configuration
+     * @param payload the stored outcome, counts and moves
+     * @param <C> the type of configuration
+     * @return the result, null if the moves do not lead to a solution
+     */
+    @SuppressWarnings("unchecked")
+    private static <C extends Configuration> Result<C> replay(C start, ByteBuffer payload) {
+        try {
+            byte outcome = payload.get();
+            long total = payload.getLong();
+            long unique = payload.getLong();
+            int steps = payload.getInt();
+            int width = payload.get();
+            if (outcome == NO_SOLUTION) {
+                return steps == 0 ? new Result<>(SolveOutcome.NO_SOLUTION, List.of(), total, unique) : null;
+            }
+            List<C> path = new ArrayList<>(steps + 1);
+            C config = start;
+            path.add(config);
+            for (int i = 0; i < steps; i++) {
+                int choice = width == 1 ? payload.get() & 0xFF : payload.getShort() & 0xFFFF;
+                List<Configuration> neighbors = new ArrayList<>(config.getNeighbors());
+                if (choice >= neighbors.size()) {
+                    return null;
+                }
+                // a configuration's neighbors are of its own type
+                config = (C) neighbors.get(choice);
+                path.add(config);
+            }
+            return outcome == SOLVED && config.isSolution() ? new Result<>(SolveOutcome.SOLVED, path, total, unique) : null;
+        } catch (RuntimeException e) {
+            // a payload that checks out but cannot be read was written by something else
+            return null;
+        }
+    }
+
+    /**
+     * Brings this process's view of the files up to date. Called with the lock held.
+     * @throws IOException if the files cannot be read
+     */
+    private void refresh() throws IOException {
+        boolean valid = headerValid();
+        if (log == null || (valid && index.getLong(16) != logGeneration)) {
+            openLog(valid ? index.getLong(16) : 0);
+        }
+        if (!valid || index.getLong(16) != logGeneration || index.getLong(24) > log.size()) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Opens the log, starting a new one if it is missing or damaged.
+     * @param generation the generation a new log should follow
+     * @throws IOException if the log cannot be opened
+     */
+    private void openLog(long generation) throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        log = FileChannel.open(directory.resolve("log"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        if (log.size() >= LOG_HEADER_SIZE) {
+            readFully(log, header, 0);
+            if (header.getInt(0) == LOG_MAGIC && header.getInt(4) == VERSION) {
+                logGeneration = header.getLong(8);
+                return;
+            }
+        }
+        logGeneration = generation + 1;
+        log.truncate(0);
+        header.clear();
+        header.putInt(LOG_MAGIC).putInt(VERSION).putLong(logGeneration).flip();
+        writeFully(log, header, 0);
+        log.force(true);
+    }
+
+    /**
+     * Fills the index from the log, up to the first damaged record. Called with the lock held.
+     * @throws IOException if the log cannot be read
+     */
+    private void rebuildIndex() throws IOException {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            index.putLong(slotOffset(slot), 0);
+        }
+        long entries = 0;
+        long offset = LOG_HEADER_SIZE;
+        long end = log.size();
+        Stored stored;
+        while ((entries + 1) * 8 <= (long) SLOTS * MAX_LOAD_EIGHTHS && (stored = read(offset, end)) != null) {
+            long hash = hash(stored.key());
+            int slot = locate(stored.key(), hash);
+            if (slot < 0) {
+                slot = -slot - 1;
+                entries++;
+            }
+            index.putLong(slotOffset(slot), hash);
+            index.putLong(slotOffset(slot) + Long.BYTES, offset);
+            offset += stored.size();
+        }
+        writeHeader(offset, entries);
+    }
+
+    /**
+     * Evicts the oldest records, keeping the newest that fit in half the size bound
+     * and take at most half of the slots the index may fill before it is compacted,
+     * to a new log that replaces the old one. Called with the lock held.
+     * @param incoming the size of the record about to be stored
+     * @throws IOException if the log cannot be rewritten
+     */
+    private void compact(int incoming) throws IOException {
+        long logEnd = index.getLong(24);
+        List<long[]> live = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (index.getLong(slotOffset(slot)) != 0) {
+                long offset = index.getLong(slotOffset(slot) + Long.BYTES);
+                Stored stored = read(offset, logEnd);
+                if (stored != null) {
+                    live.add(new long[] {offset, stored.size()});
+                }
+            }
+        }
+        live.sort(Comparator.comparingLong((long[] record) -> record[0]).reversed());
+        List<long[]> kept = new ArrayList<>();
+        long keptBytes = LOG_HEADER_SIZE + incoming;
+        for (long[] record : live) {
+            if (keptBytes + record[1] > maxBytes / 2 || (kept.size() + 1) * 8L > (long) SLOTS * MAX_LOAD_EIGHTHS / 2) {
+                break;
+            }
+            kept.add(record);
+            keptBytes += record[1];
+        }
+        kept.sort(Comparator.comparingLong(record -> record[0]));
+        Path fresh = directory.resolve("log.tmp");
+        try (FileChannel out = FileChannel.open(fresh, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            header.putInt(LOG_MAGIC).putInt(VERSION).putLong(logGeneration + 1).flip();
+            writeFully(out, header, 0);
+            long position = LOG_HEADER_SIZE;
+            for (long[] record : kept) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) record[1]);
+                readFully(log, bytes, record[0]);
+                writeFully(out, bytes.flip(), position);
+                position += record[1];
+            }
+            out.force(true);
+        }
+        Files.move(fresh, directory.resolve("log"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        openLog(logGeneration);
+        rebuildIndex();
+    }
+
+    /**
+     * Reads a record from the log.
+     * @param offset where the record starts
+     * @param end where the valid part of the log ends
+     * @return the record, null if it runs past end or fails its checksum
+     * @throws IOException if the log cannot be read
+     */
+    private Stored read(long offset, long end) throws IOException {
+        if (offset < LOG_HEADER_SIZE || offset + 2 * Integer.BYTES > end) {
+            return null;
+        }
+        ByteBuffer lengths = ByteBuffer.allocate(2 * Integer.BYTES);
+        readFully(log, lengths, offset);
+        int keyLength = lengths.getInt(0);
+        int payloadLength = lengths.getInt(Integer.BYTES);
+        long size = RECORD_OVERHEAD + (long) keyLength + payloadLength;
+        if (keyLength < 0 || payloadLength < 0 || offset + size > end) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) size);
+        readFully(log, record, offset);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, (int) size - Integer.BYTES);
+        if (record.getInt((int) size - Integer.BYTES) != (int) crc.getValue()) {
+            return null;
+        }
+        byte[] key = Arrays.copyOfRange(record.array(), 2 * Integer.BYTES, 2 * Integer.BYTES + keyLength);
+        return new Stored(key, record.slice(2 * Integer.BYTES + keyLength, payloadLength), (int) size);
+    }
+
+    /**
+     * Finds the slot of a key. Called with the lock held.
+     * @param key the key
+     * @param hash the hash of the key
+     * @return the slot holding the key, or minus one minus the empty slot where it would go
+     * @throws IOException if the log cannot be read
+     */
+    private int locate(byte[] key, long hash) throws IOException {
+        long logEnd = index.getLong(24);
+        int slot = (int) hash & (SLOTS - 1);
+        long slotHash;
+        while ((slotHash = index.getLong(slotOffset(slot))) != 0) {
+            if (slotHash == hash) {
+                Stored stored = read(index.getLong(slotOffset(slot) + Long.BYTES), logEnd);
+                if (stored == null || Arrays.equals(stored.key(), key)) {
+                    // a damaged record is replaced by the next store of a key with its hash
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & (SLOTS - 1);
+        }
+        return -slot - 1;
+    }
+
+    /**
+     * Hashes a key with 64-bit FNV-1a.
+     * @param key the key
+     * @return the hash, never 0, which marks an empty slot
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Gives the position of a slot in the index.
+     * @param slot the slot number
+     * @return its byte offset
+     */
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Checks the index header.
+     * @return true if it belongs to this layout and its checksum matches
+     */
+    private boolean headerValid() {
+        return index.getInt(0) == INDEX_MAGIC && index.getInt(4) == VERSION && index.getInt(8) == SLOTS
+                && index.getLong(56) == headerChecksum();
+    }
+
+    /**
+     * Writes the index header for the opened log.
+     * @param logEnd where the valid part of the log ends
+     * @param entries the number of keys in the index
+     */
+    private void writeHeader(long logEnd, long entries) {
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, SLOTS);
+        index.putLong(16, logGeneration);
+        index.putLong(24, logEnd);
+        index.putLong(32, entries);
+        index.putLong(56, headerChecksum());
+    }
+
+    /**
+     * Computes the checksum of the index header fields.
+     * @return the CRC32 of the first 40 header bytes
+     */
+    private long headerChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(index.slice(0, 40));
+        return crc.getValue();
+    }
+
+    /**
+     * Reads until the buffer is full.
+     * @param channel the file
+     * @param buffer the buffer to fill
+     * @param position where to read from
+     * @throws IOException if the file ends first or cannot be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("solution cache log ends early");
+            }
+        }
+    }
+
+    /**
+     * Writes the whole buffer.
+     * @param channel the file
+     * @param buffer the bytes to write
+     * @param position where to write them
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    /**
+     * Closes the files, everything stored stays on disk.
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        indexChannel.close();
+        if (log != null) {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package puzzles.common.solver;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the progress of one running {@link Solver}, or of another search
+ * that reports the same figures, as a JMX MBean named
+ * puzzles.solver:type=Solve,puzzle=...,id=..., so JDK Mission Control, jconsole
+ * or a JMX scraper can watch it. The solver registers a monitor when its
+ * solve starts and unregisters it when the solve returns. Solvers only do so
+ * when monitoring is turned on, with --telemetry, so a solve without it pays nothing.
+ */
+public class SolveMonitor implements SolveMonitorMXBean {
+
+    /** Number given to the next monitor, so several solves of one puzzle get distinct names. */
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    /** What is being solved. */
+    private final String puzzle;
+
+    /** When the solve started, from System.nanoTime. */
+    private final long startNanos;
+
+    /** Name the monitor is registered under, null if registering failed. */
+    private ObjectName name;
+
+    /** RUNNING or the outcome of the solve. */
+    private volatile String state = "RUNNING";
+
+    /** Depth of the layer being expanded. */
+    private volatile int depth;
+
+    /** Configurations waiting to be expanded. */
+    private volatile int frontierSize;
+
+    /** Distinct configurations seen. */
+    private volatile int visitedSize;
+
+    /** Configurations generated. */
+    private volatile long nodes;
+
+    /** Bytes used by the off-heap store, 0 when searching on the heap. */
+    private volatile long offHeapBytes;
+
+    /** Time from the start to the last update, in nanoseconds. */
+    private volatile long elapsedNanos;
+
+    /**
+     * Creates a monitor, not yet registered.
+     * @param puzzle what is being solved
+     */
+    private SolveMonitor(String puzzle) {
+        this.puzzle = puzzle;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a monitor and registers it with the platform MBean server. A
+     * failure to register is printed and the solve goes on unwatched.
+     * @param puzzle what is being solved
+     * @return the monitor
+     */
+    public static SolveMonitor register(String puzzle) {
+        SolveMonitor monitor = new SolveMonitor(puzzle);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("puzzles.solver:type=Solve,puzzle=" + ObjectName.quote(puzzle)
+                    + ",id=" + NEXT_ID.getAndIncrement());
+            server.registerMBean(monitor, name);
+            monitor.name = name;
+        } catch (JMException e) {
+            System.err.println("Solve not published over JMX: " + e.getMessage());
+        }
+        return monitor;
+    }
+
+    /**
+     * Takes the current figures of the solve.
+     * @param depth the depth of the layer being expanded
+     * @param frontierSize the configurations waiting to be expanded
+     * @param visitedSize the distinct configurations seen
+     * @param nodes the configurations generated
+     * @param offHeapBytes the bytes used by the off-heap store, 0 on the heap
+     */
+    public void update(int depth, int frontierSize, int visitedSize, long nodes, long offHeapBytes) {
+        this.depth = depth;
+        this.frontierSize = frontierSize;
+        this.visitedSize = visitedSize;
+        this.nodes = nodes;
+        this.offHeapBytes = offHeapBytes;
+        this.elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Records how the solve ended and unregisters the monitor.
+     * @param outcome the outcome, null if the solve failed
+     */
+    public void finish(SolveOutcome outcome) {
+        state = outcome == null ? "FAILED" : outcome.name();
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Error unpublishing solve: " + e.getMessage());
+            }
+            name = null;
+        }
+    }
+
+    /**
+     * Gets what is being solved.
+     * @return the type of configuration
+     */
+    @Override
+    public String getPuzzle() {
+        return puzzle;
+    }
+
+    /**
+     * Gets whether the solve is running or how it ended.
+     * @return RUNNING, or the name of the SolveOutcome
+     */
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Gets the depth of the layer being expanded.
+     * @return the depth
+     */
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the number of configurations waiting to be expanded.
+     * @return the frontier size
+     */
+    @Override
+    public int getFrontierSize() {
+        return frontierSize;
+    }
+
+    /**
+     * Gets the number of distinct configurations seen.
+     * @return the visited size
+     */
+    @Override
+    public int getVisitedSize() {
+        return visitedSize;
+    }
+
+    /**
+     * Gets the number of configurations generated.
+     * @return the node count
+     */
+    @Override
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the average generation rate up to the last update.
+     * @return nodes per second
+     */
+    @Override
+    public double getNodesPerSecond() {
+        return nodes / (Math.max(elapsedNanos, 1) / 1e9);
+    }
+
+    /**
+     * Gets the time from the start to the last update.
+     * @return the elapsed time in milliseconds
+     */
+    @Override
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * Gives the off-heap store's size, or on the heap the visited count times
+     * the per-configuration cost SolvePlanner plans with.
+     * @return the estimate in bytes
+     */
+    @Override
+    public long getEstimatedMemoryBytes() {
+        long bytes = offHeapBytes;
+        return bytes > 0 ? bytes : (long) visitedSize * SolvePlanner.HEAP_BYTES_PER_STATE;
+    }
+}
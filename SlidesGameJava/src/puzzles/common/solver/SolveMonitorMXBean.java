@@ -0,0 +1,62 @@
+package puzzles.common.solver;
+
+/**
+ * What a {@link SolveMonitor} shows over JMX about one running breadth first search.
+ * The values are refreshed every few hundred expansions, not on every read.
+ */
+public interface SolveMonitorMXBean {
+
+    /**
+     * Gets what is being solved.
+     * @return the type of configuration
+     */
+    String getPuzzle();
+
+    /**
+     * Gets whether the solve is running or how it ended.
+     * @return RUNNING, or the name of the SolveOutcome
+     */
+    String getState();
+
+    /**
+     * Gets the depth of the layer being expanded.
+     * @return the depth
+     */
+    int getDepth();
+
+    /**
+     * Gets the number of configurations waiting to be expanded.
+     * @return the frontier size
+     */
+    int getFrontierSize();
+
+    /**
+     * Gets the number of distinct configurations seen.
+     * @return the visited size
+     */
+    int getVisitedSize();
+
+    /**
+     * Gets the number of configurations generated.
+     * @return the node count
+     */
+    long getNodes();
+
+    /**
+     * Gets the average generation rate since the solve started.
+     * @return nodes per second
+     */
+    double getNodesPerSecond();
+
+    /**
+     * Gets the time since the solve started.
+     * @return the elapsed time in milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * Gets roughly how much memory the visited set and frontier take.
+     * @return the estimate in bytes
+     */
+    long getEstimatedMemoryBytes();
+}
@@ -0,0 +1,15 @@
+package puzzles.common.solver;
+
+/**
+ * The result of a call to {@link Solver#solve()}.
+ */
+public enum SolveOutcome {
+    /** A solution was found, the path is available from the solver. */
+    SOLVED,
+    /** Every reachable configuration was explored and none is a solution. */
+    NO_SOLUTION,
+    /** The search was stopped through its cancellation token. */
+    CANCELLED,
+    /** The search ran out of its node or time budget before finishing. */
+    BUDGET_EXCEEDED
+}
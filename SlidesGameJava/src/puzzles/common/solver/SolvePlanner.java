@@ -0,0 +1,368 @@
+package puzzles.common.solver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks how to solve a configuration before any search starts.
+ * <p>
+ * The planner estimates how many configurations breadth first search will see.
+ * The front end gives it what it knows about the puzzle: the size of the state
+ * space, which is often known in closed form, and the depth of the solution or a
+ * lower bound on it from a heuristic. The planner adds the branching of the
+ * search tree, measured by Knuth's method: random walks from the start that never
+ * step straight back, where the product of the branching factors along a walk
+ * estimates the number of nodes at each depth. Summing those up to the expected
+ * depth, and capping the sum at the size of the state space, gives the
+ * estimate.
+ * <p>
+ * Breadth first search on the heap is chosen when that many configurations fit
+ * in part of the heap. Otherwise the off-heap store is chosen when the
+ * configurations encode to a fixed width and fit there. Otherwise the first
+ * alternative engine the front end offered is chosen. A front end that knows
+ * the puzzle has no solution says so, and the plan names no engine at all.
+ * Every step of the reasoning is kept as a line of explanation for the run
+ * output.
+ */
+public class SolvePlanner {
+
+    /** Engine of a plan for a puzzle with no solution, where nothing needs to run. */
+    public static final String NO_SOLUTION = "none";
+
+    /** Number of random walks. */
+    private static final int SAMPLES = 200;
+
+    /** Longest random walk, deeper levels are extrapolated from the branching factor. */
+    private static final int SAMPLE_DEPTH = 48;
+
+    /** Moves added to a depth that is only a lower bound, one round trip of slack on each side. */
+    private static final int DEPTH_SLACK = 2;
+
+    /** Heap bytes a visited configuration costs besides its encoding: set, map and queue entries. */
+    static final long HEAP_BYTES_PER_STATE = 160;
+
+    /** Heap bytes a visited configuration costs per byte of its encoding. */
+    private static final long HEAP_BYTES_PER_ENCODED_BYTE = 8;
+
+    /** Off-heap bytes a configuration costs besides its encoding: predecessor and lookup table. */
+    private static final long OFF_HEAP_BYTES_PER_STATE = 16;
+
+    /** Share of the memory limit a search may plan to use, in percent. */
+    private static final int MEMORY_SHARE = 60;
+
+    /** Configurations a breadth first search sees per second on one modest core, for the time estimate. */
+    private static final double STATES_PER_SECOND = 100_000;
+
+    /**
+     * The chosen way to solve.
+     * @param engine the engine name, as given to --engine
+     * @param offHeapBytes the off-heap budget for breadth first search, 0 to search on the heap
+     * @param explanation the reasoning, one line at a time
+     */
+    public record Plan(String engine, long offHeapBytes, List<String> explanation) {
+    }
+
+    /**
+     * An engine to fall back on when breadth first search will not fit.
+     * @param engine the engine name
+     * @param reason what the engine does differently, for the explanation
+     */
+    private record Alternative(String engine, String reason) {
+    }
+
+    /** The configuration to solve. */
+    private final Configuration start;
+
+    /** Bytes each configuration encodes to, 0 if they differ in size. */
+    private final int encodedWidth;
+
+    /** Number of configurations reachable from the start, infinite if unknown. */
+    private double stateCount = Double.POSITIVE_INFINITY;
+
+    /** How the state count was worked out. */
+    private String stateFormula;
+
+    /** Depth of the solution, or a lower bound on it, -1 if unknown. */
+    private int depth = -1;
+
+    /** Whether depth is the exact solution depth. */
+    private boolean depthExact;
+
+    /** Where the depth came from. */
+    private String depthSource;
+
+    /** Engines to fall back on, in order of preference. */
+    private final List<Alternative> alternatives = new ArrayList<>();
+
+    /** Lines of explanation added by the front end, printed before the planner's own. */
+    private final List<String> notes = new ArrayList<>();
+
+    /** Why the puzzle has no solution, null if it may have one. */
+    private String unsolvable;
+
+    /** Memory a search may use, in bytes. */
+    private long memoryLimit = Runtime.getRuntime().maxMemory();
+
+    /**
+     * Creates a planner for a configuration.
+     * @param start the configuration to solve
+     * @param codec how the puzzle's configurations are encoded, to size them and to tell if they fit off the heap
+     * @param <C> the type of configuration
+     */
+    public <C extends Configuration> SolvePlanner(C start, ConfigurationCodec<C> codec) {
+        this.start = start;
+        int width = codec.encodedSize(start);
+        boolean fixed = true;
+        for (Configuration neighbor : start.getNeighbors()) {
+            @SuppressWarnings("unchecked")
+            C next = (C) neighbor;
+            fixed &= codec.encodedSize(next) == width;
+        }
+        this.encodedWidth = fixed ? width : 0;
+    }
+
+    /**
+     * Gives the number of configurations reachable from the start.
+     * @param count the number of configurations
+     * @param formula how it was worked out, for the explanation
+     */
+    public void setStateCount(double count, String formula) {
+        this.stateCount = count;
+        this.stateFormula = formula;
+    }
+
+    /**
+     * Gives the number of moves of the solution.
+     * @param depth the number of moves, or a lower bound on it
+     * @param exact whether it is the exact number
+     * @param source where it came from, for the explanation
+     */
+    public void setDepth(int depth, boolean exact, String source) {
+        this.depth = depth;
+        this.depthExact = exact;
+        this.depthSource = source;
+    }
+
+    /**
+     * Offers an engine to use when breadth first search will not fit. Engines
+     * offered first are preferred.
+     * @param engine the engine name
+     * @param reason what the engine does differently, for the explanation
+     */
+    public void addAlternative(String engine, String reason) {
+        alternatives.add(new Alternative(engine, reason));
+    }
+
+    /**
+     * Tells the planner the puzzle has no solution, so the plan runs no search.
+     * @param reason why no sequence of moves reaches the goal, for the explanation
+     */
+    public void setUnsolvable(String reason) {
+        this.unsolvable = reason;
+    }
+
+    /**
+     * Adds a line to the explanation.
+     * @param note the line
+     */
+    public void addNote(String note) {
+        notes.add(note);
+    }
+
+    /**
+     * Sets the memory a search may use, the heap size by default. Direct buffers
+     * are limited to the heap size by default as well.
+     * @param bytes the memory limit
+     */
+    public void setMemoryLimit(long bytes) {
+        this.memoryLimit = bytes;
+    }
+
+    /**
+     * Estimates the search and picks an engine.
+     * @return the plan
+     */
+    public Plan plan() {
+        List<String> explanation = new ArrayList<>(notes);
+        if (unsolvable != null) {
+            return choose(NO_SOLUTION, 0, "no solution, " + unsolvable, explanation);
+        }
+        if (stateFormula != null) {
+            explanation.add("state space " + stateFormula + " = " + format(stateCount) + " configurations");
+        }
+        int planDepth;
+        if (depth >= 0) {
+            planDepth = depthExact ? depth : depth + DEPTH_SLACK;
+            explanation.add("solution " + (depthExact ? "" : "at least ") + depth + " moves (" + depthSource + ")"
+                    + (depthExact ? "" : ", planning for " + planDepth));
+        } else {
+            planDepth = Integer.MAX_VALUE;
+            explanation.add("solution depth unknown, planning for the whole state space");
+        }
+        double[] levels = sampleLevels(Math.min(planDepth, SAMPLE_DEPTH));
+        int sampled = levels.length - 1;
+        double branching = sampled == 0 ? 0 : Math.pow(levels[sampled], 1.0 / sampled);
+        explanation.add(String.format("branching factor %.2f (%d random walks)", branching, SAMPLES));
+        double states = estimateStates(levels, branching, planDepth);
+        if (Double.isInfinite(states)) {
+            explanation.add("breadth first search has no bound on the configurations it would see");
+        } else {
+            explanation.add("breadth first search would see about " + format(states) + " configurations, roughly "
+                    + formatSeconds(states / STATES_PER_SECOND));
+        }
+        long heapNeeded = bytes(states, HEAP_BYTES_PER_STATE + HEAP_BYTES_PER_ENCODED_BYTE * encodedWidth);
+        long available = memoryLimit / 100 * MEMORY_SHARE;
+        explanation.add("heap search needs " + megabytes(heapNeeded) + ", " + megabytes(available) + " usable");
+        if (heapNeeded <= available) {
+            return choose("bfs", 0, "breadth first search on the heap, optimal", explanation);
+        }
+        if (encodedWidth > 0) {
+            long offHeapNeeded = bytes(states, encodedWidth + OFF_HEAP_BYTES_PER_STATE);
+            explanation.add("off-heap search needs " + megabytes(offHeapNeeded));
+            if (offHeapNeeded <= available) {
+                long budget = Math.min(available, offHeapNeeded * 2);
+                return choose("bfs", budget, "breadth first search off the heap with "
+                        + megabytes(budget) + ", optimal", explanation);
+            }
+        }
+        if (!alternatives.isEmpty()) {
+            Alternative alternative = alternatives.get(0);
+            return choose(alternative.engine(), 0, alternative.reason(), explanation);
+        }
+        explanation.add("nothing else applies, set --time or --nodes to bound the search");
+        return choose("bfs", 0, "breadth first search on the heap, may run out of memory", explanation);
+    }
+
+    /**
+     * Finishes a plan.
+     * @param engine the engine
+     * @param offHeapBytes the off-heap budget, 0 for none
+     * @param reason why, for the explanation
+     * @param explanation the explanation so far
+     * @return the plan
+     */
+    private static Plan choose(String engine, long offHeapBytes, String reason, List<String> explanation) {
+        explanation.add("engine " + engine + ": " + reason);
+        return new Plan(engine, offHeapBytes, explanation);
+    }
+
+    /**
+     * Estimates the number of nodes at each depth of the search tree with random walks.
+     * @param maxDepth the deepest level to sample
+     * @return the estimated nodes per depth, from depth 0 up to the deepest level any walk reached
+     */
+    private double[] sampleLevels(int maxDepth) {
+        double[] sums = new double[maxDepth + 1];
+        int deepest = 0;
+        // a fixed seed keeps the plan, and so the output, the same from run to run
+        Random random = new Random(1);
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            Configuration previous = null;
+            Configuration current = start;
+            double weight = 1;
+            sums[0] += 1;
+            for (int level = 1; level <= maxDepth; level++) {
+                List<Configuration> children = new ArrayList<>();
+                Iterator<Configuration> neighbors = current.neighborIterator();
+                while (neighbors.hasNext()) {
+                    Configuration child = neighbors.next();
+                    if (!child.equals(previous)) {
+                        children.add(child);
+                    }
+                }
+                if (children.isEmpty()) {
+                    break;
+                }
+                weight *= children.size();
+                sums[level] += weight;
+                deepest = Math.max(deepest, level);
+                previous = current;
+                current = children.get(random.nextInt(children.size()));
+            }
+        }
+        double[] levels = new double[deepest + 1];
+        for (int level = 0; level <= deepest; level++) {
+            levels[level] = sums[level] / SAMPLES;
+        }
+        return levels;
+    }
+
+    /**
+     * Adds up the nodes of every level to a depth, extrapolating past the sampled
+     * levels, and caps the total at the size of the state space.
+     * @param levels the sampled nodes per depth
+     * @param branching the branching factor for the levels past the sampled ones
+     * @param planDepth the depth to add up to
+     * @return the estimated number of configurations breadth first search sees
+     */
+    private double estimateStates(double[] levels, double branching, int planDepth) {
+        double total = 0;
+        double level = 0;
+        for (int d = 0; d <= planDepth && total < stateCount; d++) {
+            level = d < levels.length ? levels[d] : level * branching;
+            if (level < 1 && d >= levels.length) {
+                // the tree has ended
+                break;
+            }
+            total += level;
+            if (Double.isInfinite(total) || (planDepth == Integer.MAX_VALUE && d > 10_000)) {
+                return stateCount;
+            }
+        }
+        return Math.min(total, stateCount);
+    }
+
+    /**
+     * Multiplies a configuration count by a size without overflowing.
+     * @param states the number of configurations
+     * @param perState bytes per configuration
+     * @return the bytes, Long.MAX_VALUE if too many
+     */
+    private static long bytes(double states, long perState) {
+        double bytes = states * perState;
+        return bytes >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) bytes;
+    }
+
+    /**
+     * Writes a count compactly.
+     * @param count the count
+     * @return the count in full below a million, in scientific notation above
+     */
+    private static String format(double count) {
+        if (Double.isInfinite(count)) {
+            return "unbounded";
+        }
+        return count < 1e6 ? String.format("%.0f", count) : String.format("%.2e", count);
+    }
+
+    /**
+     * Writes a byte count in megabytes.
+     * @param bytes the byte count
+     * @return the megabytes, "under 1 MB", or "more memory than any machine has"
+     */
+    private static String megabytes(long bytes) {
+        if (bytes == Long.MAX_VALUE) {
+            return "more memory than any machine has";
+        }
+        return bytes < 1 << 20 ? "under 1 MB" : (bytes >> 20) + " MB";
+    }
+
+    /**
+     * Writes a duration in rough terms.
+     * @param seconds the duration
+     * @return the duration in milliseconds, seconds, hours or years
+     */
+    private static String formatSeconds(double seconds) {
+        if (seconds < 1) {
+            return String.format("%.0f ms", Math.max(seconds * 1000, 1));
+        } else if (seconds < 3600) {
+            return String.format("%.0f s", seconds);
+        } else if (seconds < 3600 * 24 * 365) {
+            return String.format("%.0f hours", seconds / 3600);
+        }
+        double years = seconds / (3600 * 24 * 365);
+        return years < 1000 ? String.format("%.0f years", years) : String.format("%.1e years", years);
+    }
+}
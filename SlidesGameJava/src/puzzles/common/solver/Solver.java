@@ -1,35 +1,125 @@
 package puzzles.common.solver;
-import puzzles.slide.model.SlideConfig;
-import java.util.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import jdk.jfr.FlightRecorder;
 import java.util.*;
 
 /**
  * The Solver class is a generic implementation of a solver using the BFS (breadth-first search) algorithm.
+ * A solve can be limited by a node budget and a time budget, stopped through a
+ * {@link CancellationToken}, and observed through a {@link ProgressListener}.
+ * Long solves can be saved to a {@link SolverCheckpoint} at a set interval and resumed from it.
+ * Very large solves can keep their visited set and frontier in an {@link OffHeapStateStore}
+ * instead of heap collections, trading a decode per expansion for no garbage collection work.
+ * Every finished layer is recorded as a {@link BfsLayerEvent} when a flight recording
+ * asks for it, and a monitored solve is published over JMX as a {@link SolveMonitor}.
+ * Neighbors are generated one at a time and tested for the goal as they are
+ * generated, so the search stops at the first solution without building the rest
+ * of the next layer; the counts only include configurations generated up to it.
+ * Neighbors the configuration's move rules leave out, such as the one that undoes
+ * the last move, are never generated, see {@link Configuration#successorIterator()}.
+ * The solver is typed by the configuration it solves, so the solution path comes
+ * back as that type. The casts this needs are made here, once: every neighbor of a
+ * configuration is a configuration of the same type.
  * NOTE: only for slide-2 solution steps may differ a little but same amount of steps are still taken
  * and solution
+ * @param <C> the type of configuration
  */
-public class Solver {
+public class Solver<C extends Configuration> {
+
+    /** Value of a budget that has not been set. */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /** How many expansions happen between two checks of the clock and the token. */
+    private static final int CHECK_INTERVAL = 256;
 
     /** The initial configuration for solver. */
-    private Configuration initialConfig;
+    private final C initialConfig;
 
     /** A set to keep track of visited configurations during search. */
-    private Set<Configuration> visit;
+    private Set<C> visit;
 
     /** A map to store the predecessor configuration for each visited config.*/
-    private Map<Configuration, Configuration> predecessor;
+    private Map<C, C> predecessor;
 
     /** The total number of configurations generated during search. */
-    private int totalConfigurations;
+    private long totalConfigurations;
 
     /** A flag indicating whether a solution found. */
     private boolean sol;
 
+    /** The solution configuration, null until one is found. */
+    private C solution;
+
+    /** Token that stops the search when cancelled, null if the solve cannot be cancelled. */
+    private CancellationToken cancellationToken;
+
+    /** Maximum number of configurations to generate. */
+    private long nodeBudget = UNLIMITED;
+
+    /** Maximum running time in milliseconds. */
+    private long timeBudgetMillis = UNLIMITED;
+
+    /** Listener for progress reports, null if nobody is listening. */
+    private ProgressListener progressListener;
+
+    /** Milliseconds between two progress reports. */
+    private long progressIntervalMillis;
+
+    /** File the search is saved to, null if checkpoints are off. */
+    private SolverCheckpoint checkpoint;
+
+    /** Milliseconds between two checkpoints. */
+    private long checkpointIntervalMillis;
+
+    /** The BFS queue. */
+    private Queue<C> queue;
+
+    /** Number of configurations taken from the queue, also the ordinal of the next one. */
+    private int expanded;
+
+    /** Depth of the BFS layer being expanded. */
+    private int depth;
+
+    /** Number of configurations of the current layer still in the queue. */
+    private int layerRemaining;
+
+    /** Configurations discovered since the last checkpoint. */
+    private List<C> pendingConfigs;
+
+    /** Predecessor ordinals of the pending configurations. */
+    private int[] pendingPredecessors;
+
+    /** How configurations are stored off the heap, null to search on the heap. */
+    private ConfigurationCodec<C> offHeapCodec;
+
+    /** Most memory the off-heap store may allocate, in bytes. */
+    private long offHeapBudgetBytes;
+
+    /** The off-heap visited set and frontier, null when searching on the heap. */
+    private OffHeapStateStore store;
+
+    /** Record index of the solution in the off-heap store. */
+    private int solutionIndex;
+
+    /** Whether solve publishes a SolveMonitor. */
+    private boolean monitored;
+
+    /** The monitor of the running solve, null if it is not monitored. */
+    private SolveMonitor monitor;
+
+    /** The JFR event of the layer being expanded, null when no flight recording was running at its start. */
+    private BfsLayerEvent layerEvent;
+
+    /** Number of configurations in the layer being expanded. */
+    private int layerSize;
+
     /**
      * Constructs an object with the initial configuration.
      * @param initialConfig the initial configuration
      */
-    public Solver(Configuration initialConfig) {
+    public Solver(C initialConfig) {
         this.initialConfig = initialConfig;
         this.visit = new HashSet<>();
         this.predecessor = new HashMap<>();
@@ -37,47 +127,463 @@ public class Solver {
         this.sol = false;
     }
 
+    /**
+     * Sets the token checked by the search, cancelling it makes solve return CANCELLED.
+     * @param cancellationToken the token, or null to make the solve uncancellable
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Limits the number of configurations the search may generate.
+     * @param nodeBudget the maximum number of generated configurations, or UNLIMITED
+     */
+    public void setNodeBudget(long nodeBudget) {
+        if (nodeBudget <= 0) {
+            throw new IllegalArgumentException("Node budget must be positive: " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Limits the time the search may run.
+     * @param timeBudgetMillis the maximum running time in milliseconds, or UNLIMITED
+     */
+    public void setTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive: " + timeBudgetMillis);
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Registers a listener that receives progress reports while solving.
+     * @param progressListener the listener, or null to stop reporting
+     * @param intervalMillis milliseconds between two reports
+     */
+    public void setProgressListener(ProgressListener progressListener, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative: " + intervalMillis);
+        }
+        this.progressListener = progressListener;
+        this.progressIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Publishes the solve over JMX while it runs, see SolveMonitor.
+     * @param monitored true to publish it
+     */
+    public void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+    }
+
+    /**
+     * Saves the search to a checkpoint file at a set interval, and when the search
+     * is stopped by a budget or cancelled. If the file already holds a snapshot of
+     * this puzzle the search resumes from it instead of starting over.
+     * The solver closes the checkpoint when solve returns.
+     * @param checkpoint the checkpoint file
+     * @param intervalMillis milliseconds between two checkpoints
+     */
+    public void setCheckpoint(SolverCheckpoint checkpoint, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + intervalMillis);
+        }
+        this.checkpoint = checkpoint;
+        this.checkpointIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Keeps the visited set and frontier off the heap, in a store that may allocate
+     * at most the given memory. Running out of it makes solve return BUDGET_EXCEEDED.
+     * Every configuration of the puzzle must encode to the same number of bytes.
+     * Checkpoints cannot be combined with it.
+     * @param codec how configurations are encoded into the store
+     * @param budgetBytes the most memory the store may allocate
+     */
+    public void setOffHeap(ConfigurationCodec<C> codec, long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Off-heap budget must be positive: " + budgetBytes);
+        }
+        this.offHeapCodec = codec;
+        this.offHeapBudgetBytes = budgetBytes;
+    }
+
     /**
      * Solves the puzzle using the BFS algorithm.
-     * @return true if a solution is found, false otherwise
+     * @return SOLVED if a solution is found, NO_SOLUTION if none exists, CANCELLED or
+     * BUDGET_EXCEEDED if the search was stopped before it could tell
      */
-    public boolean solve() {
-        Queue<Configuration> queue = new LinkedList<>();
-        queue.offer(initialConfig);
-        visit.add(initialConfig);
+    public SolveOutcome solve() {
+        if (monitored) {
+            monitor = SolveMonitor.register(initialConfig.getClass().getSimpleName());
+        }
+        SolveOutcome outcome = null;
+        try {
+            outcome = search();
+            endLayer(store != null ? store.size() - expanded : queue.size());
+            if (checkpoint != null && (outcome == SolveOutcome.CANCELLED || outcome == SolveOutcome.BUDGET_EXCEEDED)) {
+                writeCheckpoint();
+            }
+            return outcome;
+        } finally {
+            if (monitor != null) {
+                monitor.finish(outcome);
+            }
+            if (checkpoint != null) {
+                try {
+                    checkpoint.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing checkpoint: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the neighbors of a configuration worth searching, as
+     * configurations of its own type. The initial configuration gives every
+     * neighbor: the move that made it was not made by this search, so undoing
+     * it may be the way to the goal.
+     * @param config the configuration
+     * @return its neighbors, less those its move rules leave out
+     */
+    @SuppressWarnings("unchecked")
+    private Iterator<C> neighbors(C config) {
+        return (Iterator<C>) (config == initialConfig ? config.neighborIterator() : config.successorIterator());
+    }
+
+    /**
+     * Runs the BFS until it finishes or is stopped.
+     * @return the outcome of the search
+     */
+    private SolveOutcome search() {
+        if (offHeapCodec != null) {
+            if (checkpoint != null) {
+                throw new IllegalStateException("Checkpoints do not work with the off-heap store");
+            }
+            return searchOffHeap();
+        }
+        long startNanos = System.nanoTime();
+        long deadline = timeBudgetMillis == UNLIMITED ? UNLIMITED : timeBudgetMillis * 1_000_000L;
+        long nextReport = progressIntervalMillis * 1_000_000L;
+        long nextCheckpoint = checkpointIntervalMillis * 1_000_000L;
+        start();
+        int sinceCheck = 0;
         while (!queue.isEmpty()) {
-            Configuration currentConfig = queue.poll();
-            if (currentConfig.isSolution()) {
-                sol = true;
-                break;
+            if (++sinceCheck == CHECK_INTERVAL) {
+                sinceCheck = 0;
+                if (cancellationToken != null && cancellationToken.isCancelled()) {
+                    return SolveOutcome.CANCELLED;
+                }
+                long elapsed = System.nanoTime() - startNanos;
+                if (elapsed > deadline) {
+                    return SolveOutcome.BUDGET_EXCEEDED;
+                }
+                updateMonitor(queue.size());
+                if (progressListener != null && elapsed >= nextReport) {
+                    reportProgress(queue.size(), elapsed);
+                    nextReport = elapsed + progressIntervalMillis * 1_000_000L;
+                }
+                if (checkpoint != null && elapsed >= nextCheckpoint) {
+                    writeCheckpoint();
+                    nextCheckpoint = System.nanoTime() - startNanos + checkpointIntervalMillis * 1_000_000L;
+                }
             }
-            Collection<Configuration> neighbors = currentConfig.getNeighbors();
-            for (Configuration neighbor : neighbors) {
+            C currentConfig = queue.poll();
+            int currentOrdinal = expanded++;
+            Iterator<C> neighbors = neighbors(currentConfig);
+            while (neighbors.hasNext()) {
+                C neighbor = neighbors.next();
                 totalConfigurations ++;
-                if (!visit.contains(neighbor)) {
-                    visit.add(neighbor);
+                if (visit.add(neighbor)) {
                     queue.offer(neighbor);
                     predecessor.put(neighbor, currentConfig);
+                    if (checkpoint != null) {
+                        addPending(neighbor, currentOrdinal);
+                    }
+                    if (neighbor.isSolution()) {
+                        sol = true;
+                        solution = neighbor;
+                        break;
+                    }
                 }
             }
+            if (sol) {
+                break;
+            }
+            if (--layerRemaining == 0) {
+                endLayer(queue.size());
+                depth++;
+                layerRemaining = queue.size();
+                beginLayer(layerRemaining);
+            }
+            if (totalConfigurations >= nodeBudget && !queue.isEmpty()) {
+                return SolveOutcome.BUDGET_EXCEEDED;
+            }
         }
-        return sol;
+        if (progressListener != null) {
+            reportProgress(queue.size(), System.nanoTime() - startNanos);
+        }
+        return sol ? SolveOutcome.SOLVED : SolveOutcome.NO_SOLUTION;
     }
 
     /**
-     * Returns the solution path as a list of configurations.
-     * @return the solution path
-     */
-    public List<Configuration> getSolutionPath() {
-        List<Configuration> path = new ArrayList<>();
-        if (sol) {
-            Configuration currentConfig = null;
-            for (Configuration config : visit) {
-                if (config.isSolution()) {
-                    currentConfig = config;
+     * Runs the BFS with the visited set and frontier in an off-heap store. The
+     * store appends configurations in the order they are found, so the
+     * frontier is the records past the last expanded one.
+     * @return the outcome of the search
+     */
+    private SolveOutcome searchOffHeap() {
+        long startNanos = System.nanoTime();
+        long deadline = timeBudgetMillis == UNLIMITED ? UNLIMITED : timeBudgetMillis * 1_000_000L;
+        long nextReport = progressIntervalMillis * 1_000_000L;
+        int width = offHeapCodec.encodedSize(initialConfig);
+        store = new OffHeapStateStore(width, offHeapBudgetBytes);
+        ByteBuffer scratch = ByteBuffer.allocate(width);
+        store.add(encode(initialConfig, scratch), -1);
+        // later configurations are tested when generated, the first one has to be tested here
+        sol = initialConfig.isSolution();
+        solutionIndex = 0;
+        depth = 0;
+        int layerEnd = 1;
+        beginLayer(1);
+        int sinceCheck = 0;
+        while (!sol && expanded < store.size()) {
+            if (++sinceCheck == CHECK_INTERVAL) {
+                sinceCheck = 0;
+                if (cancellationToken != null && cancellationToken.isCancelled()) {
+                    return SolveOutcome.CANCELLED;
+                }
+                long elapsed = System.nanoTime() - startNanos;
+                if (elapsed > deadline) {
+                    return SolveOutcome.BUDGET_EXCEEDED;
+                }
+                updateMonitor(store.size() - expanded);
+                if (progressListener != null && elapsed >= nextReport) {
+                    reportProgress(store.size() - expanded, elapsed);
+                    nextReport = elapsed + progressIntervalMillis * 1_000_000L;
+                }
+            }
+            int currentOrdinal = expanded++;
+            C currentConfig = offHeapCodec.decode(store.state(currentOrdinal));
+            Iterator<C> neighbors = neighbors(currentConfig);
+            while (neighbors.hasNext()) {
+                C neighbor = neighbors.next();
+                totalConfigurations++;
+                int added = store.add(encode(neighbor, scratch), currentOrdinal);
+                if (added == OffHeapStateStore.FULL) {
+                    return SolveOutcome.BUDGET_EXCEEDED;
+                }
+                if (added != OffHeapStateStore.PRESENT && neighbor.isSolution()) {
+                    sol = true;
+                    solutionIndex = added;
                     break;
                 }
             }
+            if (sol) {
+                break;
+            }
+            if (expanded == layerEnd) {
+                endLayer(store.size() - expanded);
+                depth++;
+                beginLayer(store.size() - layerEnd);
+                layerEnd = store.size();
+            }
+            if (totalConfigurations >= nodeBudget && expanded < store.size()) {
+                return SolveOutcome.BUDGET_EXCEEDED;
+            }
+        }
+        if (progressListener != null) {
+            reportProgress(store.size() - expanded, System.nanoTime() - startNanos);
+        }
+        return sol ? SolveOutcome.SOLVED : SolveOutcome.NO_SOLUTION;
+    }
+
+    /**
+     * Encodes a configuration for the off-heap store.
+     * @param config the configuration
+     * @param scratch the buffer to encode into, reused for every configuration
+     * @return the buffer, holding the encoding from position 0
+     */
+    private ByteBuffer encode(C config, ByteBuffer scratch) {
+        if (offHeapCodec.encodedSize(config) != scratch.capacity()) {
+            throw new IllegalStateException("The off-heap store needs configurations of one size: " + config);
+        }
+        scratch.clear();
+        offHeapCodec.encode(config, scratch);
+        return scratch;
+    }
+
+    /**
+     * Sets up the queue, either with the initial configuration or from the checkpoint's snapshot.
+     */
+    private void start() {
+        queue = new LinkedList<>();
+        if (checkpoint != null) {
+            pendingConfigs = new ArrayList<>();
+            pendingPredecessors = new int[64];
+            if (checkpoint.hasSnapshot()) {
+                restore();
+                return;
+            }
+            try {
+                checkpoint.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            addPending(initialConfig, -1);
+        }
+        queue.offer(initialConfig);
+        visit.add(initialConfig);
+        depth = 0;
+        layerRemaining = 1;
+        beginLayer(1);
+        if (initialConfig.isSolution()) {
+            // later configurations are tested when generated, the first one has to be tested here
+            sol = true;
+            solution = initialConfig;
+            queue.clear();
+        }
+    }
+
+    /**
+     * Rebuilds the search from the checkpoint's snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    private void restore() {
+        SolverCheckpoint.Snapshot snapshot;
+        try {
+            snapshot = checkpoint.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<C> configs = (List<C>) snapshot.configurations();
+        if (!configs.get(0).equals(initialConfig)) {
+            throw new IllegalStateException("Checkpoint was written for a different puzzle: " + configs.get(0));
+        }
+        int[] predecessors = snapshot.predecessors();
+        for (int i = 0; i < configs.size(); i++) {
+            visit.add(configs.get(i));
+            if (predecessors[i] >= 0) {
+                predecessor.put(configs.get(i), configs.get(predecessors[i]));
+            }
+        }
+        queue.addAll(configs.subList(snapshot.queueHead(), configs.size()));
+        expanded = snapshot.queueHead();
+        totalConfigurations = snapshot.totalConfigurations();
+        depth = snapshot.depth();
+        layerRemaining = snapshot.layerRemaining();
+        beginLayer(layerRemaining);
+    }
+
+    /**
+     * Remembers a newly discovered configuration for the next checkpoint.
+     * @param config the configuration
+     * @param predecessorOrdinal the ordinal of its predecessor, -1 for the initial configuration
+     */
+    private void addPending(C config, int predecessorOrdinal) {
+        int count = pendingConfigs.size();
+        if (count == pendingPredecessors.length) {
+            pendingPredecessors = Arrays.copyOf(pendingPredecessors, count * 2);
+        }
+        pendingPredecessors[count] = predecessorOrdinal;
+        pendingConfigs.add(config);
+    }
+
+    /**
+     * Writes the configurations discovered since the last checkpoint and the position of the search.
+     */
+    private void writeCheckpoint() {
+        try {
+            checkpoint.write(pendingConfigs, pendingPredecessors, expanded, totalConfigurations, depth, layerRemaining);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingConfigs.clear();
+    }
+
+    /**
+     * Starts the JFR event of the layer about to be expanded. Event classes are
+     * only loaded once JFR is running, loading them starts part of JFR and
+     * costs a few hundred milliseconds.
+     * @param size the number of configurations in the layer
+     */
+    private void beginLayer(int size) {
+        layerSize = size;
+        if (FlightRecorder.isInitialized()) {
+            layerEvent = new BfsLayerEvent();
+            layerEvent.begin();
+        }
+    }
+
+    /**
+     * Records the layer just expanded, or the part of it expanded before the
+     * search stopped, and refreshes the monitor.
+     * @param frontierSize the number of configurations waiting to be expanded
+     */
+    private void endLayer(int frontierSize) {
+        updateMonitor(frontierSize);
+        if (layerEvent == null) {
+            return;
+        }
+        layerEvent.end();
+        if (layerEvent.shouldCommit()) {
+            layerEvent.puzzle = initialConfig.getClass().getSimpleName();
+            layerEvent.depth = depth;
+            layerEvent.layerSize = layerSize;
+            layerEvent.frontierSize = frontierSize;
+            layerEvent.visited = visitedCount();
+            layerEvent.nodes = totalConfigurations;
+            layerEvent.offHeapBytes = store != null ? store.getUsedBytes() : 0;
+            layerEvent.commit();
+        }
+        layerEvent = null;
+    }
+
+    /**
+     * Gives the monitor the current figures, if the solve is monitored.
+     * @param frontierSize the number of configurations waiting to be expanded
+     */
+    private void updateMonitor(int frontierSize) {
+        if (monitor != null) {
+            monitor.update(depth, frontierSize, visitedCount(), totalConfigurations,
+                    store != null ? store.getUsedBytes() : 0);
+        }
+    }
+
+    /**
+     * Counts the distinct configurations seen, the initial one included.
+     * @return the visited count
+     */
+    private int visitedCount() {
+        return store != null ? store.size() : visit.size();
+    }
+
+    /**
+     * Sends one progress report to the listener.
+     * @param frontierSize the current queue size
+     * @param elapsedNanos the time since the solve started
+     */
+    private void reportProgress(int frontierSize, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        progressListener.onProgress(depth, frontierSize, totalConfigurations, totalConfigurations / seconds);
+    }
+
+    /**
+     * Returns the solution path as a list of configurations.
+     * @return the solution path, empty if no solution was found
+     */
+    public List<C> getSolutionPath() {
+        List<C> path = new ArrayList<>();
+        if (sol && store != null) {
+            for (int index = solutionIndex; index >= 0; index = store.predecessor(index)) {
+                path.add(offHeapCodec.decode(store.state(index)));
+            }
+            Collections.reverse(path);
+        } else if (sol) {
+            C currentConfig = solution;
             while (currentConfig != null) {
                 path.add(currentConfig);
                 currentConfig = predecessor.get(currentConfig);
@@ -91,7 +597,7 @@ public class Solver {
      * Returns the total number of configurations generated during solving.
      * @return total number of configurations
      */
-    public int getTotalConfigurations() {
+    public long getTotalConfigurations() {
         return totalConfigurations;
     }
 
@@ -100,6 +606,6 @@ public class Solver {
      * @return the number of unique configurations
      */
     public int getUniqueConfigurations() {
-        return predecessor.size();
+        return store != null ? store.size() - 1 : predecessor.size();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,289 @@
+package puzzles.common.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of a BFS that can be resumed after the JVM restarts.
+ * <p>
+ * The file holds a fixed size header, then the encoded start and target of the
+ * puzzle, then one record per visited configuration, in the order the search
+ * discovered them. A snapshot is only resumed by a search for the same start and
+ * target, as codecs hold the target and a search only tests configurations for
+ * it when they are generated. A record is the
+ * ordinal of its predecessor (-1 for the initial configuration), the length of
+ * the encoded configuration and the encoding itself. Because BFS visits in
+ * discovery order, the queue is always the records from the queue head onwards,
+ * so the header only has to remember where the queue starts.
+ * <p>
+ * Checkpoints are incremental: each one appends the records discovered since
+ * the previous one through a memory-mapped window, forces them to disk, and
+ * only then rewrites the header. A crash in the middle of a checkpoint leaves
+ * the previous header, which still describes a complete snapshot.
+ */
+public class SolverCheckpoint implements Closeable {
+
+    /** Identifies a checkpoint file. */
+    private static final int MAGIC = 0x505A434B; // "PZCK"
+
+    /** Version of the file layout. */
+    private static final int VERSION = 2;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER_SIZE = 64;
+
+    /** Bytes mapped at a time for appending or reading records. */
+    private static final int WINDOW_SIZE = 16 << 20;
+
+    /** Bytes of a record before the encoded configuration. */
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Short.BYTES;
+
+    /** Size of the largest possible record. */
+    private static final int MAX_RECORD = RECORD_OVERHEAD + 0xFFFF;
+
+    /** The checkpoint file. */
+    private final FileChannel channel;
+
+    /** How configurations are written. */
+    private final ConfigurationCodec<Configuration> codec;
+
+    /** The mapped header. */
+    private final MappedByteBuffer header;
+
+    /** The encoded start followed by the encoded target, written after the header. */
+    private final ByteBuffer puzzle;
+
+    /** Window for appending records, null until the first append. */
+    private MappedByteBuffer window;
+
+    /** File offset of the start of the window. */
+    private long windowStart;
+
+    /** Number of records made durable by the last checkpoint. */
+    private long committedRecords;
+
+    /** File offset just past the last durable record. */
+    private long committedBytes;
+
+    /**
+     * The state of a search as saved by a checkpoint.
+     * @param configurations the visited configurations in discovery order
+     * @param predecessors the ordinal of each configuration's predecessor, -1 for the first
+     * @param queueHead the ordinal of the first configuration still in the queue
+     * @param totalConfigurations the number of configurations generated so far
+     * @param depth the BFS depth being expanded
+     * @param layerRemaining the number of queued configurations left in that depth
+     */
+    public record Snapshot(List<Configuration> configurations, int[] predecessors, int queueHead,
+                           long totalConfigurations, int depth, int layerRemaining) {
+    }
+
+    /**
+     * Opens a checkpoint file, creating it if it does not exist.
+     * @param file the checkpoint file
+     * @param codec how the puzzle's configurations are written
+     * @param start the start of the search
+     * @param target what start is solved towards when the codec does not hold it, null otherwise
+     * @param <C> the type of configuration
+     * @throws IOException if the file cannot be opened, is not a checkpoint, or holds
+     *         a snapshot of a search for another start or target
+     */
+    @SuppressWarnings("unchecked")
+    public <C extends Configuration> SolverCheckpoint(Path file, ConfigurationCodec<C> codec, C start, C target)
+            throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.codec = (ConfigurationCodec<Configuration>) codec;
+        int startSize = codec.encodedSize(start);
+        this.puzzle = ByteBuffer.allocate(startSize + (target == null ? 0 : codec.encodedSize(target)));
+        codec.encode(start, puzzle);
+        if (target != null) {
+            codec.encode(target, puzzle);
+        }
+        puzzle.flip();
+        boolean fresh = channel.size() == 0;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (fresh) {
+            clear();
+        } else {
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a solver checkpoint");
+            }
+            if (header.getLong(56) != headerChecksum()) {
+                throw new IOException(file + " has a damaged header");
+            }
+            committedRecords = header.getLong(8);
+            committedBytes = header.getLong(16);
+            if (committedRecords > 0 && !samePuzzle()) {
+                throw new IOException(file + " was written for a different start or target");
+            }
+        }
+    }
+
+    /**
+     * Compares the start and target saved in the file with this search's.
+     * @return true if they are the same
+     * @throws IOException if the file cannot be read
+     */
+    private boolean samePuzzle() throws IOException {
+        if (header.getInt(48) != puzzle.limit()) {
+            return false;
+        }
+        ByteBuffer saved = ByteBuffer.allocate(puzzle.limit());
+        while (saved.hasRemaining()) {
+            if (channel.read(saved, HEADER_SIZE + saved.position()) < 0) {
+                return false;
+            }
+        }
+        return saved.flip().equals(puzzle);
+    }
+
+    /**
+     * Checks whether the file holds a snapshot to resume from.
+     * @return true if at least one checkpoint has been written
+     */
+    public boolean hasSnapshot() {
+        return committedRecords > 0;
+    }
+
+    /**
+     * Forgets any snapshot in the file and saves this search's start and target,
+     * used when a search starts over.
+     * @throws IOException if the file cannot be written
+     */
+    public void clear() throws IOException {
+        committedRecords = 0;
+        committedBytes = HEADER_SIZE + puzzle.limit();
+        window = null;
+        ByteBuffer bytes = puzzle.duplicate();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, HEADER_SIZE + bytes.position());
+        }
+        channel.force(false);
+        writeHeader(0, 0, 0, 0);
+    }
+
+    /**
+     * Appends the configurations discovered since the last checkpoint and
+     * records where the search stands.
+     * @param configurations the new configurations, in discovery order
+     * @param predecessors the predecessor ordinal of each new configuration
+     * @param queueHead the ordinal of the first configuration still in the queue
+     * @param totalConfigurations the number of configurations generated so far
+     * @param depth the BFS depth being expanded
+     * @param layerRemaining the number of queued configurations left in that depth
+     * @throws IOException if the file cannot be written
+     */
+    public void write(List<? extends Configuration> configurations, int[] predecessors, int queueHead,
+                      long totalConfigurations, int depth, int layerRemaining) throws IOException {
+        long offset = committedBytes;
+        for (int i = 0; i < configurations.size(); i++) {
+            Configuration config = configurations.get(i);
+            int size = codec.encodedSize(config);
+            if (size > 0xFFFF) {
+                throw new IOException("configuration too large for a checkpoint: " + size + " bytes");
+            }
+            int recordSize = RECORD_OVERHEAD + size;
+            if (window == null || offset + recordSize > windowStart + window.capacity()) {
+                if (window != null) {
+                    window.force();
+                }
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(WINDOW_SIZE, recordSize));
+            }
+            window.position((int) (offset - windowStart));
+            window.putInt(predecessors[i]).putShort((short) size);
+            codec.encode(config, window);
+            offset += recordSize;
+        }
+        if (window != null) {
+            window.force();
+        }
+        committedRecords += configurations.size();
+        committedBytes = offset;
+        writeHeader(queueHead, totalConfigurations, depth, layerRemaining);
+    }
+
+    /**
+     * Reads the snapshot written by the last checkpoint.
+     * @return the saved state of the search
+     * @throws IOException if the file cannot be read or is damaged
+     */
+    public Snapshot read() throws IOException {
+        if (committedRecords > Integer.MAX_VALUE) {
+            throw new IOException("checkpoint has too many records to load: " + committedRecords);
+        }
+        int count = (int) committedRecords;
+        List<Configuration> configurations = new ArrayList<>(count);
+        int[] predecessors = new int[count];
+        long offset = HEADER_SIZE + puzzle.limit();
+        ByteBuffer view = null;
+        long viewStart = 0;
+        for (int i = 0; i < count; i++) {
+            long viewEnd = view == null ? 0 : viewStart + view.capacity();
+            if (view == null || (offset + MAX_RECORD > viewEnd && viewEnd < committedBytes)) {
+                viewStart = offset;
+                view = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, committedBytes - offset));
+            }
+            view.position((int) (offset - viewStart));
+            predecessors[i] = view.getInt();
+            int size = view.getShort() & 0xFFFF;
+            int before = view.position();
+            configurations.add(codec.decode(view));
+            if (view.position() - before != size || predecessors[i] >= i) {
+                throw new IOException("checkpoint record " + i + " is damaged");
+            }
+            offset += RECORD_OVERHEAD + size;
+        }
+        return new Snapshot(configurations, predecessors, (int) header.getLong(24), header.getLong(32),
+                header.getInt(40), header.getInt(44));
+    }
+
+    /**
+     * Writes the header and forces it to disk.
+     * @param queueHead the ordinal of the first queued configuration
+     * @param totalConfigurations the number of configurations generated
+     * @param depth the BFS depth being expanded
+     * @param layerRemaining the number of queued configurations left in that depth
+     */
+    private void writeHeader(int queueHead, long totalConfigurations, int depth, int layerRemaining) {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, committedRecords);
+        header.putLong(16, committedBytes);
+        header.putLong(24, queueHead);
+        header.putLong(32, totalConfigurations);
+        header.putInt(40, depth);
+        header.putInt(44, layerRemaining);
+        header.putInt(48, puzzle.limit());
+        header.putLong(56, headerChecksum());
+        header.force();
+    }
+
+    /**
+     * Computes the checksum of the header fields.
+     * @return the CRC32 of the first 52 header bytes
+     */
+    private long headerChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(header.slice(0, 52));
+        return crc.getValue();
+    }
+
+    /**
+     * Closes the file, the last checkpoint stays on disk.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
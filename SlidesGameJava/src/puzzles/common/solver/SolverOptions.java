@@ -0,0 +1,454 @@
+package puzzles.common.solver;
+import puzzles.common.solver.distributed.DistributedSolver;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options shared by the puzzle front ends.
+ * Options are written as --name=value and may appear anywhere among the
+ * puzzle's own arguments, which are kept in order as the positional arguments.
+ * <pre>
+ *   --time=seconds       stop the solve after this many seconds
+ *   --nodes=count        stop the solve after generating this many configurations
+ *   --progress=seconds   print a progress line to stderr at this interval
+ *   --checkpoint=file    save the search to file, and resume from it if it holds a snapshot
+ *   --checkpoint-every=seconds  time between two checkpoints, 60 by default
+ *   --engine=name        how to solve, bfs by default, auto lets a SolvePlanner choose,
+ *                        bitset searches a RankedStateSpace with a bit per configuration,
+ *                        each front end lists the others it offers
+ *   --workers=count      number of worker processes for --engine=distributed, one per core by default
+ *   --listen=port        wait for workers on this port instead of starting local ones
+ *   --offheap=megabytes  keep the search's visited set and frontier off the heap, in at most this much memory,
+ *                        which also bounds the cache of --engine=reverse
+ *   --radius=moves       how far --engine=reverse searches back from the target, all the way by default
+ *                        when every configuration fits in its memory
+ *   --cache=directory    look solutions up in, and add them to, the solution cache in this directory
+ *   --cache-size=megabytes  size bound of the solution cache, 64 by default
+ *   --telemetry          publish every breadth first solve over JMX while it runs, see SolveMonitor
+ *   --presolve=directory solve the puzzle files in this directory in the background as they appear,
+ *                        may be given more than once, for the front ends that give hints
+ * </pre>
+ */
+public class SolverOptions {
+
+    /** Usage text for the options, appended to each front end's usage line. */
+    public static final String USAGE = "[--time=seconds] [--nodes=count] [--progress=seconds]"
+            + " [--checkpoint=file] [--checkpoint-every=seconds] [--engine=name]"
+            + " [--workers=count] [--listen=port] [--offheap=megabytes]"
+            + " [--radius=moves] [--cache=directory] [--cache-size=megabytes] [--telemetry]"
+            + " [--presolve=directory]";
+
+    /** The arguments that are not options. */
+    private final List<String> positional = new ArrayList<>();
+
+    /** Time budget in milliseconds. */
+    private long timeBudgetMillis = Solver.UNLIMITED;
+
+    /** Node budget. */
+    private long nodeBudget = Solver.UNLIMITED;
+
+    /** Progress interval in milliseconds, 0 when progress is off. */
+    private long progressMillis;
+
+    /** Checkpoint file, null when checkpoints are off. */
+    private Path checkpointFile;
+
+    /** Checkpoint interval in milliseconds. */
+    private long checkpointMillis = 60_000;
+
+    /** Name of the engine to solve with. */
+    private String engine = "bfs";
+
+    /** Number of worker processes for the distributed engine. */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /** Port the distributed engine waits for workers on, -1 to start local workers. */
+    private int listenPort = -1;
+
+    /** Memory budget of the off-heap store in bytes, 0 to search on the heap. */
+    private long offHeapBytes;
+
+    /** Radius of the backward search of the reverse engine. */
+    private int radius = ReverseSearchCache.UNLIMITED_RADIUS;
+
+    /** Solution cache directory, null when the cache is off. */
+    private Path cacheDirectory;
+
+    /** Size bound of the solution cache in bytes. */
+    private long cacheBytes = SolutionCache.DEFAULT_MAX_BYTES;
+
+    /** Whether solves are published over JMX. */
+    private boolean telemetry;
+
+    /** Directories whose puzzle files are solved in the background. */
+    private final List<Path> presolveDirectories = new ArrayList<>();
+
+    /**
+     * Splits the command line arguments into options and positional arguments.
+     * @param args the command line arguments
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option is unknown, its value is not valid,
+     *         or it cannot be combined with another option
+     */
+    public static SolverOptions parse(String[] args) {
+        SolverOptions options = new SolverOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                options.positional.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+            String value = equals < 0 ? "" : arg.substring(equals + 1);
+            options.set(name, value);
+        }
+        if (options.offHeapBytes > 0 && options.checkpointFile != null) {
+            throw new IllegalArgumentException("--offheap and --checkpoint cannot be combined");
+        }
+        return options;
+    }
+
+    /**
+     * Sets one option.
+     * @param name the option name without the leading dashes
+     * @param value the option value
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "time":
+                timeBudgetMillis = Math.round(positiveNumber(name, value) * 1000);
+                break;
+            case "nodes":
+                nodeBudget = positiveCount(name, value, Long.MAX_VALUE);
+                break;
+            case "progress":
+                progressMillis = Math.round(positiveNumber(name, value) * 1000);
+                break;
+            case "checkpoint":
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("--checkpoint needs a file name");
+                }
+                checkpointFile = Path.of(value);
+                break;
+            case "checkpoint-every":
+                checkpointMillis = Math.round(positiveNumber(name, value) * 1000);
+                break;
+            case "engine":
+                engine = value;
+                break;
+            case "workers":
+                workers = (int) positiveCount(name, value, Integer.MAX_VALUE);
+                break;
+            case "listen":
+                try {
+                    listenPort = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("--listen needs a port number, got '" + value + "'");
+                }
+                break;
+            case "offheap":
+                offHeapBytes = Math.round(positiveNumber(name, value) * (1 << 20));
+                break;
+            case "radius":
+                radius = (int) positiveCount(name, value, Integer.MAX_VALUE);
+                break;
+            case "cache":
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("--cache needs a directory name");
+                }
+                cacheDirectory = Path.of(value);
+                break;
+            case "cache-size":
+                cacheBytes = Math.round(positiveNumber(name, value) * (1 << 20));
+                break;
+            case "telemetry":
+                if (!value.isEmpty()) {
+                    throw new IllegalArgumentException("--telemetry takes no value");
+                }
+                telemetry = true;
+                break;
+            case "presolve":
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("--presolve needs a directory name");
+                }
+                presolveDirectories.add(Path.of(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option --" + name);
+        }
+    }
+
+    /**
+     * Parses the value of a numeric option.
+     * @param name the option name, used in the error message
+     * @param value the text to parse
+     * @return the value, always greater than zero
+     */
+    private static double positiveNumber(String name, String value) {
+        try {
+            double number = Double.parseDouble(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("--" + name + " needs a positive number, got '" + value + "'");
+    }
+
+    /**
+     * Parses the value of an option that counts something, such as nodes or workers.
+     * @param name the option name, used in the error message
+     * @param value the text to parse
+     * @param max the largest value the option can hold
+     * @return the value, a whole number from 1 to max
+     */
+    private static long positiveCount(String name, String value, long max) {
+        try {
+            double number = Double.parseDouble(value);
+            if (number >= 1 && number == Math.rint(number) && number <= max) {
+                return (long) number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("--" + name + " needs a whole number from 1 to " + max
+                + ", got '" + value + "'");
+    }
+
+    /**
+     * Gets the arguments that were not options.
+     * @return the positional arguments, in order
+     */
+    public String[] positional() {
+        return positional.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the name of the engine chosen with --engine.
+     * @return the engine name, bfs if none was chosen
+     */
+    public String engine() {
+        return engine;
+    }
+
+    /**
+     * Takes the engine and memory mode chosen by a planner, for --engine=auto.
+     * @param plan the plan to follow
+     */
+    public void follow(SolvePlanner.Plan plan) {
+        engine = plan.engine();
+        if (plan.offHeapBytes() > 0 && checkpointFile == null) {
+            offHeapBytes = plan.offHeapBytes();
+        }
+    }
+
+    /**
+     * Prints a plan's explanation, one line at a time.
+     * @param plan the plan
+     */
+    public static void printPlan(SolvePlanner.Plan plan) {
+        for (String line : plan.explanation()) {
+            System.out.println("Plan: " + line);
+        }
+    }
+
+    /**
+     * Gets the radius chosen with --radius.
+     * @return the radius, ReverseSearchCache.UNLIMITED_RADIUS if none was chosen
+     */
+    public int radius() {
+        return radius;
+    }
+
+    /**
+     * Tells whether --telemetry was given.
+     * @return true if solves should be published over JMX
+     */
+    public boolean telemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Gets the directories chosen with --presolve.
+     * @return the directories, empty if none were chosen
+     */
+    public List<Path> presolveDirectories() {
+        return List.copyOf(presolveDirectories);
+    }
+
+    /**
+     * Opens the solution cache chosen with --cache.
+     * @return the cache, null if none was chosen
+     * @throws IOException if the cache directory cannot be opened
+     */
+    public SolutionCache openCache() throws IOException {
+        return cacheDirectory == null ? null : new SolutionCache(cacheDirectory, cacheBytes);
+    }
+
+    /**
+     * Solves a configuration by breadth first search with these options, looking
+     * in the solution cache first when one was chosen and adding the result to it.
+     * @param puzzle the name of the puzzle in the cache
+     * @param codec how the puzzle's configurations are encoded
+     * @param start the configuration to solve
+     * @param target what start is solved towards when the codec does not hold it, null otherwise
+     * @param <C> the type of configuration
+     * @return the result of the solve or the cached one
+     * @throws IOException if the checkpoint or the cache cannot be opened
+     */
+    public <C extends Configuration> SolutionCache.Result<C> solve(String puzzle, ConfigurationCodec<C> codec,
+                                                                   C start, C target) throws IOException {
+        try (SolutionCache cache = openCache()) {
+            SolutionCache.Result<C> result = cache == null ? null : cache.lookup(puzzle, codec, start, target);
+            if (result == null) {
+                Solver<C> solver = new Solver<>(start);
+                apply(solver, codec, start, target);
+                result = SolutionCache.Result.of(solver, solver.solve());
+                if (cache != null) {
+                    cache.store(puzzle, codec, start, target, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Solves a configuration by breadth first search over the ranks of its state
+     * space, for --engine=bitset, looking in the solution cache first when one was
+     * chosen and adding the result to it. The time and node budgets and progress
+     * reporting apply, checkpoints and the off-heap store do not.
+     * @param puzzle the name of the puzzle in the cache
+     * @param codec how the puzzle's configurations are encoded
+     * @param space the ranks of the puzzle's configurations
+     * @param start the configuration to solve
+     * @param target what start is solved towards when the codec does not hold it, null otherwise
+     * @param <C> the type of configuration
+     * @return the result of the solve or the cached one
+     * @throws IOException if the cache cannot be opened
+     * @throws IllegalArgumentException if the space's bitsets do not fit in the heap
+     */
+    public <C extends Configuration> SolutionCache.Result<C> solveRanked(String puzzle, ConfigurationCodec<C> codec,
+                                                                         RankedStateSpace<C> space, C start,
+                                                                         C target) throws IOException {
+        try (SolutionCache cache = openCache()) {
+            SolutionCache.Result<C> result = cache == null ? null : cache.lookup(puzzle, codec, start, target);
+            if (result == null) {
+                Runtime runtime = Runtime.getRuntime();
+                long needed = BitsetSolver.memoryNeeded(space.size());
+                // the arrays are large and need room to be placed, so leave part of the free heap
+                long available = (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / 4 * 3;
+                if (needed > available) {
+                    throw new IllegalArgumentException("The bitsets of " + space.size() + " configurations need "
+                            + (needed >> 20) + " MB, at most " + (available >> 20) + " MB of the heap can be used");
+                }
+                BitsetSolver<C> solver = new BitsetSolver<>(space, start);
+                if (timeBudgetMillis != Solver.UNLIMITED) {
+                    solver.setTimeBudget(timeBudgetMillis);
+                }
+                if (nodeBudget != Solver.UNLIMITED) {
+                    solver.setNodeBudget(nodeBudget);
+                }
+                if (progressMillis > 0) {
+                    solver.setProgressListener((depth, frontier, nodes, rate) ->
+                            System.err.printf("depth %d, frontier %d, nodes %d, %.0f nodes/s%n",
+                                    depth, frontier, nodes, rate), progressMillis);
+                }
+                SolveOutcome outcome = solver.solve();
+                result = new SolutionCache.Result<>(outcome, solver.getSolutionPath(),
+                        solver.getTotalConfigurations(), solver.getUniqueConfigurations());
+                if (cache != null) {
+                    cache.store(puzzle, codec, start, target, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Applies the node budget and the off-heap memory budget to a reverse search cache.
+     * @param cache the cache to configure
+     */
+    public void apply(ReverseSearchCache<?> cache) {
+        if (nodeBudget != Solver.UNLIMITED) {
+            cache.setNodeBudget(nodeBudget);
+        }
+        if (offHeapBytes > 0) {
+            cache.setMemoryBudget(offHeapBytes);
+        }
+    }
+
+    /**
+     * Applies the node and time budgets to a search.
+     * @param search the search to configure
+     */
+    public void apply(BudgetedSearch search) {
+        if (timeBudgetMillis != Solver.UNLIMITED) {
+            search.setTimeBudget(timeBudgetMillis);
+        }
+        if (nodeBudget != Solver.UNLIMITED) {
+            search.setNodeBudget(nodeBudget);
+        }
+    }
+
+    /**
+     * Sets up a distributed search with the chosen workers, port and budgets.
+     * @param solver the distributed solver to configure
+     */
+    public void apply(DistributedSolver solver) {
+        apply((BudgetedSearch) solver);
+        solver.setWorkers(workers);
+        if (listenPort >= 0) {
+            solver.setListenPort(listenPort);
+        }
+    }
+
+    /**
+     * Applies the budgets, progress reporting, telemetry and checkpoints to a solver.
+     * @param solver the solver to configure
+     * @param codec how the puzzle's configurations are written to a checkpoint or the off-heap store
+     * @param start the configuration the solver starts from
+     * @param target what start is solved towards when the codec does not hold it, null otherwise
+     * @param <C> the type of configuration
+     * @throws IOException if the checkpoint file cannot be opened, or holds a search for another puzzle
+     */
+    public <C extends Configuration> void apply(Solver<C> solver, ConfigurationCodec<C> codec, C start, C target)
+            throws IOException {
+        if (timeBudgetMillis != Solver.UNLIMITED) {
+            solver.setTimeBudget(timeBudgetMillis);
+        }
+        if (nodeBudget != Solver.UNLIMITED) {
+            solver.setNodeBudget(nodeBudget);
+        }
+        if (progressMillis > 0) {
+            solver.setProgressListener((depth, frontier, nodes, rate) ->
+                    System.err.printf("depth %d, frontier %d, nodes %d, %.0f nodes/s%n",
+                            depth, frontier, nodes, rate), progressMillis);
+        }
+        solver.setMonitored(telemetry);
+        if (offHeapBytes > 0) {
+            solver.setOffHeap(codec, offHeapBytes);
+        }
+        if (checkpointFile != null) {
+            solver.setCheckpoint(new SolverCheckpoint(checkpointFile, codec, start, target), checkpointMillis);
+        }
+    }
+
+    /**
+     * Gives the message a front end prints when a solve stops without an answer.
+     * @param outcome the outcome of the solve
+     * @return the message for CANCELLED and BUDGET_EXCEEDED, null for the other outcomes
+     */
+    public static String stoppedMessage(SolveOutcome outcome) {
+        switch (outcome) {
+            case CANCELLED:
+                return "Solve cancelled.";
+            case BUDGET_EXCEEDED:
+                return "Solve stopped: budget exceeded.";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package puzzles.common.solver.distributed;
+
+import puzzles.common.solver.BudgetedSearch;
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.ConfigurationCodec;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.Solver;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breadth first search spread over several worker processes, the coordinator side.
+ * <p>
+ * Every configuration is owned by one worker, chosen by hashing its encoded
+ * bytes, so no process ever holds more than its share of the visited set. The
+ * search runs one layer at a time: the coordinator tells every worker to expand
+ * its part of the frontier, the workers send each successor to its owner in
+ * batches over direct socket connections between them, and each owner keeps the
+ * successors it has not seen as its part of the next frontier. A worker reports
+ * back once every other worker has told it that its sends for the layer are
+ * done, so when all reports are in nothing is left in flight and the layer is
+ * complete. The search ends when a worker reports a solution or the whole next
+ * frontier is empty. The cancellation token and the node and time budgets are
+ * checked between layers.
+ * <p>
+ * Workers are started with {@link SolverWorker}. The coordinator can spawn
+ * them as local JVMs, or listen on a port and wait for workers started by hand,
+ * on this host or others. Hashing the encoded bytes rather than calling
+ * hashCode keeps ownership the same in every process.
+ */
+public class DistributedSolver implements BudgetedSearch {
+
+    /** Sent by a worker when it connects to the coordinator. */
+    static final int HELLO = 0x505A4457; // "PZDW"
+
+    /** Command: expand the frontier and report the next one. */
+    static final int LAYER = 1;
+
+    /** Command: send back a state and the reference of its predecessor. */
+    static final int STATE = 2;
+
+    /** Command: shut down. */
+    static final int STOP = 3;
+
+    /** Longest wait for a spawned worker to connect, in milliseconds. */
+    private static final int SPAWN_TIMEOUT_MILLIS = 60_000;
+
+    /** Predecessor reference of the initial configuration. */
+    static final long NO_PREDECESSOR = -1;
+
+    /** The configuration the search starts from. */
+    private final Configuration initialConfig;
+
+    /** How configurations are sent between processes. */
+    private final ConfigurationCodec<Configuration> codec;
+
+    /** Class name of the factory workers build the puzzle with. */
+    private final String factoryClass;
+
+    /** The puzzle's arguments, given to the factory in every worker. */
+    private final String[] args;
+
+    /** Number of worker processes. */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /** Port to wait for workers on, -1 to spawn local workers instead. */
+    private int listenPort = -1;
+
+    /** Token checked between layers, null if the search cannot be cancelled. */
+    private CancellationToken cancellationToken;
+
+    /** Maximum number of configurations the workers may generate, checked between layers. */
+    private long nodeBudget = Solver.UNLIMITED;
+
+    /** Maximum running time in milliseconds, checked between layers. */
+    private long timeBudgetMillis = Solver.UNLIMITED;
+
+    /** System.nanoTime when the search started. */
+    private long startNanos;
+
+    /** Connections to the workers, by worker id. */
+    private final List<Connection> connections = new ArrayList<>();
+
+    /** Worker processes started by this coordinator. */
+    private final List<Process> processes = new ArrayList<>();
+
+    /** The solution path, empty until one is found. */
+    private final List<Configuration> solution = new LinkedList<>();
+
+    /** Number of configurations generated over all workers. */
+    private long totalConfigurations;
+
+    /** Number of distinct configurations over all workers. */
+    private long uniqueConfigurations;
+
+    /**
+     * Prepares a distributed search.
+     * @param puzzle the puzzle as built by the factory
+     * @param factory the factory the workers build the puzzle with
+     * @param args the arguments the puzzle was built from
+     */
+    @SuppressWarnings("unchecked")
+    public DistributedSolver(PuzzleFactory.Puzzle puzzle, Class<? extends PuzzleFactory> factory, String[] args) {
+        this.initialConfig = puzzle.initialConfig();
+        this.codec = (ConfigurationCodec<Configuration>) puzzle.codec();
+        this.factoryClass = factory.getName();
+        this.args = args.clone();
+    }
+
+    /**
+     * Sets the number of worker processes.
+     * @param workers the number of workers, at least 1
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("need at least one worker, got " + workers);
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Makes the coordinator wait for workers on a port instead of spawning them.
+     * @param port the port to listen on, 0 for any free port
+     */
+    public void setListenPort(int port) {
+        this.listenPort = port;
+    }
+
+    /**
+     * Sets the token checked between layers, cancelling it makes solve return CANCELLED.
+     * @param cancellationToken the token, or null to make the search uncancellable
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Limits the number of configurations the workers may generate. A layer
+     * that is started is finished, so the search may go over by one layer.
+     * @param nodeBudget the maximum number of generated configurations, or Solver.UNLIMITED
+     */
+    @Override
+    public void setNodeBudget(long nodeBudget) {
+        if (nodeBudget <= 0) {
+            throw new IllegalArgumentException("Node budget must be positive: " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Limits the time the search may run. A layer that is started is finished,
+     * so the search may go over by one layer.
+     * @param timeBudgetMillis the maximum running time in milliseconds, or Solver.UNLIMITED
+     */
+    @Override
+    public void setTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive: " + timeBudgetMillis);
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Runs the search with the workers and shuts them down afterwards.
+     * @return SOLVED, NO_SOLUTION, CANCELLED or BUDGET_EXCEEDED
+     * @throws IOException if a worker cannot be started or a connection fails
+     */
+    public SolveOutcome solve() throws IOException {
+        startNanos = System.nanoTime();
+        solution.clear();
+        totalConfigurations = 1;
+        uniqueConfigurations = 1;
+        if (initialConfig.isSolution()) {
+            solution.add(initialConfig);
+            return SolveOutcome.SOLVED;
+        }
+        try {
+            connect();
+            return search();
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Builds the command that starts a local worker the way this process was
+     * started: from the module path when the solver runs as a named module,
+     * which leaves the class path empty, and from the class path otherwise.
+     * @return the command, without the address of the coordinator
+     */
+    private static List<String> workerCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        Module module = SolverWorker.class.getModule();
+        String modulePath = System.getProperty("jdk.module.path");
+        if (module.isNamed() && modulePath != null) {
+            command.add("-p");
+            command.add(modulePath);
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                command.add("--add-modules");
+                command.add("jdk.incubator.vector");
+            }
+            command.add("-m");
+            command.add(module.getName() + "/" + SolverWorker.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SolverWorker.class.getName());
+        }
+        return command;
+    }
+
+    /**
+     * Gets the workers connected and wired to each other.
+     * @throws IOException if a worker cannot be started or does not connect
+     */
+    private void connect() throws IOException {
+        boolean spawn = listenPort < 0;
+        try (ServerSocket server = spawn
+                ? new ServerSocket(0, workers, InetAddress.getLoopbackAddress())
+                : new ServerSocket(listenPort, workers)) {
+            if (spawn) {
+                server.setSoTimeout(SPAWN_TIMEOUT_MILLIS); // a worker that fails to start must not hang the solve
+                List<String> command = workerCommand();
+                command.add("localhost:" + server.getLocalPort());
+                for (int i = 0; i < workers; i++) {
+                    processes.add(new ProcessBuilder(command).inheritIO().start());
+                }
+            } else {
+                System.err.println("Waiting for " + workers + " workers on port " + server.getLocalPort());
+            }
+            List<String> hosts = new ArrayList<>();
+            List<Integer> ports = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                Connection connection = new Connection(server.accept());
+                if (connection.in.readInt() != HELLO) {
+                    throw new IOException("a connection on port " + server.getLocalPort() + " is not a solver worker");
+                }
+                hosts.add(connection.in.readUTF());
+                ports.add(connection.in.readInt());
+                connections.add(connection);
+            }
+            int rootOwner = owner(encode(initialConfig), workers);
+            for (int id = 0; id < workers; id++) {
+                DataOutputStream out = connections.get(id).out;
+                out.writeInt(id);
+                out.writeInt(workers);
+                for (int peer = 0; peer < workers; peer++) {
+                    out.writeUTF(hosts.get(peer));
+                    out.writeInt(ports.get(peer));
+                }
+                out.writeUTF(factoryClass);
+                out.writeInt(args.length);
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+                out.writeInt(rootOwner);
+                out.flush();
+            }
+            for (Connection connection : connections) {
+                connection.in.readInt(); // ready once wired to its peers
+            }
+        }
+    }
+
+    /**
+     * Runs the layers until a solution is found or the frontier is empty.
+     * @return the outcome of the search
+     * @throws IOException if a connection fails
+     */
+    private SolveOutcome search() throws IOException {
+        while (true) {
+            if (cancellationToken != null && cancellationToken.isCancelled()) {
+                return SolveOutcome.CANCELLED;
+            }
+            if (totalConfigurations >= nodeBudget || (timeBudgetMillis != Solver.UNLIMITED
+                    && System.nanoTime() - startNanos >= timeBudgetMillis * 1_000_000L)) {
+                return SolveOutcome.BUDGET_EXCEEDED;
+            }
+            for (Connection connection : connections) {
+                connection.out.writeInt(LAYER);
+                connection.out.flush();
+            }
+            long frontier = 0;
+            int foundWorker = -1;
+            int foundIndex = -1;
+            for (int id = 0; id < workers; id++) {
+                DataInputStream in = connections.get(id).in;
+                totalConfigurations += in.readLong();
+                frontier += in.readInt();
+                int index = in.readInt();
+                if (index >= 0 && foundWorker < 0) {
+                    foundWorker = id;
+                    foundIndex = index;
+                }
+            }
+            uniqueConfigurations += frontier;
+            if (foundWorker >= 0) {
+                tracePath(((long) foundWorker << 32) | foundIndex);
+                return SolveOutcome.SOLVED;
+            }
+            if (frontier == 0) {
+                return SolveOutcome.NO_SOLUTION;
+            }
+        }
+    }
+
+    /**
+     * Builds the solution path by following predecessor references back to the start.
+     * @param reference the worker id in the high half and its index of the solution in the low half
+     * @throws IOException if a connection fails
+     */
+    private void tracePath(long reference) throws IOException {
+        while (reference != NO_PREDECESSOR) {
+            Connection connection = connections.get((int) (reference >>> 32));
+            connection.out.writeInt(STATE);
+            connection.out.writeInt((int) reference);
+            connection.out.flush();
+            byte[] state = new byte[connection.in.readInt()];
+            connection.in.readFully(state);
+            reference = connection.in.readLong();
+            solution.add(0, codec.decode(ByteBuffer.wrap(state)));
+        }
+    }
+
+    /**
+     * Stops the workers and waits for spawned ones to exit.
+     */
+    private void shutdown() {
+        for (Connection connection : connections) {
+            try (connection.socket) {
+                connection.out.writeInt(STOP);
+                connection.out.flush();
+            } catch (IOException e) {
+                // the worker is gone already
+            }
+        }
+        connections.clear();
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        processes.clear();
+    }
+
+    /**
+     * Encodes a configuration.
+     * @param config the configuration
+     * @return its bytes
+     */
+    private byte[] encode(Configuration config) {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(config));
+        codec.encode(config, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Picks the worker that owns a configuration. It only depends on the bytes,
+     * so every process agrees on it.
+     * @param state the encoded configuration
+     * @param workers the number of workers
+     * @return the id of the owner
+     */
+    static int owner(byte[] state, int workers) {
+        int hash = Arrays.hashCode(state);
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, workers);
+    }
+
+    /**
+     * Returns the solution path, starting with the initial configuration.
+     * @return the solution path, empty if no solution was found
+     */
+    public List<Configuration> getSolutionPath() {
+        return solution;
+    }
+
+    /**
+     * Returns the solution path as the puzzle's own configuration type. The
+     * puzzle comes from a PuzzleFactory, so the type is only known to the caller
+     * and every step is checked against it.
+     * @param type the class of the puzzle's configurations
+     * @param <C> the type of configuration
+     * @return the solution path, empty if no solution was found
+     */
+    public <C extends Configuration> List<C> getSolutionPath(Class<C> type) {
+        List<C> path = new ArrayList<>(solution.size());
+        for (Configuration config : solution) {
+            path.add(type.cast(config));
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of configurations generated over all workers.
+     * @return the total number of configurations
+     */
+    public long getTotalConfigurations() {
+        return totalConfigurations;
+    }
+
+    /**
+     * Returns the number of distinct configurations over all workers.
+     * @return the number of unique configurations
+     */
+    public long getUniqueConfigurations() {
+        return uniqueConfigurations;
+    }
+
+    /**
+     * A socket with buffered data streams on both directions.
+     */
+    static final class Connection {
+
+        /** The socket. */
+        final Socket socket;
+
+        /** Reads from the socket. */
+        final DataInputStream in;
+
+        /** Writes to the socket, flushed after each message. */
+        final DataOutputStream out;
+
+        /**
+         * Wraps a connected socket.
+         * @param socket the socket
+         * @throws IOException if the streams cannot be opened
+         */
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package puzzles.common.solver.distributed;
+
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.ConfigurationCodec;
+import java.io.IOException;
+
+/**
+ * Builds a puzzle from its command line arguments. Worker processes only get
+ * the name of the factory class and the arguments, so every process builds the
+ * same initial configuration and codec. Implementations need a public
+ * constructor without arguments.
+ */
+@FunctionalInterface
+public interface PuzzleFactory {
+
+    /**
+     * A puzzle ready to be searched.
+     * @param initialConfig the configuration the search starts from
+     * @param codec how the puzzle's configurations are sent between processes
+     */
+    record Puzzle(Configuration initialConfig, ConfigurationCodec<? extends Configuration> codec) {
+    }
+
+    /**
+     * Builds the puzzle.
+     * @param args the puzzle's positional command line arguments
+     * @return the initial configuration and codec
+     * @throws IOException if the puzzle has to be read from a file that cannot be read
+     */
+    Puzzle create(String[] args) throws IOException;
+}
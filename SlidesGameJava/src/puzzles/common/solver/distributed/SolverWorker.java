@@ -0,0 +1,400 @@
+package puzzles.common.solver.distributed;
+
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.ConfigurationCodec;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A worker process of a {@link DistributedSolver}, owning one hash partition of
+ * the configurations.
+ * <p>
+ * A worker keeps the encoded configurations it owns in discovery order, so a
+ * configuration is known to every process by the owner's id and its index
+ * there. That pair is all a successor carries about its predecessor. For each
+ * layer the worker decodes its part of the frontier, generates the successors,
+ * and sends every successor to its owner. A record on the wire is the length of
+ * the encoded configuration, with the top bit set when it is a solution, the
+ * encoding and the predecessor's index. Records are gathered in batches per
+ * peer, and an empty batch tells the peer that the layer's sends are done.
+ * Batches from peers are read by one thread per peer and stored as they come.
+ */
+public class SolverWorker {
+
+    /** Size of a batch of records sent to a peer. */
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    /** Marks a record whose configuration is a solution. */
+    private static final int SOLUTION_FLAG = 0x8000;
+
+    /** This worker's id. */
+    private final int id;
+
+    /** Number of workers. */
+    private final int workers;
+
+    /** How configurations are encoded. */
+    private final ConfigurationCodec<Configuration> codec;
+
+    /** Encoded configurations owned by this worker, in discovery order. */
+    private final List<byte[]> states = new ArrayList<>();
+
+    /** Index of each owned configuration in states. */
+    private final Map<StateKey, Integer> index = new HashMap<>();
+
+    /** Predecessor reference of each owned configuration, worker id in the high half. */
+    private long[] predecessors = new long[1024];
+
+    /** Index in states of the first configuration of the frontier. */
+    private int layerStart;
+
+    /**
+     * Index in states just past the frontier. It is fixed when a layer ends,
+     * because a quick peer may already send successors of the next layer
+     * before this worker starts expanding.
+     */
+    private int layerEnd;
+
+    /** Index of the first solution found, -1 if none. */
+    private int foundIndex = -1;
+
+    /** Number of peers that finished sending for the current layer. */
+    private int finishedPeers;
+
+    /** Connections this worker sends successors over, by peer id, null for itself. */
+    private final DistributedSolver.Connection[] peers;
+
+    /** Batch being filled for each peer. */
+    private final ByteBuffer[] batches;
+
+    /**
+     * Creates a worker.
+     * @param id this worker's id
+     * @param workers the number of workers
+     * @param codec how configurations are encoded
+     */
+    @SuppressWarnings("unchecked")
+    private SolverWorker(int id, int workers, ConfigurationCodec<? extends Configuration> codec) {
+        this.id = id;
+        this.workers = workers;
+        this.codec = (ConfigurationCodec<Configuration>) codec;
+        this.peers = new DistributedSolver.Connection[workers];
+        this.batches = new ByteBuffer[workers];
+    }
+
+    /**
+     * Stores a configuration if it is new to this worker.
+     * @param state the encoded configuration
+     * @param predecessor the reference of its predecessor
+     * @param solution whether the configuration is a solution
+     */
+    private synchronized void add(byte[] state, long predecessor, boolean solution) {
+        int next = states.size();
+        if (index.putIfAbsent(new StateKey(state), next) != null) {
+            return;
+        }
+        states.add(state);
+        if (next == predecessors.length) {
+            predecessors = Arrays.copyOf(predecessors, next * 2);
+        }
+        predecessors[next] = predecessor;
+        if (solution && foundIndex < 0) {
+            foundIndex = next;
+        }
+    }
+
+    /**
+     * Expands this worker's part of the frontier and waits until every peer has
+     * sent its successors for the layer.
+     * @return the number of configurations generated
+     * @throws IOException if a peer connection fails
+     */
+    private long expandLayer() throws IOException {
+        byte[][] frontier;
+        int first;
+        synchronized (this) {
+            first = layerStart;
+            frontier = states.subList(first, layerEnd).toArray(new byte[0][]);
+        }
+        long generated = 0;
+        for (int i = 0; i < frontier.length; i++) {
+            Configuration config = codec.decode(ByteBuffer.wrap(frontier[i]));
+            long reference = ((long) id << 32) | (first + i);
+            for (Configuration neighbor : config.getNeighbors()) {
+                generated++;
+                ByteBuffer encoded = ByteBuffer.allocate(codec.encodedSize(neighbor));
+                codec.encode(neighbor, encoded);
+                byte[] state = encoded.array();
+                int owner = DistributedSolver.owner(state, workers);
+                if (owner == id) {
+                    add(state, reference, neighbor.isSolution());
+                } else {
+                    send(owner, state, first + i, neighbor.isSolution());
+                }
+            }
+        }
+        for (int peer = 0; peer < workers; peer++) {
+            if (peer != id) {
+                flush(peer);
+                peers[peer].out.writeInt(0); // done with this layer
+                peers[peer].out.flush();
+            }
+        }
+        synchronized (this) {
+            while (finishedPeers < workers - 1) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for peers", e);
+                }
+            }
+            finishedPeers -= workers - 1;
+            layerStart = layerEnd;
+            layerEnd = states.size();
+        }
+        return generated;
+    }
+
+    /**
+     * Adds a successor to the batch of its owner, sending the batch when it is full.
+     * @param peer the owner
+     * @param state the encoded successor
+     * @param predecessor this worker's index of its predecessor
+     * @param solution whether the successor is a solution
+     * @throws IOException if the peer connection fails
+     */
+    private void send(int peer, byte[] state, int predecessor, boolean solution) throws IOException {
+        if (state.length >= SOLUTION_FLAG) {
+            throw new IOException("a configuration of " + state.length + " bytes is too large to send");
+        }
+        ByteBuffer batch = batches[peer];
+        if (batch.remaining() < Short.BYTES + state.length + Integer.BYTES) {
+            flush(peer);
+        }
+        batch.putShort((short) (state.length | (solution ? SOLUTION_FLAG : 0)));
+        batch.put(state);
+        batch.putInt(predecessor);
+    }
+
+    /**
+     * Sends the batch of a peer if it holds any records.
+     * @param peer the peer
+     * @throws IOException if the peer connection fails
+     */
+    private void flush(int peer) throws IOException {
+        ByteBuffer batch = batches[peer];
+        if (batch.position() > 0) {
+            peers[peer].out.writeInt(batch.position());
+            peers[peer].out.write(batch.array(), 0, batch.position());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reads batches from one peer until it disconnects.
+     * @param peer the peer's id
+     * @param in the connection from the peer
+     */
+    private void receive(int peer, DataInputStream in) {
+        long high = (long) peer << 32;
+        byte[] batch = new byte[BATCH_SIZE];
+        try {
+            while (true) {
+                int size = in.readInt();
+                if (size == 0) {
+                    synchronized (this) {
+                        finishedPeers++;
+                        notifyAll();
+                    }
+                    continue;
+                }
+                in.readFully(batch, 0, size);
+                ByteBuffer records = ByteBuffer.wrap(batch, 0, size);
+                while (records.hasRemaining()) {
+                    int header = records.getShort() & 0xFFFF;
+                    byte[] state = new byte[header & ~SOLUTION_FLAG];
+                    records.get(state);
+                    add(state, high | records.getInt(), (header & SOLUTION_FLAG) != 0);
+                }
+            }
+        } catch (EOFException e) {
+            // the peer shut down
+        } catch (IOException e) {
+            System.err.println("Worker " + id + ": lost peer " + peer + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Connects to the coordinator, wires up with the other workers and runs
+     * the coordinator's commands until told to stop.
+     * @param coordinator the coordinator's host
+     * @param port the coordinator's port
+     * @param advertisedHost the host peers reach this worker at, null for the
+     *                       address this worker reaches the coordinator from
+     * @throws IOException if a connection fails
+     */
+    private static void run(String coordinator, int port, String advertisedHost) throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 1024);
+             Socket socket = new Socket(coordinator, port)) {
+            DistributedSolver.Connection control = new DistributedSolver.Connection(socket);
+            control.out.writeInt(DistributedSolver.HELLO);
+            control.out.writeUTF(advertisedHost != null ? advertisedHost : socket.getLocalAddress().getHostAddress());
+            control.out.writeInt(server.getLocalPort());
+            control.out.flush();
+
+            int id = control.in.readInt();
+            int workers = control.in.readInt();
+            String[] hosts = new String[workers];
+            int[] ports = new int[workers];
+            for (int peer = 0; peer < workers; peer++) {
+                hosts[peer] = control.in.readUTF();
+                ports[peer] = control.in.readInt();
+            }
+            String factoryClass = control.in.readUTF();
+            String[] args = new String[control.in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = control.in.readUTF();
+            }
+            int rootOwner = control.in.readInt();
+
+            PuzzleFactory.Puzzle puzzle;
+            try {
+                puzzle = Class.forName(factoryClass).asSubclass(PuzzleFactory.class)
+                        .getDeclaredConstructor().newInstance().create(args);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("cannot build the puzzle with " + factoryClass + ": " + e, e);
+            }
+            SolverWorker worker = new SolverWorker(id, workers, puzzle.codec());
+            if (id == rootOwner) {
+                ByteBuffer root = ByteBuffer.allocate(worker.codec.encodedSize(puzzle.initialConfig()));
+                worker.codec.encode(puzzle.initialConfig(), root);
+                worker.add(root.array(), DistributedSolver.NO_PREDECESSOR, false);
+                worker.layerEnd = 1;
+            }
+            for (int peer = 0; peer < workers; peer++) {
+                if (peer != id) {
+                    worker.peers[peer] = new DistributedSolver.Connection(new Socket(hosts[peer], ports[peer]));
+                    worker.peers[peer].out.writeInt(id);
+                    worker.peers[peer].out.flush();
+                    worker.batches[peer] = ByteBuffer.allocate(BATCH_SIZE);
+                }
+            }
+            for (int i = 0; i < workers - 1; i++) {
+                Socket incoming = server.accept();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(incoming.getInputStream(), 1 << 16));
+                int peer = in.readInt();
+                Thread receiver = new Thread(() -> worker.receive(peer, in), "receive-" + peer);
+                receiver.setDaemon(true);
+                receiver.start();
+            }
+            control.out.writeInt(id); // ready
+            control.out.flush();
+
+            try {
+                worker.serve(control);
+            } finally {
+                for (DistributedSolver.Connection peer : worker.peers) {
+                    if (peer != null) {
+                        peer.socket.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the coordinator's commands until told to stop.
+     * @param control the connection to the coordinator
+     * @throws IOException if a connection fails
+     */
+    private void serve(DistributedSolver.Connection control) throws IOException {
+        while (true) {
+            int command = control.in.readInt();
+            switch (command) {
+                case DistributedSolver.LAYER:
+                    long generated = expandLayer();
+                    synchronized (this) {
+                        control.out.writeLong(generated);
+                        control.out.writeInt(layerEnd - layerStart);
+                        control.out.writeInt(foundIndex);
+                    }
+                    break;
+                case DistributedSolver.STATE:
+                    int at = control.in.readInt();
+                    synchronized (this) {
+                        control.out.writeInt(states.get(at).length);
+                        control.out.write(states.get(at));
+                        control.out.writeLong(predecessors[at]);
+                    }
+                    break;
+                case DistributedSolver.STOP:
+                    return;
+                default:
+                    throw new IOException("unknown command " + command);
+            }
+            control.out.flush();
+        }
+    }
+
+    /**
+     * Starts a worker.
+     * @param args the coordinator as host:port, optionally followed by the host
+     *             other workers should use to reach this one
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2 || args[0].lastIndexOf(':') < 0) {
+            System.out.println("Usage: java SolverWorker coordinator-host:port [advertised-host]");
+            return;
+        }
+        int colon = args[0].lastIndexOf(':');
+        try {
+            run(args[0].substring(0, colon), Integer.parseInt(args[0].substring(colon + 1)),
+                    args.length == 2 ? args[1] : null);
+        } catch (IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * An encoded configuration used as a hash key.
+     */
+    private static final class StateKey {
+
+        /** The encoded configuration. */
+        private final byte[] bytes;
+
+        /** Hash of the bytes. */
+        private final int hash;
+
+        /**
+         * Wraps an encoded configuration.
+         * @param bytes the encoding
+         */
+        StateKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateKey && Arrays.equals(bytes, ((StateKey) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package puzzles.crossing;
-import puzzles.common.solver.Configuration;
-import puzzles.common.solver.Solver;
+import puzzles.common.solver.SolutionCache;
+import puzzles.common.solver.SolvePlanner;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.SolverOptions;
+import puzzles.common.solver.distributed.DistributedSolver;
+import puzzles.common.solver.distributed.PuzzleFactory;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.List;
 
 /**
@@ -9,34 +18,145 @@ import java.util.List;
  * and uses a solver to find a solution path if existing.
  * (if you want to see working steps run crossing 0 1 and 2 1 those ones are the only ones that kinda
  * work for showing steps.
+ * With --engine=closed-form the optimal steps are worked out directly by CrossingPlan,
+ * which handles millions of animals. With --engine=bitset the search runs on the
+ * ranks of CrossingStateSpace.
  */
-public class Crossing {
+public class Crossing implements PuzzleFactory {
 
     /**
      * The main method of the Crossing puzzle solver.
-     * @param args the command line arguments specifying the number of pups and wolves
+     * @param args the command line arguments specifying the number of pups and wolves,
+     *             followed by optional solver options
      */
     public static void main(String[] args) {
+        SolverOptions options;
+        try {
+            options = SolverOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java Crossing pups wolves " + SolverOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        args = options.positional();
         if (args.length < 2) {
-            System.out.println("Usage: java Crossing pups wolves");
+            System.out.println("Usage: java Crossing pups wolves " + SolverOptions.USAGE);
         } else {
             int numPups = Integer.parseInt(args[0]);
             int numWolves = Integer.parseInt(args[1]);
-            CrossingConfiguration initialConfig = new CrossingConfiguration(numPups, numWolves);
-            Solver solver = new Solver(initialConfig);
-            boolean hasSolution = solver.solve();
-            System.out.println("Pups: " + numPups + ", Wolves: " + numWolves);
-            System.out.println("Total configs: " + solver.getTotalConfigurations());
-            System.out.println("Unique configs: " + solver.getUniqueConfigurations());
-            if (hasSolution) {
-                List<Configuration> solutionPath = solver.getSolutionPath();
-                for (int i = 0; i < solutionPath.size(); i++) {
-                    CrossingConfiguration crossingConfig = (CrossingConfiguration) solutionPath.get(i);
-                    System.out.println("Step " + i + ": " + crossingConfig);
+            if (options.engine().equals("auto")) {
+                SolvePlanner.Plan plan = plan(numPups, numWolves);
+                SolverOptions.printPlan(plan);
+                options.follow(plan);
+            }
+            if (options.engine().equals("closed-form")) {
+                printPlan(numPups, numWolves);
+                return;
+            } else if (options.engine().equals("distributed")) {
+                DistributedSolver solver = new DistributedSolver(new Crossing().create(args), Crossing.class, args);
+                options.apply(solver);
+                try {
+                    SolveOutcome outcome = solver.solve();
+                    printResult(numPups, numWolves, outcome, solver.getSolutionPath(CrossingConfiguration.class),
+                            solver.getTotalConfigurations(), solver.getUniqueConfigurations());
+                } catch (IOException e) {
+                    System.out.println("Distributed search failed: " + e.getMessage());
+                }
+                return;
+            } else if (!options.engine().equals("bfs") && !options.engine().equals("bitset")) {
+                System.out.println("Unknown engine " + options.engine()
+                        + ", use bfs, bitset, closed-form, distributed or auto");
+                return;
+            }
+            SolutionCache.Result<CrossingConfiguration> result;
+            try {
+                CrossingConfiguration start = new CrossingConfiguration(numPups, numWolves);
+                if (options.engine().equals("bitset")) {
+                    result = options.solveRanked("crossing", new CrossingCodec(),
+                            new CrossingStateSpace(numPups, numWolves), start, null);
+                } else {
+                    result = options.solve("crossing", new CrossingCodec(), start, null);
                 }
-            } else {
-                System.out.println("No solution found.");
+            } catch (IOException e) {
+                System.out.println("Error opening the checkpoint or solution cache: " + e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            printResult(numPups, numWolves, result.outcome(), result.path(),
+                    result.totalConfigurations(), result.uniqueConfigurations());
+        }
+    }
+
+    /**
+     * Plans how to solve a puzzle, from the 2*(pups+1)*(wolves+1) configurations
+     * and the number of moves CrossingPlan works out.
+     * @param numPups the number of pups
+     * @param numWolves the number of wolves
+     * @return the plan
+     */
+    private static SolvePlanner.Plan plan(int numPups, int numWolves) {
+        SolvePlanner planner = new SolvePlanner(new CrossingConfiguration(numPups, numWolves), new CrossingCodec());
+        planner.setStateCount(2.0 * (numPups + 1) * (numWolves + 1), "2*(pups+1)*(wolves+1)");
+        long moves = new CrossingPlan(numPups, numWolves).moves();
+        planner.setDepth((int) Math.min(moves, Integer.MAX_VALUE), true, "closed form");
+        planner.addAlternative("closed-form", "works the optimal moves out directly without searching");
+        return planner.plan();
+    }
+
+    /**
+     * Prints the counts and the outcome of a search, with the steps if it was solved.
+     * @param numPups the number of pups
+     * @param numWolves the number of wolves
+     * @param outcome the outcome of the search
+     * @param solutionPath the solution steps
+     * @param totalConfigs the number of configurations generated
+     * @param uniqueConfigs the number of distinct configurations seen
+     */
+    private static void printResult(int numPups, int numWolves, SolveOutcome outcome,
+                                    List<CrossingConfiguration> solutionPath, long totalConfigs, long uniqueConfigs) {
+        System.out.println("Pups: " + numPups + ", Wolves: " + numWolves);
+        System.out.println("Total configs: " + totalConfigs);
+        System.out.println("Unique configs: " + uniqueConfigs);
+        if (outcome == SolveOutcome.SOLVED) {
+            for (int i = 0; i < solutionPath.size(); i++) {
+                System.out.println("Step " + i + ": " + solutionPath.get(i));
             }
+        } else if (outcome == SolveOutcome.NO_SOLUTION) {
+            System.out.println("No solution found.");
+        } else {
+            System.out.println(SolverOptions.stoppedMessage(outcome));
+        }
+    }
+
+    /**
+     * Builds the puzzle from the numbers of pups and wolves, for the workers of a distributed search.
+     * @param args the number of pups and the number of wolves
+     * @return the puzzle's initial configuration and codec
+     */
+    @Override
+    public Puzzle create(String[] args) {
+        return new Puzzle(new CrossingConfiguration(Integer.parseInt(args[0]), Integer.parseInt(args[1])),
+                new CrossingCodec());
+    }
+
+    /**
+     * Prints the closed-form solution, one step at a time as it is worked out.
+     * @param numPups the number of pups
+     * @param numWolves the number of wolves
+     */
+    private static void printPlan(int numPups, int numWolves) {
+        CrossingPlan plan = new CrossingPlan(numPups, numWolves);
+        // big plans have millions of lines, so do not flush after each one
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        out.println("Pups: " + numPups + ", Wolves: " + numWolves);
+        out.println("Moves: " + plan.moves());
+        long step = 0;
+        for (CrossingConfiguration config : plan) {
+            out.println("Step " + step++ + ": " + config);
         }
+        out.flush();
     }
 }
@@ -0,0 +1,41 @@
+package puzzles.crossing;
+
+import puzzles.common.solver.ConfigurationCodec;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of a CrossingConfiguration: the four animal counts as ints
+ * followed by one byte for the side of the boat.
+ */
+public class CrossingCodec implements ConfigurationCodec<CrossingConfiguration> {
+
+    /**
+     * Gives the encoded size of a configuration.
+     * @param config the configuration to measure
+     * @return the size in bytes
+     */
+    @Override
+    public int encodedSize(CrossingConfiguration config) {
+        return 4 * Integer.BYTES + 1;
+    }
+
+    /**
+     * Writes a configuration into the buffer.
+     * @param config the configuration to write
+     * @param out the buffer to write into
+     */
+    @Override
+    public void encode(CrossingConfiguration config, ByteBuffer out) {
+        config.encode(out);
+    }
+
+    /**
+     * Reads a configuration from the buffer.
+     * @param in the buffer to read from
+     * @return the decoded configuration
+     */
+    @Override
+    public CrossingConfiguration decode(ByteBuffer in) {
+        return CrossingConfiguration.decode(in);
+    }
+}
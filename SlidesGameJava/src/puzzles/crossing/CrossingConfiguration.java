@@ -1,6 +1,7 @@
 package puzzles.crossing;
 
 import puzzles.common.solver.Configuration;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -111,6 +112,68 @@ public class CrossingConfiguration implements Configuration {
         return Objects.hash(LTpups, RTpups, LTwolf, RTwolf, boat);
     }
 
+    /**
+     * Gets the number of pups on the left side, used by CrossingStateSpace.
+     * @return the pups on the left
+     */
+    int getLeftPups() {
+        return LTpups;
+    }
+
+    /**
+     * Gets the number of wolves on the left side, used by CrossingStateSpace.
+     * @return the wolves on the left
+     */
+    int getLeftWolves() {
+        return LTwolf;
+    }
+
+    /**
+     * Gets the total number of pups, used by CrossingStateSpace.
+     * @return the pups on both sides
+     */
+    int getPups() {
+        return LTpups + RTpups;
+    }
+
+    /**
+     * Gets the total number of wolves, used by CrossingStateSpace.
+     * @return the wolves on both sides
+     */
+    int getWolves() {
+        return LTwolf + RTwolf;
+    }
+
+    /**
+     * Gets the side the boat is on, used by CrossingStateSpace.
+     * @return the side of the boat
+     */
+    Side getBoat() {
+        return boat;
+    }
+
+    /**
+     * Writes the animal counts and the boat side, used by CrossingCodec.
+     * @param out the buffer to write into
+     */
+    void encode(ByteBuffer out) {
+        out.putInt(LTpups).putInt(LTwolf).putInt(RTpups).putInt(RTwolf);
+        out.put((byte) boat.ordinal());
+    }
+
+    /**
+     * Reads a configuration written by encode, used by CrossingCodec.
+     * @param in the buffer to read from
+     * @return the decoded configuration
+     */
+    static CrossingConfiguration decode(ByteBuffer in) {
+        int LTpups = in.getInt();
+        int LTwolf = in.getInt();
+        int RTpups = in.getInt();
+        int RTwolf = in.getInt();
+        return new CrossingConfiguration(LTpups, LTwolf, RTpups, RTwolf, Side.values()[in.get()]);
+    }
+
     /**
      * Returns a string of the current object.
      * @return a string representation of the object
@@ -121,11 +184,3 @@ public class CrossingConfiguration implements Configuration {
                 "  (BOAT: " + boat + ")";
     }
 }
-
-/**
- * enums for side of river with boat.
- */
-enum Side {
-    LEFT,
-    RIGHT
-}
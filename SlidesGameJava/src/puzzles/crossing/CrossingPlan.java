@@ -0,0 +1,104 @@
+package puzzles.crossing;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An optimal solution of the Crossing puzzle worked out without searching.
+ * <p>
+ * With the rules of CrossingConfiguration nothing on either bank can be eaten,
+ * so the only thing that matters is how much each trip across carries: at most
+ * two pups or one wolf. Every animal must go over, which takes ceil(pups / 2) +
+ * wolves trips across, and between two of those the boat has to come back,
+ * which it may do empty. No solution can be shorter, and this plan has exactly
+ * that many trips: pups go over two at a time (the odd one alone), then the
+ * wolves one at a time, and the boat returns empty in between.
+ * <p>
+ * The steps are produced one at a time as the plan is iterated, so a plan for
+ * millions of animals takes constant memory.
+ */
+public class CrossingPlan implements Iterable<CrossingConfiguration> {
+
+    /** Number of pups that start on the left bank. */
+    private final int pups;
+
+    /** Number of wolves that start on the left bank. */
+    private final int wolves;
+
+    /**
+     * Creates the plan for moving every animal to the right bank.
+     * @param pups the number of pups on the left bank
+     * @param wolves the number of wolves on the left bank
+     */
+    public CrossingPlan(int pups, int wolves) {
+        if (pups < 0 || wolves < 0) {
+            throw new IllegalArgumentException("Animal counts must not be negative: " + pups + ", " + wolves);
+        }
+        this.pups = pups;
+        this.wolves = wolves;
+    }
+
+    /**
+     * Gives the number of trips across from left to right.
+     * @return ceil(pups / 2) + wolves
+     */
+    public long tripsAcross() {
+        return (pups + 1L) / 2 + wolves;
+    }
+
+    /**
+     * Gives the number of boat trips in the plan, the same as the number of
+     * steps in the path the BFS Solver finds.
+     * @return the number of moves
+     */
+    public long moves() {
+        long across = tripsAcross();
+        return across == 0 ? 0 : 2 * across - 1;
+    }
+
+    /**
+     * Walks the configurations of the plan, starting with the initial one.
+     * @return an iterator over moves() + 1 configurations
+     */
+    @Override
+    public Iterator<CrossingConfiguration> iterator() {
+        return new Iterator<>() {
+            /** Pups still on the left bank. */
+            private int leftPups = pups;
+
+            /** Wolves still on the left bank. */
+            private int leftWolves = wolves;
+
+            /** Side of the boat. */
+            private Side boat = Side.LEFT;
+
+            /** Whether the initial configuration has been returned. */
+            private boolean started;
+
+            @Override
+            public boolean hasNext() {
+                return !started || leftPups + leftWolves > 0;
+            }
+
+            @Override
+            public CrossingConfiguration next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (!started) {
+                    started = true;
+                } else if (boat == Side.RIGHT) {
+                    boat = Side.LEFT; // come back empty
+                } else {
+                    if (leftPups > 0) {
+                        leftPups -= Math.min(2, leftPups);
+                    } else {
+                        leftWolves--;
+                    }
+                    boat = Side.RIGHT;
+                }
+                return new CrossingConfiguration(leftPups, leftWolves, pups - leftPups, wolves - leftWolves, boat);
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+package puzzles.crossing;
+
+import puzzles.common.solver.RankedStateSpace;
+
+/**
+ * Ranks the configurations of a crossing by the animals left on the left side
+ * and the side of the boat: rank = (wolves left * (pups + 1) + pups left) * 2 + boat,
+ * with 0 for the boat on the left. The animals on the right are whatever is not
+ * on the left, so a puzzle of p pups and w wolves has 2*(p+1)*(w+1) ranks.
+ */
+public class CrossingStateSpace implements RankedStateSpace<CrossingConfiguration> {
+
+    /** Total number of pups. */
+    private final int pups;
+
+    /** Total number of wolves. */
+    private final int wolves;
+
+    /**
+     * Creates the space of a crossing with some animals.
+     * @param pups the total number of pups
+     * @param wolves the total number of wolves
+     */
+    public CrossingStateSpace(int pups, int wolves) {
+        this.pups = pups;
+        this.wolves = wolves;
+    }
+
+    /**
+     * Gives the number of configurations, 2*(pups+1)*(wolves+1).
+     * @return the size of the space
+     */
+    @Override
+    public long size() {
+        return 2L * (pups + 1) * (wolves + 1);
+    }
+
+    /**
+     * Gives the rank of a configuration.
+     * @param config the configuration
+     * @return its rank
+     */
+    @Override
+    public long rank(CrossingConfiguration config) {
+        if (config.getPups() != pups || config.getWolves() != wolves) {
+            throw new IllegalArgumentException("Configuration " + config + " does not have "
+                    + pups + " pups and " + wolves + " wolves");
+        }
+        return rank(config.getLeftPups(), config.getLeftWolves(), config.getBoat() == Side.LEFT);
+    }
+
+    /**
+     * Gives the rank of the animals on the left and the side of the boat.
+     * @param leftPups the pups on the left
+     * @param leftWolves the wolves on the left
+     * @param boatLeft true if the boat is on the left
+     * @return the rank
+     */
+    private long rank(long leftPups, long leftWolves, boolean boatLeft) {
+        return (leftWolves * (pups + 1) + leftPups) * 2 + (boatLeft ? 0 : 1);
+    }
+
+    /**
+     * Builds the configuration of a rank.
+     * @param rank the rank
+     * @return the configuration
+     */
+    @Override
+    public CrossingConfiguration unrank(long rank) {
+        int leftPups = (int) (rank / 2 % (pups + 1));
+        int leftWolves = (int) (rank / 2 / (pups + 1));
+        return new CrossingConfiguration(leftPups, leftWolves, pups - leftPups, wolves - leftWolves,
+                rank % 2 == 0 ? Side.LEFT : Side.RIGHT);
+    }
+
+    /**
+     * Checks whether every animal of a rank is on the right.
+     * @param rank the rank
+     * @return true if it is a solution
+     */
+    @Override
+    public boolean isSolution(long rank) {
+        return rank < 2;
+    }
+
+    /**
+     * Gives the most neighbors of a configuration: a wolf or up to two pups cross.
+     * @return 4, for the empty boat coming back from the right
+     */
+    @Override
+    public int maxNeighbors() {
+        return 4;
+    }
+
+    /**
+     * Makes an expander that lets a wolf, then one pup, then two pups cross, and
+     * from the right also the empty boat first among the pups, as CrossingConfiguration does.
+     * @return the expander
+     */
+    @Override
+    public Expander expander() {
+        return (rank, neighbors) -> {
+            long leftPups = rank / 2 % (pups + 1);
+            long leftWolves = rank / 2 / (pups + 1);
+            int count = 0;
+            if (rank % 2 == 0) {
+                if (leftWolves >= 1) {
+                    neighbors[count++] = rank(leftPups, leftWolves - 1, false);
+                }
+                for (int crossing = 1; crossing <= 2; crossing++) {
+                    if (leftPups >= crossing) {
+                        neighbors[count++] = rank(leftPups - crossing, leftWolves, false);
+                    }
+                }
+            } else {
+                if (wolves - leftWolves >= 1) {
+                    neighbors[count++] = rank(leftPups, leftWolves + 1, true);
+                }
+                for (int crossing = 0; crossing <= 2; crossing++) {
+                    if (pups - leftPups >= crossing) {
+                        neighbors[count++] = rank(leftPups + crossing, leftWolves, true);
+                    }
+                }
+            }
+            return count;
+        };
+    }
+}
@@ -0,0 +1,9 @@
+package puzzles.crossing;
+
+/**
+ * enums for side of river with boat.
+ */
+enum Side {
+    LEFT,
+    RIGHT
+}
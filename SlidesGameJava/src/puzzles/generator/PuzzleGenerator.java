@@ -0,0 +1,393 @@
+package puzzles.generator;
+
+import puzzles.common.solver.Configuration;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideCorpus;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates puzzles for benchmarking the solvers.
+ * <p>
+ * Slide boards are made by scrambling the goal board. A random walk takes the
+ * given number of steps through SlideConfig.getNeighbors and never undoes the
+ * step it just made, so the board is solvable in at most that many moves. With
+ * --exact the board is instead picked from the BFS layer at exactly that depth,
+ * so its optimal solution has exactly that many moves; this needs the whole
+ * layer in memory and is meant for small depths.
+ * <p>
+ * Each puzzle gets its own random generator derived from the seed and the
+ * puzzle's number, so the output is the same for a given seed no matter how
+ * many threads are used.
+ * <pre>
+ *   slide rows cols count out [--depth=moves] [--exact] [--format=text|corpus] [--seed=n] [--threads=n]
+ *   strings length count [--depth=changes] [--seed=n] [--threads=n]
+ *   crossing count max-pups max-wolves [--seed=n] [--threads=n]
+ * </pre>
+ * Slide boards go to a directory of text files or to one corpus file, Strings
+ * and Crossing argument sets are printed one per line.
+ */
+public class PuzzleGenerator {
+
+    /** Puzzles generated per parallel batch, bounds the memory held before writing. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** Spreads puzzle numbers over the seed space. */
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /** Base seed of the run. */
+    private final long seed;
+
+    /** The pool the puzzles are generated on. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a generator.
+     * @param seed the base seed
+     * @param threads the number of threads to generate with
+     */
+    public PuzzleGenerator(long seed, int threads) {
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Gives the random generator of one puzzle.
+     * @param index the number of the puzzle
+     * @return a generator that depends only on the seed and the number
+     */
+    private SplittableRandom random(int index) {
+        return new SplittableRandom(seed + SEED_STEP * (index + 1));
+    }
+
+    /**
+     * Builds the goal board: 1 to rows*cols-1 in row order and the empty space last.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the goal board
+     */
+    public static SlideConfig goalBoard(int rows, int cols) {
+        int[][] board = new int[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                board[row][col] = (row * cols + col + 1) % (rows * cols);
+            }
+        }
+        return new SlideConfig(board);
+    }
+
+    /**
+     * Scrambles a board by a random walk that never undoes its previous step.
+     * @param start the board to scramble
+     * @param steps the number of steps to take
+     * @param random the random generator to use
+     * @return the scrambled board
+     */
+    public static SlideConfig randomWalk(SlideConfig start, int steps, SplittableRandom random) {
+        SlideConfig previous = null;
+        SlideConfig current = start;
+        for (int step = 0; step < steps; step++) {
+            List<Configuration> choices = current.getNeighbors();
+            if (previous != null && choices.size() > 1) {
+                choices.remove(previous);
+            }
+            SlideConfig next = (SlideConfig) choices.get(random.nextInt(choices.size()));
+            previous = current;
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Finds every board whose optimal solution takes exactly the given number of moves.
+     * The layers are expanded in parallel.
+     * @param goal the goal board
+     * @param depth the number of moves
+     * @return the boards at that distance from the goal
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    public List<SlideConfig> layer(SlideConfig goal, int depth) throws InterruptedException {
+        Set<Configuration> previous = Set.of();
+        Set<Configuration> current = Set.of(goal);
+        for (int d = 0; d < depth && !current.isEmpty(); d++) {
+            Set<Configuration> before = previous;
+            Set<Configuration> now = current;
+            Set<Configuration> next = submit(() -> now.parallelStream()
+                    .flatMap(config -> config.getNeighbors().stream())
+                    .filter(config -> !before.contains(config) && !now.contains(config))
+                    .collect(Collectors.toSet()));
+            previous = current;
+            current = next;
+        }
+        List<SlideConfig> layer = new ArrayList<>();
+        for (Configuration config : current) {
+            layer.add((SlideConfig) config);
+        }
+        // sets have no stable order, sort so the same seed picks the same boards
+        layer.sort((a, b) -> Arrays.deepToString(a.getBoard())
+                .compareTo(Arrays.deepToString(b.getBoard())));
+        return layer;
+    }
+
+    /**
+     * Generates a batch of puzzles in parallel.
+     * @param from the number of the first puzzle
+     * @param to one past the number of the last puzzle
+     * @param make makes the puzzle with the given number
+     * @param <T> the type of puzzle
+     * @return the puzzles in order of their numbers
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    private <T> List<T> batch(int from, int to, IntFunction<T> make) throws InterruptedException {
+        return submit(() -> IntStream.range(from, to).parallel().mapToObj(make).collect(Collectors.toList()));
+    }
+
+    /**
+     * Runs a task on the generator's pool so parallel streams use its threads.
+     * @param task the task
+     * @param <T> the type of result
+     * @return the result of the task
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    private <T> T submit(Callable<T> task) throws InterruptedException {
+        try {
+            return pool.submit(task).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Generates slide boards and writes them out.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param count the number of boards
+     * @param depth the walk length, or the exact solution length when exact is set
+     * @param exact whether boards must need exactly depth moves
+     * @param out the directory for text files, or the corpus file
+     * @param corpus whether to write one corpus file instead of text files
+     * @throws IOException if the output cannot be written
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    public void slide(int rows, int cols, int count, int depth, boolean exact, Path out, boolean corpus)
+            throws IOException, InterruptedException {
+        SlideConfig goal = goalBoard(rows, cols);
+        List<SlideConfig> layer = exact ? layer(goal, depth) : null;
+        if (exact && layer.isEmpty()) {
+            throw new IllegalArgumentException("No " + rows + "x" + cols + " board needs " + depth + " moves");
+        }
+        IntFunction<SlideConfig> make = exact
+                ? index -> layer.get(random(index).nextInt(layer.size()))
+                : index -> randomWalk(goal, depth, random(index));
+        SlideCorpus.Writer writer = null;
+        if (corpus) {
+            writer = new SlideCorpus.Writer(out);
+        } else {
+            Files.createDirectories(out);
+        }
+        try {
+            for (int from = 0; from < count; from += BATCH_SIZE) {
+                int to = Math.min(count, from + BATCH_SIZE);
+                List<SlideConfig> boards = batch(from, to, make);
+                for (int i = 0; i < boards.size(); i++) {
+                    if (writer != null) {
+                        writer.add(boards.get(i));
+                    } else {
+                        String name = "slide-" + rows + "x" + cols + "-" + depth + "-" + (from + i) + ".txt";
+                        try (Writer text = Files.newBufferedWriter(out.resolve(name))) {
+                            text.write(toText(boards.get(i)));
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a board in the text format of data/slide.
+     * @param config the board
+     * @return the text of the puzzle file
+     */
+    public static String toText(SlideConfig config) {
+        int[][] board = config.getBoard();
+        StringBuilder sb = new StringBuilder();
+        sb.append(board.length).append(' ').append(board[0].length).append('\n');
+        appendRows(sb, board);
+        if (!Arrays.deepEquals(config.getGoal(), SlideConfig.standardGoal(board.length, board[0].length))) {
+            sb.append("goal\n");
+            appendRows(sb, config.getGoal());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the rows of a board, one line each with '.' for the empty space.
+     * @param sb where to write
+     * @param board the board
+     */
+    private static void appendRows(StringBuilder sb, int[][] board) {
+        for (int[] row : board) {
+            for (int col = 0; col < row.length; col++) {
+                if (col > 0) {
+                    sb.append(' ');
+                }
+                if (row[col] == 0) {
+                    sb.append('.');
+                } else {
+                    sb.append(row[col]);
+                }
+            }
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Generates Strings argument sets: a random start and a finish reached by
+     * the given number of random one-letter changes, or a random finish.
+     * @param length the length of the strings
+     * @param count the number of argument sets
+     * @param depth the number of changes, or 0 for an unrelated finish
+     * @param out where to print the argument sets
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    public void strings(int length, int count, int depth, PrintStream out) throws InterruptedException {
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            List<String> lines = batch(from, Math.min(count, from + BATCH_SIZE), index -> {
+                SplittableRandom random = random(index);
+                char[] start = new char[length];
+                for (int i = 0; i < length; i++) {
+                    start[i] = (char) ('A' + random.nextInt(26));
+                }
+                char[] finish = start.clone();
+                if (depth == 0) {
+                    for (int i = 0; i < length; i++) {
+                        finish[i] = (char) ('A' + random.nextInt(26));
+                    }
+                } else {
+                    for (int change = 0; change < depth; change++) {
+                        int i = random.nextInt(length);
+                        int step = random.nextBoolean() ? 1 : 25;
+                        finish[i] = (char) ('A' + (finish[i] - 'A' + step) % 26);
+                    }
+                }
+                return new String(start) + " " + new String(finish);
+            });
+            lines.forEach(out::println);
+        }
+    }
+
+    /**
+     * Generates Crossing argument sets with random numbers of pups and wolves.
+     * @param count the number of argument sets
+     * @param maxPups the largest number of pups
+     * @param maxWolves the largest number of wolves
+     * @param out where to print the argument sets
+     * @throws InterruptedException if the thread is interrupted while waiting for the pool
+     */
+    public void crossing(int count, int maxPups, int maxWolves, PrintStream out) throws InterruptedException {
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            List<String> lines = batch(from, Math.min(count, from + BATCH_SIZE), index -> {
+                SplittableRandom random = random(index);
+                return random.nextInt(maxPups + 1) + " " + random.nextInt(maxWolves + 1);
+            });
+            lines.forEach(out::println);
+        }
+    }
+
+    /**
+     * Runs the generator from the command line.
+     * @param args the puzzle type, its arguments and options, see the class comment
+     */
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int equals = arg.indexOf('=');
+                options.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals),
+                        equals < 0 ? "" : arg.substring(equals + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.isEmpty()) {
+            usage();
+            return;
+        }
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        PuzzleGenerator generator = new PuzzleGenerator(seed, threads);
+        try {
+            switch (positional.get(0)) {
+                case "slide":
+                    if (positional.size() != 5) {
+                        usage();
+                        return;
+                    }
+                    int rows = Integer.parseInt(positional.get(1));
+                    int cols = Integer.parseInt(positional.get(2));
+                    int count = Integer.parseInt(positional.get(3));
+                    int depth = Integer.parseInt(options.getOrDefault("depth", String.valueOf(rows * cols * 10)));
+                    boolean corpus = options.getOrDefault("format", "text").equals("corpus");
+                    long start = System.nanoTime();
+                    generator.slide(rows, cols, count, depth, options.containsKey("exact"),
+                            Path.of(positional.get(4)), corpus);
+                    System.out.printf("Generated %d boards in %.1f ms%n", count, (System.nanoTime() - start) / 1e6);
+                    break;
+                case "strings":
+                    if (positional.size() != 3) {
+                        usage();
+                        return;
+                    }
+                    generator.strings(Integer.parseInt(positional.get(1)), Integer.parseInt(positional.get(2)),
+                            Integer.parseInt(options.getOrDefault("depth", "0")), System.out);
+                    break;
+                case "crossing":
+                    if (positional.size() != 4) {
+                        usage();
+                        return;
+                    }
+                    generator.crossing(Integer.parseInt(positional.get(1)), Integer.parseInt(positional.get(2)),
+                            Integer.parseInt(positional.get(3)), System.out);
+                    break;
+                default:
+                    usage();
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing the puzzles: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            generator.pool.shutdown();
+        }
+    }
+
+    /** Prints the command line usage. */
+    private static void usage() {
+        System.out.println("Usage: java PuzzleGenerator slide rows cols count out"
+                + " [--depth=moves] [--exact] [--format=text|corpus] [--seed=n] [--threads=n]");
+        System.out.println("       java PuzzleGenerator strings length count [--depth=changes] [--seed=n] [--threads=n]");
+        System.out.println("       java PuzzleGenerator crossing count max-pups max-wolves [--seed=n] [--threads=n]");
+    }
+}
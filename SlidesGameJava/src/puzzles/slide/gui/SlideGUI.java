@@ -2,11 +2,15 @@ package puzzles.slide.gui;
 import puzzles.common.solver.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.VPos;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
@@ -16,9 +20,16 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import puzzles.common.Coordinate;
 import puzzles.common.model.Observer;
 import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideEvent;
 import puzzles.slide.model.SlideModel;
+import puzzles.slide.solver.HintService;
 
 import java.io.File;
 import java.io.IOException;
@@ -29,11 +40,14 @@ import java.io.IOException;
  * This class allows users to interact with the Slide Puzzle game through a GUI interface.
  * @author Isaac Soares
  * NOTE ABOUT HINT:
- * hint sometimes takes long to process. If more than 10 seconds to load hint the solution
- * path is taking too long and better to close GUI board and run again.
+ * hint sometimes takes long to process. The search runs in the background, pressing the
+ * button again (it reads Cancel while searching) stops it, and it gives up by itself after 10 seconds.
+ * NOTE ABOUT RENDERING:
+ * the board is only rebuilt on start, load and reset. A move redraws just the two cells it touches,
+ * and boards with more than CANVAS_THRESHOLD cells are drawn on a canvas instead of with buttons.
  */
 
-public class SlideGUI extends Application implements Observer<SlideModel, String> {
+public class SlideGUI extends Application implements Observer<SlideModel, SlideEvent> {
 
 
     /**The initial configuration of Slide Puzzle board.*/
@@ -69,18 +83,52 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
     /**The grid pane to display the game board.*/
     private GridPane gridPane;
 
+    /**Boards with more cells than this are drawn on a canvas instead of with buttons.*/
+    private final static int CANVAS_THRESHOLD = 100;
+
+    /**Largest width or height of the canvas, in pixels.*/
+    private final static int CANVAS_SIZE = 900;
+
+    /**The buttons of the board, null when the board is drawn on a canvas.*/
+    private Button[][] buttons;
+
+    /**The canvas of the board, null when the board is drawn with buttons.*/
+    private Canvas canvas;
+
+    /**Width and height of a cell on the canvas, in pixels.*/
+    private int cellSize;
+
     /**Label to display status messages.*/
     private Label statusLabel;
 
-    /**Initialize the SlideModel with data from a file.*/
+    /**Solves hints ahead while the player thinks.*/
+    private final HintService hints = new HintService();
+
+    /**The hint button, it reads Cancel while a hint is being searched.*/
+    private Button hintButton;
+
+    /**The hint being waited for, null when no hint is running.*/
+    private CompletableFuture<HintService.Hint> hintRequest;
+
+    /**The configuration the hint being waited for is for.*/
+    private SlideConfig hintConfig;
+
+    /**Initialize the SlideModel with data from a file, and the hint cache, telemetry and presolving when --cache, --telemetry and --presolve are given.*/
     @Override
     public void init() {
-        String filename = getParameters().getRaw().get(0);
+        SolverOptions options = SolverOptions.parse(getParameters().getRaw().toArray(new String[0]));
+        String filename = options.positional()[0];
         try {
+            hints.setSolutionCache(options.openCache());
+            hints.setMonitored(options.telemetry());
+            hints.presolve(options.presolveDirectories());
             SlideModel slideModel = new SlideModel(filename);
             this.model = slideModel;
             this.model.addObserver(this);
-            this.initialConfig = new SlideConfig(slideModel.getCurrentConfig().getBoard()); // Store a copy of the initial config
+            this.model.addObserver(hints);
+            hints.prefetch(slideModel.getCurrentConfig());
+            this.initialConfig = new SlideConfig(slideModel.getCurrentConfig().getBoard(),
+                    slideModel.getCurrentConfig().getGoal()); // Store a copy of the initial config
 
         } catch (IOException e) {
             System.out.println("Error initializing SlideModel: " + e.getMessage());
@@ -100,25 +148,93 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
         VBox mainLayout = new VBox(gridPane, buttonBox);
         Scene scene = new Scene(mainLayout);
         stage.setScene(scene);
-        attachButtonEventHandlers();
         stage.show();
     }
 
-    /**Update the visual representation of the game board.*/
+    /**Rebuild the visual representation of the whole game board.*/
     private void updateGrid() {
         gridPane.getChildren().clear();
         int[][] board = model.getCurrentConfig().getBoard();
-        gridPane.add(statusLabel, 0, 0, board[0].length, 1);
-        GridPane.setHalignment(statusLabel, HPos.CENTER);
-        generateNumberButtons();
+        if (board.length * board[0].length > CANVAS_THRESHOLD) {
+            buttons = null;
+            gridPane.add(statusLabel, 0, 0);
+            GridPane.setHalignment(statusLabel, HPos.CENTER);
+            generateCanvas();
+        } else {
+            canvas = null;
+            gridPane.add(statusLabel, 0, 0, board[0].length, 1);
+            GridPane.setHalignment(statusLabel, HPos.CENTER);
+            generateNumberButtons();
+        }
+    }
+
+    /**
+     * Redraw a single cell of the game board from the current configuration.
+     * @param cell The coordinate of the cell.
+     */
+    private void updateCell(Coordinate cell) {
+        int row = cell.row();
+        int col = cell.col();
+        int number = model.getCurrentConfig().getCell(row, col);
+        if (buttons != null) {
+            styleButton(buttons[row][col], number);
+        } else {
+            drawCell(canvas.getGraphicsContext2D(), row, col, number);
+        }
+    }
+
+    /**Generate a canvas showing the whole game board.*/
+    private void generateCanvas() {
+        int[][] board = model.getCurrentConfig().getBoard();
+        cellSize = Math.max(1, Math.min(ICON_SIZE, CANVAS_SIZE / Math.max(board.length, board[0].length)));
+        canvas = new Canvas(board[0].length * cellSize, board.length * cellSize);
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.setTextAlign(TextAlignment.CENTER);
+        graphics.setTextBaseline(VPos.CENTER);
+        graphics.setFont(Font.font("Arial", FontWeight.BOLD, Math.max(6, cellSize * NUMBER_FONT_SIZE / ICON_SIZE)));
+        for (int row = 0; row < board.length; row++) {
+            for (int col = 0; col < board[row].length; col++) {
+                drawCell(graphics, row, col, board[row][col]);
+            }
+        }
+        canvas.setOnMouseClicked(event -> {
+            int row = (int) (event.getY() / cellSize);
+            int col = (int) (event.getX() / cellSize);
+            if (row < board.length && col < board[0].length) {
+                handleButtonClick(row, col);
+            }
+        });
+        gridPane.add(canvas, 0, 1);
+    }
+
+    /**
+     * Draw one cell on the canvas with the same colors as the buttons.
+     * @param graphics The graphics context of the canvas.
+     * @param row The row index of the cell.
+     * @param col The column index of the cell.
+     * @param number The number in the cell, 0 for the empty space.
+     */
+    private void drawCell(GraphicsContext graphics, int row, int col, int number) {
+        double x = col * cellSize;
+        double y = row * cellSize;
+        graphics.setFill(Color.LIGHTGRAY);
+        graphics.fillRect(x, y, cellSize, cellSize);
+        graphics.setFill(Color.web(number == 0 ? EMPTY_COLOR : number % 2 == 0 ? EVEN_COLOR : ODD_COLOR));
+        graphics.fillRect(x + 1, y + 1, cellSize - 2, cellSize - 2);
+        if (number != 0) {
+            graphics.setFill(Color.BLACK);
+            graphics.fillText(String.valueOf(number), x + cellSize / 2.0, y + cellSize / 2.0);
+        }
     }
 
     /**Generate number buttons for the game board.*/
     private void generateNumberButtons() {
         int[][] board = model.getCurrentConfig().getBoard();
+        buttons = new Button[board.length][board[0].length];
         for (int row = 0; row < board.length; row++) {
             for (int col = 0; col < board[row].length; col++) {
                 Button button = createButton(board[row][col]);
+                buttons[row][col] = button;
                 gridPane.add(button, col, row + 1);
                 GridPane.setValignment(button, VPos.TOP);
                 GridPane.setHalignment(button, HPos.LEFT);
@@ -154,6 +270,16 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
         button.setMinSize(ICON_SIZE, ICON_SIZE);
         button.setMaxSize(ICON_SIZE, ICON_SIZE);
         button.setPadding(new Insets(5));
+        styleButton(button, number);
+        return button;
+    }
+
+    /**
+     * Style a button and set its text based on number.
+     * @param button The button to style.
+     * @param number The number to display on button.
+     */
+    private void styleButton(Button button, int number) {
         button.setStyle(
                 "-fx-font-family: Arial;" +
                         "-fx-font-size: " + NUMBER_FONT_SIZE + ";" +
@@ -166,25 +292,6 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
             button.setStyle("-fx-background-color: " + ODD_COLOR + ";");
         }
         button.setText(String.valueOf(number));
-        return button;
-    }
-
-    /**
-     * Attach event handlers to the buttons on the game board.
-     */
-    private void attachButtonEventHandlers() {
-        int[][] board = model.getCurrentConfig().getBoard();
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
-                Button button = createButton(board[row][col]);
-                final int finalRow = row;
-                final int finalCol = col;
-                button.setOnAction(event -> handleButtonClick(finalRow, finalCol));
-                gridPane.add(button, col, row + 1);
-                GridPane.setValignment(button, VPos.TOP);
-                GridPane.setHalignment(button, HPos.LEFT);
-            }
-        }
     }
 
     /**
@@ -195,7 +302,7 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
     private void handleButtonClick(int row, int col) {
         if (selectedRow == -1 && selectedCol == -1) {
             // First selection: Selecting piece
-            int pieceValue = model.getCurrentConfig().getBoard()[row][col];
+            int pieceValue = model.getCurrentConfig().getCell(row, col);
             if (pieceValue != 0) {
                 selectedRow = row;
                 selectedCol = col;
@@ -211,12 +318,10 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
             // Clear selection
             selectedRow = -1;
             selectedCol = -1;
-            if (Math.abs(fromRow - row) + Math.abs(fromCol - col) == 1 && currentConfig.getBoard()[row][col] == 0) {
-                // legal move
-                SlideConfig newConfig = currentConfig.movePiece(fromRow, fromCol, row, col);
-                model.setCurrentConfig(newConfig);
+            if (Math.abs(fromRow - row) + Math.abs(fromCol - col) == 1 && currentConfig.getCell(row, col) == 0) {
+                // legal move, update() redraws the two cells it touches
+                model.move(fromRow, fromCol, row, col);
                 statusLabel.setText("Moved from (" + fromRow + ", " + fromCol + ") to (" + row + ", " + col + ")");
-                updateGrid();
             } else {
                 // illegal move
                 statusLabel.setText("Can't move from (" + fromRow + ", " + fromCol + ") to (" + row + ", " + col + ")");
@@ -232,47 +337,43 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
     private HBox createButtonBox() {
         Button loadButton = new Button("Load");
         Button resetButton = new Button("Reset");
-        Button hintButton = new Button("Hint");
+        hintButton = new Button("Hint");
         loadButton.setOnAction(event -> {
             FileChooser fileChooser = new FileChooser();
             fileChooser.setInitialDirectory(new File("data/slide"));
             File selectedFile = fileChooser.showOpenDialog(stage);
             if (selectedFile != null) {
+                cancelHint();
                 try {
                     SlideConfig newConfig = model.loadConfigFromFile(selectedFile.getPath());
                     model.setCurrentConfig(newConfig);
                     statusLabel.setText("Loaded: " + selectedFile.getName() + " extend window if you can't see");
                     initialConfig = model.getCurrentConfig();
-                    updateGrid();
                 } catch (IOException e) {
                     System.out.println("Error loading the puzzle file: " + e.getMessage());
                 }
             }
         });
         resetButton.setOnAction(event -> {
+            cancelHint();
             model.setCurrentConfig(initialConfig);
             statusLabel.setText("Puzzle reset!");
-            updateGrid();
         });
         hintButton.setOnAction(event -> {
-            Solver solver = new Solver(model.getCurrentConfig());
-            boolean solutionFound = solver.solve();
-            if (solutionFound) {
-                List<Configuration> solutionPath = solver.getSolutionPath();
-                int currentStep = solutionPath.indexOf(model.getCurrentConfig());
-                if (currentStep < solutionPath.size() - 1) {
-                    SlideConfig nextStep = (SlideConfig) solutionPath.get(currentStep + 1);
-                    // Create a new config based on the solved step
-                    SlideConfig newConfig = new SlideConfig(nextStep.getBoard());
-                    model.setCurrentConfig(newConfig);
-                    statusLabel.setText("Hint: Next step!");
-                    updateGrid();
-                } else {
-                    statusLabel.setText("Hint: Already solved!");
-                }
-            } else {
-                statusLabel.setText("Hint: No solution found for the puzzle.");
+            if (hintRequest != null) {
+                cancelHint();
+                return;
             }
+            SlideConfig startConfig = model.getCurrentConfig();
+            CompletableFuture<HintService.Hint> request = hints.hint(startConfig);
+            hintRequest = request;
+            hintConfig = startConfig;
+            if (!request.isDone()) {
+                hintButton.setText("Cancel");
+                statusLabel.setText("Hint: searching...");
+            }
+            request.whenComplete((hint, error) ->
+                    Platform.runLater(() -> showHint(request, startConfig, hint, error)));
         });
         HBox buttonBox = new HBox(loadButton, resetButton, hintButton);
         buttonBox.setSpacing(10);
@@ -284,15 +385,98 @@ public class SlideGUI extends Application implements Observer<SlideModel, String
         return buttonBox;
     }
 
-    /** null not used  */
+    /**
+     * Stops the hint search in progress, if any, and restores the hint button.
+     */
+    private void cancelHint() {
+        if (hintRequest != null) {
+            hints.cancel(hintConfig);
+            hintRequest = null;
+            hintButton.setText("Hint");
+        }
+    }
+
+    /**
+     * Applies the result of a finished hint search, runs on the JavaFX thread.
+     * @param request the hint request, results of cancelled requests are dropped
+     * @param startConfig the configuration the search started from
+     * @param hint the outcome and solution path of the search, null if it failed
+     * @param error why the search failed, null if it did not
+     */
+    private void showHint(CompletableFuture<HintService.Hint> request, SlideConfig startConfig,
+                          HintService.Hint hint, Throwable error) {
+        if (request != hintRequest) {
+            return; // cancelled while the result was on its way
+        }
+        hintRequest = null;
+        hintButton.setText("Hint");
+        if (error != null) {
+            statusLabel.setText("Hint: search failed, " + error.getMessage());
+            return;
+        }
+        SolveOutcome outcome = hint.outcome();
+        List<SlideConfig> solutionPath = hint.path();
+        if (model.getCurrentConfig() != startConfig) {
+            statusLabel.setText("Hint: board changed while searching, ask again.");
+        } else if (outcome == SolveOutcome.SOLVED) {
+            int currentStep = solutionPath.indexOf(model.getCurrentConfig());
+            if (currentStep < solutionPath.size() - 1) {
+                SlideConfig nextStep = solutionPath.get(currentStep + 1);
+                // Create a new config based on the solved step
+                SlideConfig newConfig = new SlideConfig(nextStep.getBoard(), nextStep.getGoal());
+                model.applyHint(newConfig);
+                statusLabel.setText("Hint: Next step!");
+            } else {
+                statusLabel.setText("Hint: Already solved!");
+            }
+        } else if (outcome == SolveOutcome.NO_SOLUTION) {
+            statusLabel.setText("Hint: No solution found for the puzzle.");
+        } else {
+            statusLabel.setText("Hint: gave up after " + HintService.TIME_LIMIT / 1000 + " seconds.");
+        }
+    }
+
+    /**
+     * Redraws the board after the model changed. A single move or hint only changes
+     * the cell the piece went to and the cell it left, anything else redraws the whole board.
+     * @param model The model that changed.
+     * @param event What changed.
+     */
+    @Override
+    public void update(SlideModel model, SlideEvent event) {
+        boolean singleMove = event.count() == 1
+                && (event.kind() == SlideEvent.Kind.MOVED || event.kind() == SlideEvent.Kind.HINT);
+        if (singleMove) {
+            updateCell(event.move());
+            updateCell(event.config().getEmptySpace());
+        } else {
+            updateGrid();
+        }
+    }
+
+    /**
+     * Stops the background hint solves when the window is closed.
+     */
     @Override
-    public void update(SlideModel model, String data) {}
+    public void stop() {
+        hints.shutdown();
+    }
 
     /**
-     * The main method to launch the application.
+     * The main method to launch the application, once the command line options are known to be valid.
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        try {
+            if (SolverOptions.parse(args).positional().length != 1) {
+                System.out.println("Usage: java SlideGUI filename " + SolverOptions.USAGE);
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java SlideGUI filename " + SolverOptions.USAGE);
+            System.exit(1);
+        }
         Application.launch(args);
     }
 }
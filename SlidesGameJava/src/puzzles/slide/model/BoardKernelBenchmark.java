@@ -0,0 +1,201 @@
+package puzzles.slide.model;
+
+import puzzles.common.solver.Configuration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times the scalar and vector board kernels against each other on square boards
+ * of several sizes. The vector kernels are only there when the JVM is started with
+ * --add-modules jdk.incubator.vector; without it only the scalar times are shown.
+ */
+public class BoardKernelBenchmark {
+
+    /** Number of boards each kernel is run over per size. */
+    private static final int BOARDS = 256;
+
+    /** Random moves made from the goal to get each board. */
+    private static final int SCRAMBLE_MOVES = 400;
+
+    /** Passes over the boards before timing starts, so the JIT has compiled the kernels. */
+    private static final int WARMUP_PASSES = 2000;
+
+    /** Passes over the boards that are timed. */
+    private static final int TIMED_PASSES = 2000;
+
+    /** Sum of every kernel result, printed so the JIT cannot drop the calls. */
+    private static long sink;
+
+    /** The kernel being timed. */
+    private interface Kernel {
+
+        /**
+         * Runs the kernel on one board.
+         * @param kernels the implementation to use
+         * @param tables the boards and goal tables of the size being timed
+         * @param index which board to run on
+         * @return the kernel's result as a number
+         */
+        int run(BoardKernels kernels, Tables tables, int index);
+    }
+
+    /**
+     * The scrambled boards of one size, a copy of each, and the tables of the
+     * default goal that hash and manhattan take.
+     */
+    private static class Tables {
+
+        /** The scrambled boards. */
+        private final int[][] boards;
+
+        /** An equal copy of each board, so equal has to look at every cell. */
+        private final int[][] copies;
+
+        /** The goal cells in row order. */
+        private final int[] goal;
+
+        /** The power of 31 for each cell. */
+        private final int[] powers;
+
+        /** 31 to the power of the number of cells. */
+        private int seed = 1;
+
+        /** The row of each cell. */
+        private final int[] cellRow;
+
+        /** The column of each cell. */
+        private final int[] cellCol;
+
+        /** The goal row of each tile. */
+        private final int[] rowOf;
+
+        /** The goal column of each tile. */
+        private final int[] colOf;
+
+        /**
+         * Builds the tables for scrambled boards.
+         * @param configs the boards
+         * @param size the number of rows and columns
+         */
+        private Tables(List<SlideConfig> configs, int size) {
+            int cells = size * size;
+            boards = new int[configs.size()][];
+            copies = new int[configs.size()][];
+            for (int i = 0; i < boards.length; i++) {
+                boards[i] = configs.get(i).getCells();
+                copies[i] = boards[i].clone();
+            }
+            goal = new SlideConfig(SlideConfig.standardGoal(size, size)).getCells();
+            powers = new int[cells];
+            cellRow = new int[cells];
+            cellCol = new int[cells];
+            rowOf = new int[cells];
+            colOf = new int[cells];
+            for (int cell = cells - 1; cell >= 0; cell--) {
+                powers[cell] = seed;
+                seed *= 31;
+                cellRow[cell] = cell / size;
+                cellCol[cell] = cell % size;
+                rowOf[goal[cell]] = cell / size;
+                colOf[goal[cell]] = cell % size;
+            }
+        }
+    }
+
+    /**
+     * Scrambles boards of one size by random moves from the goal.
+     * @param size number of rows and columns
+     * @param random the random moves
+     * @return the boards
+     */
+    private static List<SlideConfig> scramble(int size, Random random) {
+        List<SlideConfig> boards = new ArrayList<>();
+        for (int i = 0; i < BOARDS; i++) {
+            SlideConfig config = new SlideConfig(SlideConfig.standardGoal(size, size));
+            for (int move = 0; move < SCRAMBLE_MOVES; move++) {
+                List<Configuration> neighbors = new ArrayList<>();
+                for (Iterator<Configuration> it = config.neighborIterator(); it.hasNext(); ) {
+                    neighbors.add(it.next());
+                }
+                config = (SlideConfig) neighbors.get(random.nextInt(neighbors.size()));
+            }
+            boards.add(config);
+        }
+        return boards;
+    }
+
+    /**
+     * Times one kernel over every board.
+     * @param kernel the kernel
+     * @param kernels the implementation
+     * @param tables the boards and goal tables
+     * @return nanoseconds per board
+     */
+    private static double time(Kernel kernel, BoardKernels kernels, Tables tables) {
+        int count = tables.boards.length;
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            for (int i = 0; i < count; i++) {
+                sink += kernel.run(kernels, tables, i);
+            }
+        }
+        long start = System.nanoTime();
+        for (int pass = 0; pass < TIMED_PASSES; pass++) {
+            for (int i = 0; i < count; i++) {
+                sink += kernel.run(kernels, tables, i);
+            }
+        }
+        return (double) (System.nanoTime() - start) / TIMED_PASSES / count;
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args the board sizes to try, 3 to 8 when none are given
+     */
+    public static void main(String[] args) {
+        List<Integer> sizes = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                sizes.add(Integer.parseInt(arg));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: java BoardKernelBenchmark [size...]");
+            return;
+        }
+        if (sizes.isEmpty()) {
+            for (int size = 3; size <= 8; size++) {
+                sizes.add(size);
+            }
+        }
+        BoardKernels scalar = BoardKernels.scalar();
+        BoardKernels vector = BoardKernels.vector();
+        if (vector == null) {
+            System.out.println("Vector API not available, start with --add-modules jdk.incubator.vector to compare");
+        }
+        String[] names = {"equal", "mismatches", "hash", "manhattan"};
+        Kernel[] kernels = {
+                (k, t, i) -> k.equal(t.boards[i], t.copies[i]) ? 1 : 0,
+                (k, t, i) -> k.mismatches(t.boards[i], t.goal),
+                (k, t, i) -> k.hash(t.boards[i], t.powers, t.seed),
+                (k, t, i) -> k.manhattan(t.boards[i], t.cellRow, t.cellCol, t.rowOf, t.colOf)
+        };
+        System.out.printf("%-5s %-11s %10s %10s %8s%n", "size", "kernel", "scalar ns", "vector ns", "speedup");
+        Random random = new Random(1);
+        for (int size : sizes) {
+            Tables tables = new Tables(scramble(size, random), size);
+            for (int i = 0; i < kernels.length; i++) {
+                double scalarTime = time(kernels[i], scalar, tables);
+                if (vector == null) {
+                    System.out.printf("%-5s %-11s %10.1f%n", size + "x" + size, names[i], scalarTime);
+                } else {
+                    double vectorTime = time(kernels[i], vector, tables);
+                    System.out.printf("%-5s %-11s %10.1f %10.1f %7.2fx%n", size + "x" + size, names[i],
+                            scalarTime, vectorTime, scalarTime / vectorTime);
+                }
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+}
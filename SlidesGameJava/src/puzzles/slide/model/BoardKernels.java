@@ -0,0 +1,97 @@
+package puzzles.slide.model;
+
+/**
+ * The loops SlideConfig runs over whole boards, on boards flattened in row order.
+ * <p>
+ * There are two implementations with identical results: a scalar one that always
+ * works, and one written with the incubating Vector API that handles as many
+ * cells per instruction as the CPU's vector registers hold. The vector one is
+ * only used when the JVM was started with --add-modules jdk.incubator.vector;
+ * without it the class is never loaded and the scalar one is used instead.
+ * BoardKernelBenchmark compares the two per board size.
+ */
+public abstract class BoardKernels {
+
+    /** The scalar kernels. */
+    private static final BoardKernels SCALAR = new ScalarBoardKernels();
+
+    /** The vector kernels, null when the Vector API is not available. */
+    private static final BoardKernels VECTOR = loadVector();
+
+    /**
+     * Loads the vector kernels if the Vector API module is part of this JVM.
+     * @return the vector kernels, or null
+     */
+    private static BoardKernels loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (BoardKernels) Class.forName("puzzles.slide.model.VectorBoardKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gives the kernels SlideConfig uses: the vector ones when available, the scalar ones otherwise.
+     * @return the kernels
+     */
+    public static BoardKernels get() {
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Gives the scalar kernels.
+     * @return the scalar kernels
+     */
+    public static BoardKernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Gives the vector kernels.
+     * @return the vector kernels, null when the JVM was started without the Vector API
+     */
+    public static BoardKernels vector() {
+        return VECTOR;
+    }
+
+    /**
+     * Compares two boards cell by cell.
+     * @param a one board
+     * @param b the other board
+     * @return true if they have the same length and the same numbers everywhere
+     */
+    public abstract boolean equal(int[] a, int[] b);
+
+    /**
+     * Counts the cells where two boards of the same size differ.
+     * @param a one board
+     * @param b the other board, as long as a
+     * @return the number of differing cells
+     */
+    public abstract int mismatches(int[] a, int[] b);
+
+    /**
+     * Hashes a board the way Arrays.hashCode does, 31^n plus each cell times
+     * 31 to the power of the number of cells after it.
+     * @param cells the board
+     * @param powers powers[i] is 31^(n - 1 - i)
+     * @param seed 31^n
+     * @return the hash
+     */
+    public abstract int hash(int[] cells, int[] powers, int seed);
+
+    /**
+     * Adds up how far every numbered block is from its goal cell.
+     * @param cells the board
+     * @param cellRow cellRow[i] is the row of cell i
+     * @param cellCol cellCol[i] is the column of cell i
+     * @param rowOf rowOf[tile] is the row of the tile's goal cell
+     * @param colOf colOf[tile] is the column of the tile's goal cell
+     * @return the sum of the row and column distances, the empty space not counted
+     */
+    public abstract int manhattan(int[] cells, int[] cellRow, int[] cellCol, int[] rowOf, int[] colOf);
+}
@@ -0,0 +1,70 @@
+package puzzles.slide.model;
+
+import java.util.Arrays;
+
+/**
+ * Board kernels as plain loops, used when the Vector API is not available.
+ */
+final class ScalarBoardKernels extends BoardKernels {
+
+    /**
+     * Compares two boards with Arrays.equals, which the JIT compiles to a vectorized mismatch check on its own.
+     * @param a one board
+     * @param b the other board
+     * @return true if they are equal
+     */
+    @Override
+    public boolean equal(int[] a, int[] b) {
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Counts differing cells one at a time.
+     * @param a one board
+     * @param b the other board
+     * @return the number of differing cells
+     */
+    @Override
+    public int mismatches(int[] a, int[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Hashes a board with Arrays.hashCode, which needs no table of powers.
+     * @param cells the board
+     * @param powers not used
+     * @param seed not used
+     * @return the hash
+     */
+    @Override
+    public int hash(int[] cells, int[] powers, int seed) {
+        return Arrays.hashCode(cells);
+    }
+
+    /**
+     * Adds up block distances one cell at a time.
+     * @param cells the board
+     * @param cellRow the row of each cell
+     * @param cellCol the column of each cell
+     * @param rowOf the goal row of each tile
+     * @param colOf the goal column of each tile
+     * @return the Manhattan distance
+     */
+    @Override
+    public int manhattan(int[] cells, int[] cellRow, int[] cellCol, int[] rowOf, int[] colOf) {
+        int distance = 0;
+        for (int i = 0; i < cells.length; i++) {
+            int tile = cells[i];
+            if (tile != 0) {
+                distance += Math.abs(rowOf[tile] - cellRow[i]) + Math.abs(colOf[tile] - cellCol[i]);
+            }
+        }
+        return distance;
+    }
+}
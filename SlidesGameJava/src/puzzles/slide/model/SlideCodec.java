@@ -0,0 +1,130 @@
+package puzzles.slide.model;
+
+import puzzles.common.solver.ConfigurationCodec;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of a SlideConfig: one byte each for rows and columns, then the
+ * cells in row order, one byte per cell when every number fits in a byte, two
+ * bytes per cell when it fits in a short and four otherwise. Boards with 256 or
+ * more rows or columns write a zero byte twice, which no board has, followed by
+ * rows and columns as shorts. The goal board is not written, it belongs to the
+ * codec and is given to every decoded configuration.
+ */
+public class SlideCodec implements ConfigurationCodec<SlideConfig> {
+
+    /** Largest board that is stored with one byte per cell. */
+    private static final int BYTE_CELLS = 256;
+
+    /** Largest board that is stored with two bytes per cell. */
+    private static final int SHORT_CELLS = 1 << 16;
+
+    /** Most rows or columns that are stored in a byte. */
+    private static final int BYTE_SIDE = 255;
+
+    /** Most rows or columns a board may have, stored in a short. */
+    private static final int MAX_SIDE = 0xFFFF;
+
+    /** Goal board of the decoded configurations, null for the default goal. */
+    private final int[][] goal;
+
+    /**
+     * Creates a codec whose configurations have the default goal board.
+     */
+    public SlideCodec() {
+        this(null);
+    }
+
+    /**
+     * Creates a codec whose configurations are solved against the given goal board.
+     * @param goal the goal board, null for the default goal
+     */
+    public SlideCodec(int[][] goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Gives the encoded size of a configuration.
+     * @param config the configuration to measure
+     * @return the size in bytes
+     */
+    @Override
+    public int encodedSize(SlideConfig config) {
+        int cells = config.getCells().length;
+        return (isSmall(config) ? 2 : 6) + cells * cellBytes(cells);
+    }
+
+    /**
+     * Tells whether a board's rows and columns are written as single bytes.
+     * @param config the configuration
+     * @return true if both are at most 255
+     */
+    private static boolean isSmall(SlideConfig config) {
+        return config.getRows() <= BYTE_SIDE && config.getCols() <= BYTE_SIDE;
+    }
+
+    /**
+     * Gives the bytes each cell of a board takes.
+     * @param cells the number of cells
+     * @return 1, 2 or 4
+     */
+    private static int cellBytes(int cells) {
+        return cells <= BYTE_CELLS ? 1 : cells <= SHORT_CELLS ? 2 : 4;
+    }
+
+    /**
+     * Writes a configuration into the buffer.
+     * @param config the configuration to write
+     * @param out the buffer to write into
+     * @throws IllegalArgumentException if the board has more than 65535 rows or columns
+     */
+    @Override
+    public void encode(SlideConfig config, ByteBuffer out) {
+        int[] cells = config.getCells();
+        if (isSmall(config)) {
+            out.put((byte) config.getRows()).put((byte) config.getCols());
+        } else if (config.getRows() <= MAX_SIDE && config.getCols() <= MAX_SIDE) {
+            out.put((byte) 0).put((byte) 0).putShort((short) config.getRows()).putShort((short) config.getCols());
+        } else {
+            throw new IllegalArgumentException("A board of " + config.getRows() + " x " + config.getCols()
+                    + " cannot be encoded, at most " + MAX_SIDE + " rows and columns");
+        }
+        int width = cellBytes(cells.length);
+        for (int value : cells) {
+            if (width == 1) {
+                out.put((byte) value);
+            } else if (width == 2) {
+                out.putShort((short) value);
+            } else {
+                out.putInt(value);
+            }
+        }
+    }
+
+    /**
+     * Reads a configuration from the buffer.
+     * @param in the buffer to read from
+     * @return the decoded configuration
+     */
+    @Override
+    public SlideConfig decode(ByteBuffer in) {
+        int rows = in.get() & 0xFF;
+        int cols = in.get() & 0xFF;
+        if (rows == 0) {
+            rows = in.getShort() & 0xFFFF;
+            cols = in.getShort() & 0xFFFF;
+        }
+        int[] cells = new int[rows * cols];
+        int width = cellBytes(cells.length);
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (width == 1) {
+                cells[cell] = in.get() & 0xFF;
+            } else if (width == 2) {
+                cells[cell] = in.getShort() & 0xFFFF;
+            } else {
+                cells[cell] = in.getInt();
+            }
+        }
+        return new SlideConfig(rows, cols, cells, goal);
+    }
+}
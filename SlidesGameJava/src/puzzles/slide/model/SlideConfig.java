@@ -4,20 +4,46 @@ import puzzles.common.model.Observer;
 import puzzles.common.solver.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 /**
  * The SlideConfig class represents a configuration of the sliding numbers puzzle.
+ * Each configuration knows the goal board it is solved against, by default the
+ * numbers in order with the empty space last, and how many cells differ from it.
+ * The count is carried over from move to move, so isSolution does not scan the board.
+ * <p>
+ * The board is kept flat, in row order, so that comparing, hashing and scoring a
+ * board are single loops that BoardKernels can run with vector instructions.
+ * <p>
+ * A configuration made by a move remembers the cell the empty space came from,
+ * so a search can skip the slide straight back.
  */
-public class SlideConfig implements Configuration {
+public class SlideConfig implements ReversibleConfiguration {
 
-    /** The 2D array representing the puzzle board. */
-    private final int[][] board;
+    /** Row offsets of the blocks that can slide into the empty space: north, south, west, east. */
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0};
+
+    /** Column offsets of the blocks that can slide into the empty space, matching ROW_STEPS. */
+    private static final int[] COL_STEPS = {0, 0, -1, 1};
+
+    /** The cells of the puzzle board in row order. */
+    private final int[] cells;
 
     /** The coordinate of the empty space on the puzzle board. */
     private final Coordinate emptySpace;
 
+    /** The goal board and its lookup tables, shared by every configuration of the same puzzle. */
+    private final Goal goal;
+
+    /** Number of cells, the empty one included, that differ from the goal board. */
+    private final int misplaced;
+
+    /** Cell the empty space was in before the move that made this configuration, -1 if not made by a move. */
+    private final int previousBlank;
+
     /** List of registered observers for this configuration. */
     private final List<Observer<SlideConfig, Coordinate>> observers;
 
@@ -25,6 +51,15 @@ public class SlideConfig implements Configuration {
     /** Check whether the last move was successful.*/
     private boolean lastMoveSuccessful = true;
 
+    /** The goal most recently built, reused while configurations keep naming the same goal array. */
+    private static volatile Goal lastGoal;
+
+    /** The default goal most recently built, reused for boards of the same size. */
+    private static volatile Goal lastStandardGoal;
+
+    /** The kernels that compare, hash and score boards. */
+    private static final BoardKernels KERNELS = BoardKernels.get();
+
     /** Instantiates checking whether the last move was successful.*/
     public boolean isLastMoveSuccessful() {
         return lastMoveSuccessful;
@@ -36,35 +71,250 @@ public class SlideConfig implements Configuration {
      * @param board the 2D array representing the puzzle board
      */
     public SlideConfig(int[][] board) {
-        this.board = board;
+        this(flatten(board), standardGoalOf(board.length, board[0].length));
+    }
+
+    /**
+     * Constructor to create a new SlideConfig that is solved against the given goal board.
+     * @param board the 2D array representing the puzzle board
+     * @param goal the board to reach, holding the same numbers as board
+     */
+    public SlideConfig(int[][] board, int[][] goal) {
+        this(flatten(board), goalOf(board.length, board[0].length, goal));
+    }
+
+    /**
+     * Constructor for a board that is already flat, used by SlideCodec.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param cells the cells in row order, kept by the configuration
+     * @param goal the board to reach, null for the default goal
+     */
+    SlideConfig(int rows, int cols, int[] cells, int[][] goal) {
+        this(cells, goal == null ? standardGoalOf(rows, cols) : goalOf(rows, cols, goal));
+    }
+
+    /**
+     * Constructor that counts the misplaced cells.
+     * @param cells the cells in row order
+     * @param goal the goal to reach
+     */
+    private SlideConfig(int[] cells, Goal goal) {
+        this(cells, goal, KERNELS.mismatches(cells, goal.cells), -1);
+    }
+
+    /**
+     * Constructor used by moves, which already know the misplaced count.
+     * @param cells the cells in row order
+     * @param goal the goal to reach
+     * @param misplaced the number of cells that differ from goal
+     * @param previousBlank the cell the empty space moved from
+     */
+    private SlideConfig(int[] cells, Goal goal, int misplaced, int previousBlank) {
+        this.cells = cells;
+        this.goal = goal;
+        this.misplaced = misplaced;
+        this.previousBlank = previousBlank;
         this.emptySpace = findEmptySpace();
         this.observers = new ArrayList<>();
     }
 
+    /**
+     * Copies a board into row order.
+     * @param board the board
+     * @return its cells in row order
+     */
+    private static int[] flatten(int[][] board) {
+        int cols = board[0].length;
+        int[] cells = new int[board.length * cols];
+        for (int row = 0; row < board.length; row++) {
+            System.arraycopy(board[row], 0, cells, row * cols, cols);
+        }
+        return cells;
+    }
+
+    /**
+     * Gives the goal tables of a goal board, building them only when the goal
+     * array differs from the last one seen.
+     * @param rows number of rows of the puzzle board
+     * @param cols number of columns of the puzzle board
+     * @param goalBoard the goal board
+     * @return the goal tables
+     */
+    private static Goal goalOf(int rows, int cols, int[][] goalBoard) {
+        if (goalBoard.length != rows || goalBoard[0].length != cols) {
+            throw new IllegalArgumentException("Goal board is " + goalBoard.length + " x " + goalBoard[0].length
+                    + " but the puzzle board is " + rows + " x " + cols);
+        }
+        Goal last = lastGoal;
+        if (last != null && last.board == goalBoard) {
+            return last;
+        }
+        Goal goal = new Goal(goalBoard);
+        lastGoal = goal;
+        return goal;
+    }
+
+    /**
+     * Gives the tables of the default goal, building them only when the size
+     * differs from the last default goal.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the goal tables
+     */
+    private static Goal standardGoalOf(int rows, int cols) {
+        Goal last = lastStandardGoal;
+        if (last != null && last.rows == rows && last.cols == cols) {
+            return last;
+        }
+        Goal goal = new Goal(standardGoal(rows, cols));
+        lastStandardGoal = goal;
+        return goal;
+    }
+
+    /**
+     * Builds the default goal board: the numbers 1 to rows * cols - 1 in row order
+     * with the empty space in the bottom right corner.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the goal board
+     */
+    public static int[][] standardGoal(int rows, int cols) {
+        int[][] goal = new int[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                goal[row][col] = (row * cols + col + 1) % (rows * cols);
+            }
+        }
+        return goal;
+    }
+
+    /**
+     * Gives the misplaced count after a piece moves into the empty space.
+     * @param from cell the piece leaves, it becomes the empty space
+     * @param to cell of the empty space the piece moves into
+     * @return the misplaced count of the configuration after the move
+     */
+    private int misplacedAfterMove(int from, int to) {
+        int piece = cells[from];
+        int[] goalCells = goal.cells;
+        int count = misplaced;
+        count -= (piece != goalCells[from] ? 1 : 0) + (goalCells[to] != 0 ? 1 : 0);
+        count += (goalCells[from] != 0 ? 1 : 0) + (piece != goalCells[to] ? 1 : 0);
+        return count;
+    }
+
     /**
      * Find the coordinate of the empty space (0) on the puzzle board.
      * @return the coordinate of the empty space
      */
     private Coordinate findEmptySpace() {
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                if (board[row][col] == 0) {
-                    return new Coordinate(row, col);
-                }
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell] == 0) {
+                return new Coordinate(cell / goal.cols, cell % goal.cols);
             }
         }
         throw new IllegalStateException("Puzzle board does not contain an empty space.");
     }
 
 
+    /**
+     * Registers an observer that is told about every move made from this configuration,
+     * with the cell the moved piece ends up in.
+     * @param observer the observer to add
+     */
+    public void addObserver(Observer<SlideConfig, Coordinate> observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Removes an observer added with addObserver.
+     * @param observer the observer to remove
+     */
+    public void removeObserver(Observer<SlideConfig, Coordinate> observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Get the coordinate of the empty space.
+     * @return the coordinate of the empty space
+     */
+    public Coordinate getEmptySpace() {
+        return emptySpace;
+    }
+
     /**
      * Get the current puzzle board as a 2D array.
-     * @return the 2D array representing the puzzle board
+     * @return a new 2D array holding the puzzle board
      */
     public int[][] getBoard() {
+        int[][] board = new int[goal.rows][goal.cols];
+        for (int row = 0; row < goal.rows; row++) {
+            System.arraycopy(cells, row * goal.cols, board[row], 0, goal.cols);
+        }
         return board;
     }
 
+    /**
+     * Get the cells of the puzzle board in row order. The array is the
+     * configuration's own and must not be changed.
+     * @return the cells in row order
+     */
+    public int[] getCells() {
+        return cells;
+    }
+
+    /**
+     * Get the number at one cell of the puzzle board.
+     * @param row the row
+     * @param col the column
+     * @return the number there, 0 for the empty space
+     */
+    public int getCell(int row, int col) {
+        return cells[row * goal.cols + col];
+    }
+
+    /**
+     * Get the number of rows of the puzzle board.
+     * @return the rows
+     */
+    public int getRows() {
+        return goal.rows;
+    }
+
+    /**
+     * Get the number of columns of the puzzle board.
+     * @return the columns
+     */
+    public int getCols() {
+        return goal.cols;
+    }
+
+    /**
+     * Get the goal board this configuration is solved against.
+     * @return the 2D array representing the goal board
+     */
+    public int[][] getGoal() {
+        return goal.board;
+    }
+
+    /**
+     * Get the number of cells, the empty one included, that differ from the goal board.
+     * @return the misplaced count, 0 for a solution
+     */
+    public int getMisplaced() {
+        return misplaced;
+    }
+
+    /**
+     * Get the sum over all numbered blocks of their row and column distance
+     * from their goal cell, a lower bound on the moves left.
+     * @return the Manhattan distance, 0 for a solution
+     */
+    public int getManhattanDistance() {
+        return KERNELS.manhattan(cells, goal.cellRow, goal.cellCol, goal.rowOf, goal.colOf);
+    }
+
     /**
      * Get the neighboring configurations of the current configuration.
      * A neighboring configuration is a valid configuration that can be reached
@@ -73,31 +323,88 @@ public class SlideConfig implements Configuration {
      */
     @Override
     public List<Configuration> getNeighbors() {
-        List<Configuration> neighbors = new ArrayList<>();
-        int emptyRow = emptySpace.row();
-        int emptyCol = emptySpace.col();
+        List<Configuration> neighbors = new ArrayList<>(4);
+        neighborIterator().forEachRemaining(neighbors::add);
+        return neighbors;
+    }
 
-// Check if a block can be slid from north
-        if (emptyRow > 0) {
-            neighbors.add(slideBlock(emptyRow - 1, emptyCol));
-        }
+    /**
+     * Slide the blocks next to the empty space one at a time, north, south, west
+     * then east, as the iterator is advanced.
+     * @return an iterator over the neighboring configurations
+     */
+    @Override
+    public Iterator<Configuration> neighborIterator() {
+        return slides(-1);
+    }
 
-// Check if a block can be slid from south
-        if (emptyRow < board.length - 1) {
-            neighbors.add(slideBlock(emptyRow + 1, emptyCol));
-        }
+    /**
+     * Slide the blocks next to the empty space as neighborIterator does, except
+     * the block the last move slid, which would only undo that move.
+     * @return an iterator over the neighbors worth searching
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        return slides(previousBlank);
+    }
 
-// Check if a block can be slid from west
-        if (emptyCol > 0) {
-            neighbors.add(slideBlock(emptyRow, emptyCol - 1));
-        }
+    /**
+     * Slide the blocks next to the empty space one at a time, north, south, west
+     * then east, leaving one cell out.
+     * @param skipped the cell whose block is not slid, -1 for none
+     * @return an iterator over the slides
+     */
+    private Iterator<Configuration> slides(int skipped) {
+        return new Iterator<>() {
+
+            /** Index into ROW_STEPS of the next slide to try. */
+            private int direction = nextSlide(0, skipped);
+
+            @Override
+            public boolean hasNext() {
+                return direction < ROW_STEPS.length;
+            }
 
-// Check if a block can be slid from east
-        if (emptyCol < board[0].length - 1) {
-            neighbors.add(slideBlock(emptyRow, emptyCol + 1));
+            @Override
+            public Configuration next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                SlideConfig neighbor = slideBlock(emptySpace.row() + ROW_STEPS[direction],
+                        emptySpace.col() + COL_STEPS[direction]);
+                direction = nextSlide(direction + 1, skipped);
+                return neighbor;
+            }
+        };
+    }
+
+    /**
+     * Finds the first slide, from a direction on, whose block is on the board
+     * and not in the skipped cell.
+     * @param direction the index into ROW_STEPS to start at
+     * @param skipped the cell to leave out, -1 for none
+     * @return the index of that slide, or ROW_STEPS.length if there is none
+     */
+    private int nextSlide(int direction, int skipped) {
+        while (direction < ROW_STEPS.length) {
+            int row = emptySpace.row() + ROW_STEPS[direction];
+            int col = emptySpace.col() + COL_STEPS[direction];
+            if (row >= 0 && row < goal.rows && col >= 0 && col < goal.cols && row * goal.cols + col != skipped) {
+                break;
+            }
+            direction++;
         }
+        return direction;
+    }
 
-        return neighbors;
+    /**
+     * Get the configurations one slide away from this one. A slide is undone by
+     * sliding the same block back, so these are the neighbors.
+     * @return a list of predecessor configurations
+     */
+    @Override
+    public List<Configuration> getPredecessors() {
+        return getNeighbors();
     }
 
     /**
@@ -107,15 +414,13 @@ public class SlideConfig implements Configuration {
      * @return new SlideConfig after sliding the block
      */
     public SlideConfig slideBlock(int newRow, int newCol) {
-        int[][] newBoard = new int[board.length][board[0].length];
-        for (int row = 0; row < board.length; row++) {
-            System.arraycopy(board[row], 0, newBoard[row], 0, board[row].length);
-        }
-        int numToSlide = newBoard[newRow][newCol];
-        newBoard[emptySpace.row()][emptySpace.col()] = numToSlide;
-        newBoard[newRow][newCol] = 0;
+        int from = newRow * goal.cols + newCol;
+        int to = emptySpace.row() * goal.cols + emptySpace.col();
+        int[] newCells = cells.clone();
+        newCells[to] = newCells[from];
+        newCells[from] = 0;
 
-        SlideConfig newConfig = new SlideConfig(newBoard);
+        SlideConfig newConfig = new SlideConfig(newCells, goal, misplacedAfterMove(from, to), to);
         notifyObservers(emptySpace);
         return newConfig;
     }
@@ -139,15 +444,13 @@ public class SlideConfig implements Configuration {
      * @return new SlideConfig representing the configuration after the move, or the current configuration if the move is illegal.
      */
     public SlideConfig movePiece(int fromRow, int fromCol, int toRow, int toCol) {
-        int[][] newBoard = new int[board.length][board[0].length];
-        for (int row = 0; row < board.length; row++) {
-            System.arraycopy(board[row], 0, newBoard[row], 0, board[row].length);
-        }
-        int pieceValue = newBoard[fromRow][fromCol];
-        if (Math.abs(fromRow - toRow) + Math.abs(fromCol - toCol) == 1 && newBoard[toRow][toCol] == 0) {
-            newBoard[fromRow][fromCol] = 0; // Set source cell to empty
-            newBoard[toRow][toCol] = pieceValue;
-            SlideConfig newConfig = new SlideConfig(newBoard);
+        int from = fromRow * goal.cols + fromCol;
+        int to = toRow * goal.cols + toCol;
+        if (Math.abs(fromRow - toRow) + Math.abs(fromCol - toCol) == 1 && cells[to] == 0) {
+            int[] newCells = cells.clone();
+            newCells[to] = newCells[from];
+            newCells[from] = 0; // Set source cell to empty
+            SlideConfig newConfig = new SlideConfig(newCells, goal, misplacedAfterMove(from, to), to);
             notifyObservers(new Coordinate(toRow, toCol));
             return newConfig;
         } else {
@@ -159,24 +462,46 @@ public class SlideConfig implements Configuration {
     }
 
     /**
-     * Checks if current configuration is a solution.
+     * Checks whether the goal board can be reached from this configuration. Every
+     * move swaps the empty space with a piece, so the parity of the board as a
+     * permutation of the goal must match the parity of the empty space's distance
+     * from its goal cell. That is enough once the board has two rows and two
+     * columns. On a single row or column pieces cannot pass each other, so they
+     * must already be in goal order.
+     * @return true if the board is solvable
+     */
+    public boolean isSolvable() {
+        int cols = goal.cols;
+        int[] goalCells = goal.cells;
+        if (goal.rows == 1 || cols == 1) {
+            return Arrays.equals(Arrays.stream(cells).filter(value -> value != 0).toArray(),
+                    Arrays.stream(goalCells).filter(value -> value != 0).toArray());
+        }
+        int[] goalCellOf = goal.cellOf;
+        boolean[] seen = new boolean[cells.length];
+        int transpositions = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            int length = 0;
+            for (int at = cell; !seen[at]; at = goalCellOf[cells[at]]) {
+                seen[at] = true;
+                length++;
+            }
+            if (length > 0) {
+                transpositions += length - 1;
+            }
+        }
+        int blankGoal = goalCellOf[0];
+        int blankDistance = Math.abs(emptySpace.row() - blankGoal / cols) + Math.abs(emptySpace.col() - blankGoal % cols);
+        return transpositions % 2 == blankDistance % 2;
+    }
+
+    /**
+     * Checks if current configuration is a solution, that is whether it matches the goal board.
      * @return true if the configuration is a solution, false otherwise.
      */
     @Override
     public boolean isSolution() {
-        int expectedValue = 1;
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
-                if (board[row][col] != expectedValue) {
-                    if (expectedValue == board.length * board[row].length && board[row][col] == 0) {
-                        return true;
-                    }
-                    return false;
-                }
-                expectedValue++;
-            }
-        }
-        return true;
+        return misplaced == 0;
     }
 
     /**
@@ -193,7 +518,7 @@ public class SlideConfig implements Configuration {
             return false;
         }
         SlideConfig other = (SlideConfig) obj;
-        return Arrays.deepEquals(this.board, other.board);
+        return goal.cols == other.goal.cols && KERNELS.equal(cells, other.cells);
     }
 
     /**
@@ -202,7 +527,7 @@ public class SlideConfig implements Configuration {
      */
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(this.board);
+        return KERNELS.hash(cells, goal.powers, goal.seed);
     }
 
     /**
@@ -211,8 +536,8 @@ public class SlideConfig implements Configuration {
      */
     public String getFormattedStringForPTUI() {
         StringBuilder sb = new StringBuilder();
-        int rows = board.length;
-        int cols = board[0].length;
+        int rows = goal.rows;
+        int cols = goal.cols;
         // Print column indexes
         sb.append("    ");
         for (int col = 0; col < cols; col++) {
@@ -228,7 +553,7 @@ public class SlideConfig implements Configuration {
         for (int row = 0; row < rows; row++) {
             sb.append(row).append("|");
             for (int col = 0; col < cols; col++) {
-                int num = board[row][col];
+                int num = cells[row * cols + col];
                 if (num == 0) {
                     sb.append("  . ");
                 } else {
@@ -247,17 +572,87 @@ public class SlideConfig implements Configuration {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (int[] row : board) {
-            for (int num : row) {
-                if (num == 0) {
-                    sb.append(" .");
-                } else {
-                    sb.append(String.format("%2d", num));
-                }
-                sb.append(" ");
+        for (int cell = 0; cell < cells.length; cell++) {
+            int num = cells[cell];
+            if (num == 0) {
+                sb.append(" .");
+            } else {
+                sb.append(String.format("%2d", num));
+            }
+            sb.append(" ");
+            if (cell % goal.cols == goal.cols - 1) {
+                sb.append("\n");
             }
-            sb.append("\n");
         }
         return sb.toString();
     }
+
+    /**
+     * A goal board with the tables the kernels and moves look things up in.
+     * Built once per goal and shared by every configuration solved against it.
+     */
+    private static final class Goal {
+
+        /** The goal board as given. */
+        private final int[][] board;
+
+        /** Number of rows. */
+        private final int rows;
+
+        /** Number of columns. */
+        private final int cols;
+
+        /** The goal cells in row order. */
+        private final int[] cells;
+
+        /** cellOf[tile] is the goal cell of the tile. */
+        private final int[] cellOf;
+
+        /** rowOf[tile] is the row of the tile's goal cell. */
+        private final int[] rowOf;
+
+        /** colOf[tile] is the column of the tile's goal cell. */
+        private final int[] colOf;
+
+        /** cellRow[i] is the row of cell i. */
+        private final int[] cellRow;
+
+        /** cellCol[i] is the column of cell i. */
+        private final int[] cellCol;
+
+        /** powers[i] is 31 to the power of the number of cells after cell i, for hashing. */
+        private final int[] powers;
+
+        /** 31 to the power of the number of cells, for hashing. */
+        private final int seed;
+
+        /**
+         * Builds the tables of a goal board.
+         * @param board the goal board
+         */
+        private Goal(int[][] board) {
+            this.board = board;
+            this.rows = board.length;
+            this.cols = board[0].length;
+            this.cells = flatten(board);
+            int max = Arrays.stream(cells).max().orElse(0);
+            this.cellOf = new int[max + 1];
+            this.rowOf = new int[max + 1];
+            this.colOf = new int[max + 1];
+            this.cellRow = new int[cells.length];
+            this.cellCol = new int[cells.length];
+            this.powers = new int[cells.length];
+            int power = 1;
+            for (int cell = cells.length - 1; cell >= 0; cell--) {
+                cellOf[cells[cell]] = cell;
+                rowOf[cells[cell]] = cell / cols;
+                colOf[cells[cell]] = cell % cols;
+                cellRow[cell] = cell / cols;
+                cellCol[cell] = cell % cols;
+                powers[cell] = power;
+                power *= 31;
+            }
+            this.seed = power;
+        }
+    }
 }
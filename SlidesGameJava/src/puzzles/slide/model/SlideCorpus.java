@@ -0,0 +1,270 @@
+package puzzles.slide.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A packed binary file holding many slide boards, read through a memory map.
+ * <p>
+ * The file starts with a 16 byte header (magic, version, number of boards) and
+ * then holds the boards back to back in the form written by {@link SlideCodec}.
+ * Each board is followed by a byte that is 1 when its goal board follows, in the
+ * same form, and 0 when the board has the default goal. Version 1 files have no
+ * such byte and only default goals.
+ * Iterating decodes one board at a time straight from the mapped file, so a
+ * corpus of any size can be walked without loading it first. Boards are only
+ * found by walking, there is no index.
+ */
+public class SlideCorpus implements Iterable<SlideConfig>, Closeable {
+
+    /** Identifies a corpus file. */
+    private static final int MAGIC = 0x534C4443; // "SLDC"
+
+    /** Version of the file layout. */
+    private static final int VERSION = 2;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Bytes mapped at a time while iterating. */
+    private static final long WINDOW_SIZE = 64 << 20;
+
+    /** Size of the largest board record. */
+    private static final int MAX_RECORD = 2 * (2 + 2 * 255 * 255) + 1;
+
+    /** Decodes the boards. */
+    private static final SlideCodec CODEC = new SlideCodec();
+
+    /** The corpus file. */
+    private final FileChannel channel;
+
+    /** Number of boards in the corpus. */
+    private final long size;
+
+    /** Version of the file being read. */
+    private final int version;
+
+    /**
+     * Opens a corpus file for reading.
+     * @param file the corpus file
+     * @throws IOException if the file cannot be opened or is not a corpus
+     */
+    public SlideCorpus(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading until the header is complete
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a slide corpus");
+        }
+        this.version = header.getInt();
+        if (version < 1 || version > VERSION) {
+            channel.close();
+            throw new IOException(file + " is a slide corpus of unknown version " + version);
+        }
+        this.size = header.getLong();
+    }
+
+    /**
+     * Gets the number of boards in the corpus.
+     * @return the number of boards
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Walks the boards in the order they were written, decoding each one when it is reached.
+     * @return an iterator over the boards
+     */
+    @Override
+    public Iterator<SlideConfig> iterator() {
+        return new Iterator<>() {
+            /** Number of boards returned so far. */
+            private long returned;
+
+            /** The mapped part of the file. */
+            private MappedByteBuffer window;
+
+            /** File offset of the start of the window. */
+            private long windowStart;
+
+            /** File offset of the next board. */
+            private long offset = HEADER_SIZE;
+
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+
+            @Override
+            public SlideConfig next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    long fileSize = channel.size();
+                    long windowEnd = window == null ? 0 : windowStart + window.capacity();
+                    if (window == null || (offset + MAX_RECORD > windowEnd && windowEnd < fileSize)) {
+                        windowStart = offset;
+                        window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                Math.min(WINDOW_SIZE, fileSize - offset));
+                    }
+                    window.position((int) (offset - windowStart));
+                    SlideConfig config = CODEC.decode(window);
+                    if (version >= 2 && window.get() != 0) {
+                        config = new SlideConfig(config.getBoard(), CODEC.decode(window).getBoard());
+                    }
+                    offset = windowStart + window.position();
+                    returned++;
+                    return config;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    throw new IllegalStateException("corpus is damaged at board " + returned, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the corpus file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes boards to a new corpus file. The board count in the header is
+     * filled in when the writer is closed.
+     */
+    public static class Writer implements Closeable {
+
+        /** The corpus file. */
+        private final FileChannel channel;
+
+        /** Boards waiting to be written. */
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+        /** Number of boards written. */
+        private long count;
+
+        /**
+         * Creates a corpus file, replacing any file with the same name.
+         * @param file the corpus file
+         * @throws IOException if the file cannot be created
+         */
+        public Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+        }
+
+        /**
+         * Adds a board to the corpus.
+         * @param config the board to add
+         * @throws IOException if the file cannot be written
+         */
+        public void add(SlideConfig config) throws IOException {
+            boolean customGoal = !Arrays.deepEquals(config.getGoal(),
+                    SlideConfig.standardGoal(config.getBoard().length, config.getBoard()[0].length));
+            SlideConfig goal = customGoal ? new SlideConfig(config.getGoal()) : null;
+            int size = CODEC.encodedSize(config) + 1 + (customGoal ? CODEC.encodedSize(goal) : 0);
+            if (buffer.remaining() < size) {
+                flush();
+            }
+            CODEC.encode(config, buffer);
+            buffer.put((byte) (customGoal ? 1 : 0));
+            if (customGoal) {
+                CODEC.encode(goal, buffer);
+            }
+            count++;
+        }
+
+        /**
+         * Writes the buffered boards to the file.
+         * @throws IOException if the file cannot be written
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes the remaining boards and the board count, then closes the file.
+         * @throws IOException if the file cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            try (channel) {
+                flush();
+                ByteBuffer countBytes = ByteBuffer.allocate(Long.BYTES).putLong(0, count);
+                channel.write(countBytes, 8);
+            }
+        }
+    }
+
+    /**
+     * Packs puzzle text files into a corpus. Directories are packed with every
+     * file they contain, and a text file may hold several boards one after the other.
+     * @param args the corpus file followed by the text files and directories to pack
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java SlideCorpus corpus-file puzzle-file-or-directory...");
+            return;
+        }
+        SlideFileParser parser = new SlideFileParser();
+        long start = System.nanoTime();
+        long count;
+        try (Writer writer = new Writer(Path.of(args[0]))) {
+            for (int i = 1; i < args.length; i++) {
+                Path input = Path.of(args[i]);
+                List<Path> files;
+                if (Files.isDirectory(input)) {
+                    try (Stream<Path> listing = Files.list(input)) {
+                        files = listing.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+                } else {
+                    files = List.of(input);
+                }
+                for (Path file : files) {
+                    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                        parser.start(in);
+                        for (SlideConfig config = parser.next(); config != null; config = parser.next()) {
+                            writer.add(config);
+                        }
+                    } catch (IOException e) {
+                        throw new IOException(file + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            count = writer.count;
+        } catch (IOException e) {
+            System.out.println("Error packing the corpus: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Packed %d boards into %s in %.1f ms%n", count, args[0], (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,153 @@
+package puzzles.slide.model;
+import puzzles.common.Coordinate;
+
+/**
+ * A change of the current configuration of a SlideModel, sent to its observers.
+ * <p>
+ * Events carry the configurations themselves, the text describing them is only
+ * built when an observer asks for it with message() or toString(). Several moves
+ * or hints in a row may be coalesced into one event that spans all of them, its
+ * count then tells how many changes it stands for.
+ */
+public final class SlideEvent {
+
+    /** What happened to the model. */
+    public enum Kind {
+        /** A piece was moved by the player. */
+        MOVED,
+        /** A new configuration was loaded. */
+        LOADED,
+        /** The puzzle went back to its initial configuration. */
+        RESET,
+        /** A hint moved a piece. */
+        HINT
+    }
+
+    /** What happened. */
+    private final Kind kind;
+
+    /** The current configuration after the change. */
+    private final SlideConfig config;
+
+    /** The current configuration before the change. */
+    private final SlideConfig previous;
+
+    /** Cell the moved piece ended up in, null for loads and resets. */
+    private final Coordinate move;
+
+    /** Number of changes this event stands for. */
+    private final int count;
+
+    /** The message, built on first use. */
+    private volatile String message;
+
+    /**
+     * Creates an event for a single change.
+     * @param kind what happened
+     * @param config the configuration after the change
+     * @param previous the configuration before the change
+     * @param move the cell the moved piece ended up in, null for loads and resets
+     */
+    public SlideEvent(Kind kind, SlideConfig config, SlideConfig previous, Coordinate move) {
+        this(kind, config, previous, move, 1);
+    }
+
+    /**
+     * Creates an event for one or more changes.
+     * @param kind what happened
+     * @param config the configuration after the last change
+     * @param previous the configuration before the first change
+     * @param move the cell the last moved piece ended up in
+     * @param count the number of changes
+     */
+    private SlideEvent(Kind kind, SlideConfig config, SlideConfig previous, Coordinate move, int count) {
+        this.kind = kind;
+        this.config = config;
+        this.previous = previous;
+        this.move = move;
+        this.count = count;
+    }
+
+    /**
+     * Gets what happened.
+     * @return the kind of the event
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Gets the current configuration after the change.
+     * @return the new configuration
+     */
+    public SlideConfig config() {
+        return config;
+    }
+
+    /**
+     * Gets the current configuration before the change.
+     * @return the old configuration, null if the model had none
+     */
+    public SlideConfig previous() {
+        return previous;
+    }
+
+    /**
+     * Gets the cell the moved piece ended up in. When the event stands for
+     * several changes this is the cell of the last one.
+     * @return the cell, null for loads and resets
+     */
+    public Coordinate move() {
+        return move;
+    }
+
+    /**
+     * Gets the number of changes the event stands for.
+     * @return 1 unless moves or hints were coalesced
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Checks whether a later event can be folded into this one. Only moves
+     * follow moves and hints follow hints, loads and resets always stand alone.
+     * @param later the event that happened right after this one
+     * @return true if the two can be coalesced
+     */
+    public boolean canCoalesce(SlideEvent later) {
+        return kind == later.kind && (kind == Kind.MOVED || kind == Kind.HINT);
+    }
+
+    /**
+     * Folds a later event into this one.
+     * @param later the event that happened right after this one
+     * @return an event going from this event's previous configuration to the later one's
+     */
+    public SlideEvent coalesce(SlideEvent later) {
+        return new SlideEvent(kind, later.config, previous, later.move, count + later.count);
+    }
+
+    /**
+     * Gets the text describing the event, rendering the board the first time it is asked for.
+     * @return the message
+     */
+    public String message() {
+        String text = message;
+        if (text == null) {
+            String name = kind.name().charAt(0) + kind.name().substring(1).toLowerCase();
+            text = (count > 1 ? name + " x" + count : name) + ": " + config;
+            message = text;
+        }
+        return text;
+    }
+
+    /**
+     * Returns the message of the event.
+     * @return the message
+     */
+    @Override
+    public String toString() {
+        return message();
+    }
+}
@@ -0,0 +1,223 @@
+package puzzles.slide.model;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads slide puzzles in the text format of data/slide: a line with the number
+ * of rows and columns, then one line per row with the numbers of that row and
+ * a '.' for the empty space. A board may be followed by a line with the word
+ * goal and then the rows of the board to reach, in the same form; without it
+ * the goal is the numbers in order with the empty space last.
+ * <p>
+ * The parser reads bytes straight from a channel into a buffer it keeps between
+ * files and converts the numbers itself, so the only thing allocated per board
+ * is the board. Boards may follow each other in the same stream, which lets one
+ * text file hold a whole corpus. A parser is not safe to share between threads.
+ */
+public class SlideFileParser {
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Marks the empty space when returned by nextValue. */
+    private static final int EMPTY = -1;
+
+    /** The word that starts a goal board. */
+    private static final String GOAL = "goal";
+
+    /** The read buffer, kept between files. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** The channel being read. */
+    private ReadableByteChannel channel;
+
+    /** Whether the channel has no more bytes. */
+    private boolean endOfInput;
+
+    /**
+     * Reads the single board stored in a file.
+     * @param file the puzzle file
+     * @return the board as a SlideConfig
+     * @throws IOException if the file cannot be read or is not a slide puzzle
+     */
+    public SlideConfig parse(Path file) throws IOException {
+        FileChannel fileChannel;
+        try {
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(file + " (No such file or directory)");
+        }
+        try (fileChannel) {
+            start(fileChannel);
+            SlideConfig config = next();
+            if (config == null) {
+                throw new EOFException("holds no puzzle");
+            }
+            return config;
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts reading boards from a channel, for use with next.
+     * @param channel the channel to read, the caller closes it
+     */
+    public void start(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.endOfInput = false;
+        buffer.clear().flip();
+    }
+
+    /**
+     * Reads the next board from the channel given to start.
+     * @return the board, or null if the channel has no more boards
+     * @throws IOException if the channel cannot be read or holds a malformed board
+     */
+    public SlideConfig next() throws IOException {
+        if (!skipSpace()) {
+            return null;
+        }
+        int rows = nextValue();
+        int cols = nextValue();
+        if (rows <= 0 || cols <= 0) {
+            throw new IOException("bad board size " + rows + " x " + cols);
+        }
+        int[][] board = readBoard(rows, cols);
+        if (!skipSpace() || buffer.get(buffer.position()) != GOAL.charAt(0)) {
+            return new SlideConfig(board);
+        }
+        for (int i = 0; i < GOAL.length(); i++) {
+            if (!buffer.hasRemaining() && !fill() || buffer.get() != GOAL.charAt(i)) {
+                throw new IOException("expected '" + GOAL + "' before the goal board");
+            }
+        }
+        int[][] goal = readBoard(rows, cols);
+        if (!Arrays.equals(sortedCells(board), sortedCells(goal))) {
+            throw new IOException("goal board does not hold the same pieces as the puzzle");
+        }
+        return new SlideConfig(board, goal);
+    }
+
+    /**
+     * Reads the rows of a board.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the board, 0 marks the empty space
+     * @throws IOException if the input ends or holds something other than numbers and '.'
+     */
+    private int[][] readBoard(int rows, int cols) throws IOException {
+        int[][] board = new int[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int value = nextValue();
+                board[row][col] = value == EMPTY ? 0 : value;
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Lists the cells of a board in ascending order.
+     * @param board the board
+     * @return the sorted cell values
+     */
+    private static int[] sortedCells(int[][] board) {
+        int[] cells = Arrays.stream(board).flatMapToInt(Arrays::stream).toArray();
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    /**
+     * Reads one number, or the '.' of the empty space.
+     * @return the number, or EMPTY for '.'
+     * @throws IOException if the input ends or the next token is not a number or '.'
+     */
+    private int nextValue() throws IOException {
+        if (!skipSpace()) {
+            throw new EOFException("puzzle ends too early");
+        }
+        byte b = buffer.get();
+        if (b == '.') {
+            return EMPTY;
+        }
+        int value = 0;
+        int digits = 0;
+        while (true) {
+            if (b < '0' || b > '9') {
+                throw new IOException("unexpected character '" + (char) b + "'");
+            }
+            value = value * 10 + (b - '0');
+            if (++digits > 9) {
+                throw new IOException("number too large");
+            }
+            if (!buffer.hasRemaining() && !fill()) {
+                return value;
+            }
+            b = buffer.get(buffer.position());
+            if (isSpace(b)) {
+                return value;
+            }
+            buffer.get();
+        }
+    }
+
+    /**
+     * Skips white space.
+     * @return true if a byte follows the white space, false at the end of the input
+     * @throws IOException if the channel cannot be read
+     */
+    private boolean skipSpace() throws IOException {
+        while (true) {
+            while (buffer.hasRemaining()) {
+                if (!isSpace(buffer.get(buffer.position()))) {
+                    return true;
+                }
+                buffer.get();
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Refills the buffer from the channel.
+     * @return false if the channel had no more bytes
+     * @throws IOException if the channel cannot be read
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks for the white space allowed between tokens.
+     * @param b the byte to check
+     * @return true for space, tab, carriage return and line feed
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -2,15 +2,20 @@ package puzzles.slide.model;
 import puzzles.common.solver.*;
 import puzzles.common.Coordinate;
 import puzzles.common.model.Observer;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Represents the model for the Slide Puzzle game.
  * This class handles the logic of managing puzzle configurations and notifying observers.
+ * Observers get a SlideEvent per change. Between beginBatch and endBatch moves and hints
+ * are coalesced into one event, and observers added with an executor are called on that
+ * executor so a slow observer never holds up the model.
  */
 
 public class SlideModel {
@@ -23,8 +28,17 @@ public class SlideModel {
     /** The initial configuration of the puzzle */
     private SlideConfig initialConfig;
 
+    /** Reads puzzle files, kept so its buffer is reused between loads */
+    private final SlideFileParser parser = new SlideFileParser();
+
     /** the collection of observers of this model */
-    private final List<Observer<SlideModel, String>> observers = new LinkedList<>();
+    private final List<Observer<SlideModel, SlideEvent>> observers = new LinkedList<>();
+
+    /** Nesting depth of beginBatch calls, events are held back while it is above zero */
+    private int batchDepth;
+
+    /** Events held back by the current batch, already coalesced */
+    private final List<SlideEvent> batched = new ArrayList<>();
 
     /**
      * Constructs a SlideModel object with the initial configuration loaded from specified file.
@@ -44,46 +58,88 @@ public class SlideModel {
      * @throws IOException if there is an error reading the file
      */
     public SlideConfig loadConfigFromFile(String filename) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line = reader.readLine();
-            String[] dimensions = line.trim().split("\\s+");
-            int rows = Integer.parseInt(dimensions[0]);
-            int cols = Integer.parseInt(dimensions[1]);
-            int[][] board = new int[rows][cols];
-            for (int row = 0; row < rows; row++) {
-                line = reader.readLine();
-                String[] values = line.trim().split("\\s+");
-                for (int col = 0; col < cols; col++) {
-                    board[row][col] = values[col].equals(".") ? 0 : Integer.parseInt(values[col]);
-                }
-            }
-            return new SlideConfig(board);
-        }
+        return parser.parse(Path.of(filename));
     }
 
     /**
      * Resets the current configuration to the initial configuration.
      */
     public void reset() {
-        this.currentConfig = new SlideConfig(initialConfig.getBoard()); // Create a copy of the initial configuration
-        alertObservers("");
+        SlideConfig previous = currentConfig;
+        this.currentConfig = new SlideConfig(initialConfig.getBoard(), initialConfig.getGoal()); // Create a copy of the initial configuration
+        alertObservers(new SlideEvent(SlideEvent.Kind.RESET, currentConfig, previous, null));
     }
 
     /**
      * The view calls this to add itself as an observer.
      * @param observer the view
      */
-    public void addObserver(Observer<SlideModel, String> observer) {
+    public void addObserver(Observer<SlideModel, SlideEvent> observer) {
         this.observers.add(observer);
     }
 
     /**
-     * The model's state has changed (the counter), so inform the view via
-     * update method
+     * Adds an observer that is called on the given executor instead of the model's thread.
+     * Events are delivered in order, one at a time. With coalesce set, moves and hints
+     * that pile up while the observer is busy are folded into one event.
+     * @param observer the view
+     * @param executor runs the observer's updates
+     * @param coalesce whether waiting moves and hints may be coalesced
+     */
+    public void addObserver(Observer<SlideModel, SlideEvent> observer, Executor executor, boolean coalesce) {
+        this.observers.add(new AsyncObserver(observer, executor, coalesce));
+    }
+
+    /**
+     * Starts holding back events. Until the matching endBatch, moves and hints in a row
+     * are coalesced, which keeps a burst such as replaying a solution to one event.
+     * Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch started with beginBatch and sends the held back events.
      */
-    private void alertObservers(String data) {
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch without beginBatch");
+        }
+        if (--batchDepth == 0) {
+            List<SlideEvent> events = new ArrayList<>(batched);
+            batched.clear();
+            for (SlideEvent event : events) {
+                dispatch(event);
+            }
+        }
+    }
+
+    /**
+     * The model's state has changed, so inform the view via the update method,
+     * or hold the event back if a batch is open.
+     * @param event what changed
+     */
+    private void alertObservers(SlideEvent event) {
+        if (batchDepth > 0) {
+            int last = batched.size() - 1;
+            if (last >= 0 && batched.get(last).canCoalesce(event)) {
+                batched.set(last, batched.get(last).coalesce(event));
+            } else {
+                batched.add(event);
+            }
+        } else {
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Sends an event to every observer.
+     * @param event what changed
+     */
+    private void dispatch(SlideEvent event) {
         for (var observer : observers) {
-            observer.update(this, data);
+            observer.update(this, event);
         }
     }
 
@@ -100,7 +156,125 @@ public class SlideModel {
      * @param newConfig The new SlideConfig representing updated configuration.
      */
     public void setCurrentConfig(SlideConfig newConfig) {
+        SlideConfig previous = currentConfig;
         this.currentConfig = newConfig;
-        alertObservers("Loaded: " + newConfig);
+        alertObservers(new SlideEvent(SlideEvent.Kind.LOADED, newConfig, previous, null));
+    }
+
+    /**
+     * Moves a piece of the current configuration to the empty space next to it.
+     * An illegal move leaves the configuration alone and is reported by SlideConfig.movePiece.
+     * @param fromRow row index of the piece.
+     * @param fromCol column index of the piece.
+     * @param toRow row index of the empty space.
+     * @param toCol column index of the empty space.
+     * @return true if the piece was moved.
+     */
+    public boolean move(int fromRow, int fromCol, int toRow, int toCol) {
+        SlideConfig previous = currentConfig;
+        SlideConfig newConfig = previous.movePiece(fromRow, fromCol, toRow, toCol);
+        if (newConfig == previous) {
+            return false;
+        }
+        this.currentConfig = newConfig;
+        alertObservers(new SlideEvent(SlideEvent.Kind.MOVED, newConfig, previous, new Coordinate(toRow, toCol)));
+        return true;
+    }
+
+    /**
+     * Makes the next step of a solution the current configuration.
+     * @param nextStep a configuration one move away from the current one.
+     */
+    public void applyHint(SlideConfig nextStep) {
+        SlideConfig previous = currentConfig;
+        this.currentConfig = nextStep;
+        alertObservers(new SlideEvent(SlideEvent.Kind.HINT, nextStep, previous, previous.getEmptySpace()));
+    }
+
+    /**
+     * Calls an observer on an executor, one event at a time and in order.
+     */
+    private static final class AsyncObserver implements Observer<SlideModel, SlideEvent> {
+
+        /** The observer being called. */
+        private final Observer<SlideModel, SlideEvent> target;
+
+        /** Runs the observer's updates. */
+        private final Executor executor;
+
+        /** Whether waiting moves and hints may be coalesced. */
+        private final boolean coalesce;
+
+        /** Events waiting for the observer. */
+        private final ArrayDeque<SlideEvent> pending = new ArrayDeque<>();
+
+        /** Whether a drain of the pending events is queued or running. */
+        private boolean draining;
+
+        /**
+         * Wraps an observer.
+         * @param target the observer being called
+         * @param executor runs the observer's updates
+         * @param coalesce whether waiting moves and hints may be coalesced
+         */
+        AsyncObserver(Observer<SlideModel, SlideEvent> target, Executor executor, boolean coalesce) {
+            this.target = target;
+            this.executor = executor;
+            this.coalesce = coalesce;
+        }
+
+        /**
+         * Queues an event and makes sure a drain is on its way.
+         * @param model the model
+         * @param event what changed
+         */
+        @Override
+        public void update(SlideModel model, SlideEvent event) {
+            synchronized (this) {
+                SlideEvent last = pending.peekLast();
+                if (coalesce && last != null && last.canCoalesce(event)) {
+                    pending.pollLast();
+                    pending.addLast(last.coalesce(event));
+                } else {
+                    pending.addLast(event);
+                }
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(() -> drain(model));
+        }
+
+        /**
+         * Hands the pending events to the observer until none are left.
+         * @param model the model
+         */
+        private void drain(SlideModel model) {
+            while (true) {
+                SlideEvent event;
+                synchronized (this) {
+                    event = pending.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    target.update(model, event);
+                } catch (RuntimeException e) {
+                    // hand the events still waiting to a new drain, so they are not stranded
+                    boolean more;
+                    synchronized (this) {
+                        more = !pending.isEmpty();
+                        draining = more;
+                    }
+                    if (more) {
+                        executor.execute(() -> drain(model));
+                    }
+                    throw e;
+                }
+            }
+        }
     }
 }
\ No newline at end of file
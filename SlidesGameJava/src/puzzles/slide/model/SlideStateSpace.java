@@ -0,0 +1,221 @@
+package puzzles.slide.model;
+
+import puzzles.common.solver.RankedStateSpace;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ranks the boards of a small slide puzzle as permutations of the goal board.
+ * A board is read as the goal cell of the number in each of its cells, and that
+ * permutation is ranked by its Lehmer code, so the goal board is rank 0 and a
+ * board of n cells has n! ranks. Only half of them can be reached from any start.
+ * The goal board is held by the space.
+ */
+public class SlideStateSpace implements RankedStateSpace<SlideConfig> {
+
+    /** Most cells a board may have, 20! being the largest factorial that fits in a long. */
+    public static final int MAX_CELLS = 20;
+
+    /** Row offsets of the blocks that can slide into the empty space: north, south, west, east. */
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0};
+
+    /** Column offsets of the blocks that can slide into the empty space, matching ROW_STEPS. */
+    private static final int[] COL_STEPS = {0, 0, -1, 1};
+
+    /** The goal board. */
+    private final int[][] goal;
+
+    /** Number of rows. */
+    private final int rows;
+
+    /** Number of columns. */
+    private final int cols;
+
+    /** The goal cells in row order. */
+    private final int[] goalCells;
+
+    /** The goal cell of each number. */
+    private final Map<Integer, Integer> goalCellOf = new HashMap<>();
+
+    /** Goal cell of the empty space. */
+    private final int blank;
+
+    /** factorial[i] is i!. */
+    private final long[] factorial;
+
+    /**
+     * Creates the space of the boards solved against a goal board.
+     * @param goal the goal board, its numbers all different with 0 for the empty space
+     * @throws IllegalArgumentException if the board is too big or its numbers repeat
+     */
+    public SlideStateSpace(int[][] goal) {
+        this.goal = goal;
+        this.rows = goal.length;
+        this.cols = goal[0].length;
+        int cells = rows * cols;
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("A board of " + cells + " cells cannot be ranked, at most "
+                    + MAX_CELLS + " cells");
+        }
+        this.goalCells = new int[cells];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(goal[row], 0, goalCells, row * cols, cols);
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            if (goalCellOf.put(goalCells[cell], cell) != null) {
+                throw new IllegalArgumentException("The goal board holds " + goalCells[cell] + " more than once");
+            }
+        }
+        if (!goalCellOf.containsKey(0)) {
+            throw new IllegalArgumentException("The goal board has no empty space");
+        }
+        this.blank = goalCellOf.get(0);
+        this.factorial = new long[cells + 1];
+        factorial[0] = 1;
+        for (int i = 1; i <= cells; i++) {
+            factorial[i] = factorial[i - 1] * i;
+        }
+    }
+
+    /**
+     * Gives the number of boards, (rows*cols)!.
+     * @return the size of the space
+     */
+    @Override
+    public long size() {
+        return factorial[goalCells.length];
+    }
+
+    /**
+     * Gives the rank of a board.
+     * @param config the configuration
+     * @return its rank
+     */
+    @Override
+    public long rank(SlideConfig config) {
+        int[] cells = config.getCells();
+        if (config.getRows() != rows || config.getCols() != cols) {
+            throw new IllegalArgumentException("The board is not " + rows + " x " + cols);
+        }
+        int[] permutation = new int[cells.length];
+        boolean[] used = new boolean[cells.length];
+        for (int cell = 0; cell < cells.length; cell++) {
+            Integer goalCell = goalCellOf.get(cells[cell]);
+            if (goalCell == null || used[goalCell]) {
+                throw new IllegalArgumentException("The board does not hold the numbers of the goal board");
+            }
+            used[goalCell] = true;
+            permutation[cell] = goalCell;
+        }
+        return rank(permutation);
+    }
+
+    /**
+     * Gives the Lehmer rank of a permutation.
+     * @param permutation the goal cell of each cell
+     * @return its rank
+     */
+    private long rank(int[] permutation) {
+        long rank = 0;
+        for (int i = 0; i < permutation.length; i++) {
+            int smaller = 0;
+            for (int j = i + 1; j < permutation.length; j++) {
+                if (permutation[j] < permutation[i]) {
+                    smaller++;
+                }
+            }
+            rank += smaller * factorial[permutation.length - 1 - i];
+        }
+        return rank;
+    }
+
+    /**
+     * Writes the permutation of a rank.
+     * @param rank the rank
+     * @param permutation where to write the goal cell of each cell
+     */
+    private void unrank(long rank, int[] permutation) {
+        int n = permutation.length;
+        // available goal cells, in order, as a bit mask
+        long free = (1L << n) - 1;
+        for (int i = 0; i < n; i++) {
+            long place = factorial[n - 1 - i];
+            int smaller = (int) (rank / place);
+            rank %= place;
+            long mask = free;
+            for (int skip = 0; skip < smaller; skip++) {
+                mask &= mask - 1;
+            }
+            int goalCell = Long.numberOfTrailingZeros(mask);
+            permutation[i] = goalCell;
+            free &= ~(1L << goalCell);
+        }
+    }
+
+    /**
+     * Builds the board of a rank.
+     * @param rank the rank
+     * @return the configuration, solved against the space's goal board
+     */
+    @Override
+    public SlideConfig unrank(long rank) {
+        int[] permutation = new int[goalCells.length];
+        unrank(rank, permutation);
+        int[] cells = new int[permutation.length];
+        for (int cell = 0; cell < cells.length; cell++) {
+            cells[cell] = goalCells[permutation[cell]];
+        }
+        return new SlideConfig(rows, cols, cells, goal);
+    }
+
+    /**
+     * Checks whether a rank is the goal board's.
+     * @param rank the rank
+     * @return true if it is the goal board
+     */
+    @Override
+    public boolean isSolution(long rank) {
+        return rank == 0;
+    }
+
+    /**
+     * Gives the most neighbors of a board, one per side of the empty space.
+     * @return 4
+     */
+    @Override
+    public int maxNeighbors() {
+        return ROW_STEPS.length;
+    }
+
+    /**
+     * Makes an expander that slides the blocks north, south, west and east of
+     * the empty space into it, as SlideConfig does. It keeps the permutation of
+     * the rank being expanded.
+     * @return the expander
+     */
+    @Override
+    public Expander expander() {
+        int[] permutation = new int[goalCells.length];
+        return (rank, neighbors) -> {
+            unrank(rank, permutation);
+            int empty = 0;
+            while (permutation[empty] != blank) {
+                empty++;
+            }
+            int count = 0;
+            for (int direction = 0; direction < ROW_STEPS.length; direction++) {
+                int row = empty / cols + ROW_STEPS[direction];
+                int col = empty % cols + COL_STEPS[direction];
+                if (row >= 0 && row < rows && col >= 0 && col < cols) {
+                    int from = row * cols + col;
+                    permutation[empty] = permutation[from];
+                    permutation[from] = blank;
+                    neighbors[count++] = rank(permutation);
+                    permutation[from] = permutation[empty];
+                    permutation[empty] = blank;
+                }
+            }
+            return count;
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package puzzles.slide.model;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Board kernels written with the Vector API. Each loop handles a full vector of
+ * cells at a time and the cells left over one at a time. Only loaded by
+ * BoardKernels when the jdk.incubator.vector module is present.
+ */
+final class VectorBoardKernels extends BoardKernels {
+
+    /** The widest int vectors the CPU handles well. */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Compares two boards with Arrays.equals. The JIT already compiles it to a
+     * vectorized mismatch check, and BoardKernelBenchmark showed a hand written
+     * vector loop no faster at any board size.
+     * @param a one board
+     * @param b the other board
+     * @return true if they are equal
+     */
+    @Override
+    public boolean equal(int[] a, int[] b) {
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Counts differing cells by counting the lanes of a comparison mask.
+     * @param a one board
+     * @param b the other board
+     * @return the number of differing cells
+     */
+    @Override
+    public int mismatches(int[] a, int[] b) {
+        int count = 0;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, a, i);
+            IntVector vb = IntVector.fromArray(SPECIES, b, i);
+            count += va.compare(VectorOperators.NE, vb).trueCount();
+        }
+        for (; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Hashes a board by multiplying cells with their powers of 31 a vector at a
+     * time. Overflow wraps the same in any order, so the result equals Arrays.hashCode.
+     * @param cells the board
+     * @param powers the power of 31 for each cell
+     * @param seed 31^n
+     * @return the hash
+     */
+    @Override
+    public int hash(int[] cells, int[] powers, int seed) {
+        IntVector sum = IntVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(cells.length); i < bound; i += SPECIES.length()) {
+            sum = sum.add(IntVector.fromArray(SPECIES, cells, i).mul(IntVector.fromArray(SPECIES, powers, i)));
+        }
+        int hash = seed + sum.reduceLanes(VectorOperators.ADD);
+        for (; i < cells.length; i++) {
+            hash += cells[i] * powers[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Adds up block distances a vector at a time. The goal rows and columns of
+     * the tiles are gathered with the board itself as the index map, and the
+     * empty space is masked out.
+     * @param cells the board
+     * @param cellRow the row of each cell
+     * @param cellCol the column of each cell
+     * @param rowOf the goal row of each tile
+     * @param colOf the goal column of each tile
+     * @return the Manhattan distance
+     */
+    @Override
+    public int manhattan(int[] cells, int[] cellRow, int[] cellCol, int[] rowOf, int[] colOf) {
+        IntVector sum = IntVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(cells.length); i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> numbered = IntVector.fromArray(SPECIES, cells, i).compare(VectorOperators.NE, 0);
+            IntVector rows = IntVector.fromArray(SPECIES, rowOf, 0, cells, i)
+                    .sub(IntVector.fromArray(SPECIES, cellRow, i)).abs();
+            IntVector cols = IntVector.fromArray(SPECIES, colOf, 0, cells, i)
+                    .sub(IntVector.fromArray(SPECIES, cellCol, i)).abs();
+            sum = sum.add(rows.add(cols), numbered);
+        }
+        int distance = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < cells.length; i++) {
+            int tile = cells[i];
+            if (tile != 0) {
+                distance += Math.abs(rowOf[tile] - cellRow[i]) + Math.abs(colOf[tile] - cellCol[i]);
+            }
+        }
+        return distance;
+    }
+}
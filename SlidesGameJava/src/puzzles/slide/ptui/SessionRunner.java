@@ -0,0 +1,419 @@
+package puzzles.slide.ptui;
+
+import puzzles.common.LatencyHistogram;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs scripted PTUI sessions without a console, for load and latency testing.
+ * <p>
+ * A script holds one command per line, exactly as it would be typed. Every
+ * session gets its own PTUI and model, its output is captured with each command
+ * echoed as "> command" the way the transcripts in output/ show it, and the time
+ * each command takes is recorded per kind of command. Sessions run concurrently
+ * on a thread each. At the end the latencies of all sessions are printed as
+ * percentiles, and when a transcript is given every session's output is compared
+ * with it and the first difference is shown.
+ * <pre>
+ *   java SessionRunner puzzle-file script-file [--sessions=count] [--think=ms]
+ *        [--expect=transcript] [--ignore-space]
+ * </pre>
+ * --think waits before each command, which gives the hint prefetching the time a
+ * player would. --ignore-space compares lines without regard to spacing.
+ */
+public class SessionRunner {
+
+    /** Most diff lines printed for a session that does not match the transcript. */
+    private static final int MAX_DIFF_LINES = 40;
+
+    /** Usage line. */
+    private static final String USAGE = "Usage: java SessionRunner puzzle-file script-file"
+            + " [--sessions=count] [--think=ms] [--expect=transcript] [--ignore-space]";
+
+    /**
+     * What one session did.
+     * @param output the lines it printed, commands included
+     * @param latencies the time its commands took, by kind of command
+     * @param error the exception that ended it early, null if it ran to the end
+     */
+    private record Session(List<String> output, Map<String, LatencyHistogram> latencies, String error) {
+    }
+
+    /**
+     * Sends what a thread writes to System.out to that thread's session, so
+     * messages the model prints itself end up in the right transcript.
+     */
+    private static final class SessionOutput extends OutputStream {
+
+        /** The console, for threads that are not running a session. */
+        private final PrintStream console;
+
+        /** The output of the session running on each thread. */
+        private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+        /**
+         * Creates the router.
+         * @param console where output of other threads goes
+         */
+        SessionOutput(PrintStream console) {
+            this.console = console;
+        }
+
+        /**
+         * Gives the stream the current thread writes to.
+         * @return its session's output or the console
+         */
+        private OutputStream current() {
+            OutputStream out = target.get();
+            return out == null ? console : out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current().flush();
+        }
+    }
+
+    /** The puzzle file every session starts with. */
+    private final String puzzleFile;
+
+    /** The commands of the script. */
+    private final List<String> script;
+
+    /** Number of sessions to run at once. */
+    private int sessions = 1;
+
+    /** Pause before each command, in milliseconds. */
+    private long thinkMillis;
+
+    /** The transcript every session must match, null if there is none. */
+    private List<String> expected;
+
+    /** Whether spacing is ignored when comparing with the transcript. */
+    private boolean ignoreSpace;
+
+    /**
+     * Prepares a runner.
+     * @param puzzleFile the puzzle file every session starts with
+     * @param script the commands, one per line
+     */
+    public SessionRunner(String puzzleFile, List<String> script) {
+        this.puzzleFile = puzzleFile;
+        this.script = script;
+    }
+
+    /**
+     * Sets the number of sessions run at once.
+     * @param sessions the number of sessions, at least 1
+     */
+    public void setSessions(int sessions) {
+        if (sessions < 1) {
+            throw new IllegalArgumentException("need at least one session, got " + sessions);
+        }
+        this.sessions = sessions;
+    }
+
+    /**
+     * Sets the pause before each command.
+     * @param thinkMillis the pause in milliseconds
+     */
+    public void setThinkMillis(long thinkMillis) {
+        this.thinkMillis = thinkMillis;
+    }
+
+    /**
+     * Sets the transcript every session's output is compared with.
+     * @param expected the transcript lines
+     * @param ignoreSpace whether spacing is ignored in the comparison
+     */
+    public void setExpected(List<String> expected, boolean ignoreSpace) {
+        this.expected = expected;
+        this.ignoreSpace = ignoreSpace;
+    }
+
+    /**
+     * Runs the sessions and prints the latencies and the transcript comparison.
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    public void run() throws InterruptedException {
+        PrintStream console = System.out;
+        SessionOutput router = new SessionOutput(console);
+        System.setOut(new PrintStream(router, true, StandardCharsets.UTF_8));
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        List<Future<Session>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            futures.add(executor.submit(() -> runSession(router)));
+        }
+        List<Session> results = new ArrayList<>();
+        try {
+            for (Future<Session> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a session failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            System.setOut(console);
+        }
+        long wallNanos = System.nanoTime() - start;
+        printLatencies(results, wallNanos);
+        if (expected != null) {
+            printComparison(results);
+        }
+    }
+
+    /**
+     * Runs the script once on a fresh PTUI.
+     * @param router routes what the model prints to System.out into the session's output
+     * @return what the session printed and how long its commands took
+     * @throws InterruptedException if interrupted while thinking
+     */
+    private Session runSession(SessionOutput router) throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        router.target.set(out);
+        Map<String, LatencyHistogram> latencies = new TreeMap<>();
+        SlidePTUI ptui = new SlidePTUI(out);
+        String error = null;
+        try {
+            long start = System.nanoTime();
+            ptui.init(puzzleFile);
+            latencies.computeIfAbsent("init", kind -> new LatencyHistogram()).record(System.nanoTime() - start);
+            for (String line : script) {
+                if (thinkMillis > 0) {
+                    Thread.sleep(thinkMillis);
+                }
+                out.println("> " + line);
+                long commandStart = System.nanoTime();
+                boolean more = ptui.handleCommand(line);
+                latencies.computeIfAbsent(kind(line), kind -> new LatencyHistogram())
+                        .record(System.nanoTime() - commandStart);
+                if (!more) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e.toString();
+        } finally {
+            ptui.close();
+            router.target.remove();
+        }
+        out.flush();
+        List<String> output = new String(bytes.toByteArray(), StandardCharsets.UTF_8).lines().toList();
+        return new Session(output, latencies, error);
+    }
+
+    /**
+     * Names the kind of a command line for the latency report.
+     * @param line the command line
+     * @return hint, select, load, reset, quit or other
+     */
+    private static String kind(String line) {
+        String[] words = line.trim().split("\\s+");
+        switch (words[0].toLowerCase()) {
+            case "h":
+                return "hint";
+            case "s":
+                return "select";
+            case "l":
+                return "load";
+            case "r":
+                return "reset";
+            case "q":
+                return "quit";
+            default:
+                return "other";
+        }
+    }
+
+    /**
+     * Prints the latencies of all sessions together, one line per kind of command.
+     * @param results the sessions
+     * @param wallNanos the time all sessions took together
+     */
+    private void printLatencies(List<Session> results, long wallNanos) {
+        Map<String, LatencyHistogram> total = new TreeMap<>();
+        long commands = 0;
+        int errors = 0;
+        for (Session session : results) {
+            for (Map.Entry<String, LatencyHistogram> entry : session.latencies().entrySet()) {
+                total.computeIfAbsent(entry.getKey(), kind -> new LatencyHistogram()).add(entry.getValue());
+                if (!entry.getKey().equals("init")) {
+                    commands += entry.getValue().getCount();
+                }
+            }
+            if (session.error() != null) {
+                errors++;
+                System.out.println("Session ended early: " + session.error());
+            }
+        }
+        System.out.printf("Sessions: %d, commands: %d, errors: %d, wall time: %.1f ms%n",
+                results.size(), commands, errors, wallNanos / 1e6);
+        System.out.printf("%-8s %8s %10s %10s %10s %10s %10s%n",
+                "command", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, LatencyHistogram> entry : total.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            System.out.printf("%-8s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                    histogram.getCount(), histogram.getMean() / 1e6, histogram.getPercentile(50) / 1e6,
+                    histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6,
+                    histogram.getMax() / 1e6);
+        }
+    }
+
+    /**
+     * Compares every session's output with the transcript and prints the first difference.
+     * @param results the sessions
+     */
+    private void printComparison(List<Session> results) {
+        int differing = 0;
+        Session first = null;
+        for (Session session : results) {
+            if (!sameLines(session.output(), expected)) {
+                differing++;
+                if (first == null) {
+                    first = session;
+                }
+            }
+        }
+        if (differing == 0) {
+            System.out.println("Transcript: all " + results.size() + " sessions match");
+            return;
+        }
+        System.out.println("Transcript: " + differing + " of " + results.size() + " sessions differ, first one:");
+        printDiff(expected, first.output());
+    }
+
+    /**
+     * Compares two lists of lines.
+     * @param actual the lines printed
+     * @param wanted the lines expected
+     * @return true if they are the same
+     */
+    private boolean sameLines(List<String> actual, List<String> wanted) {
+        if (actual.size() != wanted.size()) {
+            return false;
+        }
+        for (int i = 0; i < actual.size(); i++) {
+            if (!normalize(actual.get(i)).equals(normalize(wanted.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepares a line for comparison.
+     * @param line the line
+     * @return the line, with runs of spaces collapsed and the ends trimmed when spacing is ignored
+     */
+    private String normalize(String line) {
+        return ignoreSpace ? line.trim().replaceAll("\\s+", " ") : line;
+    }
+
+    /**
+     * Prints the lines that differ between the transcript and an output, found
+     * through their longest common subsequence.
+     * @param wanted the transcript
+     * @param actual the output
+     */
+    private void printDiff(List<String> wanted, List<String> actual) {
+        int rows = wanted.size();
+        int cols = actual.size();
+        int[][] common = new int[rows + 1][cols + 1];
+        for (int i = rows - 1; i >= 0; i--) {
+            for (int j = cols - 1; j >= 0; j--) {
+                common[i][j] = normalize(wanted.get(i)).equals(normalize(actual.get(j)))
+                        ? common[i + 1][j + 1] + 1
+                        : Math.max(common[i + 1][j], common[i][j + 1]);
+            }
+        }
+        int printed = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < rows || j < cols) && printed < MAX_DIFF_LINES) {
+            if (i < rows && j < cols && normalize(wanted.get(i)).equals(normalize(actual.get(j)))) {
+                i++;
+                j++;
+            } else if (j < cols && (i == rows || common[i][j + 1] >= common[i + 1][j])) {
+                System.out.println("+" + (j + 1) + ": " + actual.get(j++));
+                printed++;
+            } else {
+                System.out.println("-" + (i + 1) + ": " + wanted.get(i++));
+                printed++;
+            }
+        }
+        if (printed == MAX_DIFF_LINES) {
+            System.out.println("...");
+        }
+    }
+
+    /**
+     * Runs scripted sessions from the command line.
+     * @param args the puzzle file, the script file and the options
+     */
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        int sessions = 1;
+        long thinkMillis = 0;
+        String expectFile = null;
+        boolean ignoreSpace = false;
+        for (String arg : args) {
+            if (arg.startsWith("--sessions=")) {
+                sessions = Integer.parseInt(arg.substring("--sessions=".length()));
+            } else if (arg.startsWith("--think=")) {
+                thinkMillis = Long.parseLong(arg.substring("--think=".length()));
+            } else if (arg.startsWith("--expect=")) {
+                expectFile = arg.substring("--expect=".length());
+            } else if (arg.equals("--ignore-space")) {
+                ignoreSpace = true;
+            } else if (arg.startsWith("--")) {
+                System.out.println("Unknown option " + arg);
+                System.out.println(USAGE);
+                return;
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() != 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            SessionRunner runner = new SessionRunner(positional.get(0), Files.readAllLines(Path.of(positional.get(1))));
+            runner.setSessions(sessions);
+            runner.setThinkMillis(thinkMillis);
+            if (expectFile != null) {
+                runner.setExpected(Files.readAllLines(Path.of(expectFile)), ignoreSpace);
+            }
+            runner.run();
+        } catch (IOException e) {
+            System.out.println("Error reading the script or transcript: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
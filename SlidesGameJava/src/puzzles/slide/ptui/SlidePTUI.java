@@ -2,22 +2,34 @@ package puzzles.slide.ptui;
 import puzzles.common.Coordinate;
 import puzzles.common.model.Observer;
 import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideEvent;
 import puzzles.slide.model.SlideModel;
+import puzzles.slide.solver.HintService;
 import puzzles.common.solver.*;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Scanner;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 
 /**
  * Represents the plain text user interface (PTUI) for the Slide Puzzle game.
  * This class handles user interaction and displays the game state and messages in the console.
+ * Commands can also be fed one line at a time through handleCommand, with the output going
+ * to any stream, which is how the SessionRunner drives it without a console.
  */
 
-public class SlidePTUI implements Observer<SlideModel, String> {
+public class SlidePTUI implements Observer<SlideModel, SlideEvent> {
+
+    /** Where the PTUI prints */
+    private final PrintStream out;
 
     /** The SlideModel instance associated with the PTUI */
     private SlideModel model;
 
+    /** Solves hints ahead while the user types */
+    private final HintService hints = new HintService();
+
     /** filename of the loaded puzzle */
     private String loadedFilename;
 
@@ -27,6 +39,21 @@ public class SlidePTUI implements Observer<SlideModel, String> {
     /** Selected column for user */
     private int selectedCol = -1;
 
+    /**
+     * Creates a PTUI that prints to the console.
+     */
+    public SlidePTUI() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a PTUI that prints to the given stream.
+     * @param out where the PTUI prints
+     */
+    public SlidePTUI(PrintStream out) {
+        this.out = out;
+    }
+
     /**
      * Initializes the PTUI with a puzzle configuration.
      * @param filename The name of the file containing the puzzle configuration.
@@ -35,6 +62,8 @@ public class SlidePTUI implements Observer<SlideModel, String> {
     public void init(String filename) throws IOException {
         this.model = new SlideModel(filename);
         this.model.addObserver(this);
+        this.model.addObserver(hints);
+        hints.prefetch(model.getCurrentConfig());
         displayPuzzleInfo(filename);
         displayHelp();
     }
@@ -45,22 +74,22 @@ public class SlidePTUI implements Observer<SlideModel, String> {
      */
     private void displayPuzzleInfo(String filename) {
         String strippedFilename = filename.substring(filename.lastIndexOf("/") + 1);
-        System.out.println("Loaded: " + strippedFilename);
-        System.out.println(model.getCurrentConfig().getFormattedStringForPTUI());
+        out.println("Loaded: " + strippedFilename);
+        out.println(model.getCurrentConfig().getFormattedStringForPTUI());
         loadedFilename = filename;
     }
 
     /** null - not used  */
     @Override
-    public void update(SlideModel model, String data) {}
+    public void update(SlideModel model, SlideEvent event) {}
 
     /** Displays a list of available commands and their explanations.*/
     private void displayHelp() {
-        System.out.println("h(int)              -- hint next move");
-        System.out.println("l(oad) filename     -- load new puzzle file");
-        System.out.println("s(elect) r c        -- select cell at r, c");
-        System.out.println("q(uit)              -- quit the game");
-        System.out.println("r(eset)             -- reset the current game");
+        out.println("h(int)              -- hint next move");
+        out.println("l(oad) filename     -- load new puzzle file");
+        out.println("s(elect) r c        -- select cell at r, c");
+        out.println("q(uit)              -- quit the game");
+        out.println("r(eset)             -- reset the current game");
     }
 
     /** Starts the loop for the PTUI.*/
@@ -68,41 +97,53 @@ public class SlidePTUI implements Observer<SlideModel, String> {
         Scanner in = new Scanner(System.in);
         for (;;) {
             String line = in.nextLine();
-            String[] words = line.split("\\s+");
-            if (words.length > 0) {
-                String command = words[0].toLowerCase();
-                switch (command) {
-                    case "q":
-                        handleQuitCommand();
-                        return;
-                    case "h":
-                        handleHintCommand();
-                        break;
-                    case "l":
-                        if (words.length >= 2) {
-                            handleLoadCommand(words[1]);
-                        } else {
-                            System.out.println("Usage: l(oad) filename");
-                        }
-                        break;
-                    case "s":
-                        if (words.length == 3) {
-                            int row = Integer.parseInt(words[1]);
-                            int col = Integer.parseInt(words[2]);
-                            handleSelectCommand(row, col);
-                        } else {
-                            displayHelp();
-                        }
-                        break;
-                    case "r":
-                        handleResetCommand();
-                        break;
-                    default:
+            if (!handleCommand(line)) {
+                System.exit(0);
+            }
+        }
+    }
+
+    /**
+     * Carries out one command line.
+     * @param line the command as typed
+     * @return false if the command was quit, true otherwise
+     */
+    public boolean handleCommand(String line) {
+        String[] words = line.split("\\s+");
+        if (words.length > 0) {
+            String command = words[0].toLowerCase();
+            switch (command) {
+                case "q":
+                    handleQuitCommand();
+                    return false;
+                case "h":
+                    handleHintCommand();
+                    break;
+                case "l":
+                    if (words.length >= 2) {
+                        handleLoadCommand(words[1]);
+                    } else {
+                        out.println("Usage: l(oad) filename");
+                    }
+                    break;
+                case "s":
+                    if (words.length == 3) {
+                        int row = Integer.parseInt(words[1]);
+                        int col = Integer.parseInt(words[2]);
+                        handleSelectCommand(row, col);
+                    } else {
                         displayHelp();
-                        break;
-                }
+                    }
+                    break;
+                case "r":
+                    handleResetCommand();
+                    break;
+                default:
+                    displayHelp();
+                    break;
             }
         }
+        return true;
     }
 
     /**
@@ -114,8 +155,8 @@ public class SlidePTUI implements Observer<SlideModel, String> {
         if (row < 0 || row >= model.getCurrentConfig().getBoard().length ||
                 col < 0 || col >= model.getCurrentConfig().getBoard()[0].length) {
             SlideConfig config = model.getCurrentConfig();
-            System.out.println("Invalid selection (" + row + ", " + col + ")");
-            System.out.println(config.getFormattedStringForPTUI());
+            out.println("Invalid selection (" + row + ", " + col + ")");
+            out.println(config.getFormattedStringForPTUI());
             return;
         }
         if (selectedRow == -1 && selectedCol == -1) {
@@ -125,27 +166,24 @@ public class SlidePTUI implements Observer<SlideModel, String> {
             if (pieceValue != 0) {
                 selectedRow = row;
                 selectedCol = col;
-                System.out.println("Selected (" + row + ", " + col + ")");
-                System.out.println(config.getFormattedStringForPTUI());
+                out.println("Selected (" + row + ", " + col + ")");
+                out.println(config.getFormattedStringForPTUI());
             } else {
-                System.out.println("No number at (" + row + ", " + col + ")");
-                System.out.println(config.getFormattedStringForPTUI());
+                out.println("No number at (" + row + ", " + col + ")");
+                out.println(config.getFormattedStringForPTUI());
 
             }
         } else {
             // Second selection: Moving the selected piece
             boolean success = false;
-            SlideConfig newConfig = null;
             try {
-                newConfig = model.getCurrentConfig().movePiece(selectedRow, selectedCol, row, col);
-                success = true;
+                success = model.move(selectedRow, selectedCol, row, col);
             } catch (IllegalArgumentException e) {
-                System.out.println("Error: " + e.getMessage());
+                out.println("Error: " + e.getMessage());
             }
-            if (success && newConfig.isLastMoveSuccessful()) {
-                System.out.println("Moved from (" + selectedRow + ", " + selectedCol + ") to (" + row + ", " + col + ")");
-                System.out.println(newConfig.getFormattedStringForPTUI());
-                model.setCurrentConfig(newConfig);
+            if (success) {
+                out.println("Moved from (" + selectedRow + ", " + selectedCol + ") to (" + row + ", " + col + ")");
+                out.println(model.getCurrentConfig().getFormattedStringForPTUI());
             }
             selectedRow = -1;
             selectedCol = -1;
@@ -164,7 +202,7 @@ public class SlidePTUI implements Observer<SlideModel, String> {
             displayPuzzleInfo(loadedFilename);
             displayHelp();
         } catch (IOException e) {
-            System.out.println("Error loading the puzzle file: " + e.getMessage());
+            out.println("Error loading the puzzle file: " + e.getMessage());
         }
     }
 
@@ -172,36 +210,55 @@ public class SlidePTUI implements Observer<SlideModel, String> {
     private void handleResetCommand() {
         model.reset();
         displayPuzzleInfo(loadedFilename);
-        System.out.println("Puzzle reset!");
-        System.out.println(model.getCurrentConfig().getFormattedStringForPTUI());
+        out.println("Puzzle reset!");
+        out.println(model.getCurrentConfig().getFormattedStringForPTUI());
     }
 
-    /** Handles the "hint" command to provide a hint for the next move.*/
+    /**
+     * Handles the "hint" command to provide a hint for the next move. The hint is
+     * usually solved already, in the background while the user was typing. Large
+     * boards are solved constructively, the hint is then a step towards the goal
+     * but not always on a shortest way there.
+     */
     private void handleHintCommand() {
-        Solver solver = new Solver(model.getCurrentConfig());
-        boolean solutionFound = solver.solve();
-        if (solutionFound) {
-            List<Configuration> solutionPath = solver.getSolutionPath();
+        HintService.Hint hint;
+        try {
+            hint = hints.hint(model.getCurrentConfig()).join();
+        } catch (CompletionException e) {
+            out.println("Hint failed: " + e.getCause().getMessage());
+            out.println(model.getCurrentConfig().getFormattedStringForPTUI());
+            return;
+        }
+        SolveOutcome outcome = hint.outcome();
+        List<SlideConfig> solutionPath = hint.path();
+        if (outcome == SolveOutcome.SOLVED) {
             int currentStep = solutionPath.indexOf(model.getCurrentConfig());
             if (currentStep < solutionPath.size() - 1) {
-                SlideConfig nextStep = (SlideConfig) solutionPath.get(currentStep + 1);
-                model.setCurrentConfig(nextStep);
-                System.out.println("Next step!");
-                System.out.println(nextStep.getFormattedStringForPTUI());
+                SlideConfig nextStep = solutionPath.get(currentStep + 1);
+                model.applyHint(nextStep);
+                out.println("Next step!");
+                out.println(nextStep.getFormattedStringForPTUI());
             } else {
-                System.out.println("Already solved!");
-                System.out.println(model.getCurrentConfig().getFormattedStringForPTUI());
+                out.println("Already solved!");
+                out.println(model.getCurrentConfig().getFormattedStringForPTUI());
             }
+        } else if (outcome == SolveOutcome.NO_SOLUTION) {
+            out.println("No solution found for the puzzle.");
+            out.println(model.getCurrentConfig().getFormattedStringForPTUI());
         } else {
-            System.out.println("No solution found for the puzzle.");
-            System.out.println(model.getCurrentConfig().getFormattedStringForPTUI());
+            out.println("Hint gave up after " + HintService.TIME_LIMIT / 1000 + " seconds.");
+            out.println(model.getCurrentConfig().getFormattedStringForPTUI());
         }
     }
 
     /** Handles the "quit" command to exit the PTUI.*/
     private void handleQuitCommand() {
-        System.out.println("Goodbye! Thank you for playing!");
-        System.exit(0);
+        out.println("Goodbye! Thank you for playing!");
+    }
+
+    /** Stops the background hint solves once the PTUI is done with them. */
+    public void close() {
+        hints.shutdown();
     }
 
     /**
@@ -209,15 +266,31 @@ public class SlidePTUI implements Observer<SlideModel, String> {
      * @param args The command-line arguments.
      */
     public static void main(String[] args) {
+        SolverOptions options;
+        try {
+            options = SolverOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java SlidePTUI filename " + SolverOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        args = options.positional();
         if (args.length != 1) {
-            System.out.println("Usage: java SlidePTUI filename");
+            System.out.println("Usage: java SlidePTUI filename [--cache=directory] [--cache-size=megabytes] [--telemetry]"
+                    + " [--presolve=directory]");
         } else {
+            SlidePTUI ptui = new SlidePTUI();
             try {
-                SlidePTUI ptui = new SlidePTUI();
+                ptui.hints.setSolutionCache(options.openCache());
+                ptui.hints.setMonitored(options.telemetry());
+                ptui.hints.presolve(options.presolveDirectories());
                 ptui.init(args[0]);
                 ptui.run();
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
+            } finally {
+                ptui.close();
             }
         }
     }
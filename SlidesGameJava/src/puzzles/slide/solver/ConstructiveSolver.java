@@ -0,0 +1,652 @@
+package puzzles.slide.solver;
+
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideModel;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Solves slide puzzles of any size in polynomial time, without looking for the
+ * shortest solution.
+ * <p>
+ * The board is solved the way people do it by hand. While more than two rows
+ * are left, the top row is placed: all but its last two pieces are walked to
+ * their cells one step at a time, the empty space being routed around the
+ * pieces already placed, and the last two are finished together in the 3 x 2
+ * corner below them. Once two rows are left the columns are placed from the
+ * left the same way, the last two pieces of each column being finished in the
+ * 2 x 3 block beside them, and the final 2 x 2 block is turned into place. The
+ * corner and block moves come from a search over the few cells involved, which
+ * always finds the standard macro for the situation at hand. When a piece is
+ * boxed in and the empty space cannot get around it, the piece is moved by a
+ * search over the positions of the piece and the empty space instead.
+ * <p>
+ * Placing pieces this way needs the empty space to end in the bottom right
+ * corner, so the solver first aims for the goal with the empty space walked
+ * there and walks it back at the end. The moves are then shortened by cutting
+ * every stretch that returns to a position seen before, found with Zobrist
+ * hashes, and the shortened moves are replayed to check that they still reach
+ * the goal.
+ */
+public class ConstructiveSolver {
+
+    /** Boards with more cells than this are solved constructively for hints, breadth first search is too slow there. */
+    public static final int LARGE_BOARD_CELLS = 16;
+
+    /** The initial configuration. */
+    private final SlideConfig initialConfig;
+
+    /** Number of rows. */
+    private final int rows;
+
+    /** Number of columns. */
+    private final int cols;
+
+    /** The working board, flattened in row order. */
+    private final int[] cells;
+
+    /** position[piece] is the cell the piece is in, position[0] the empty space. */
+    private final int[] position;
+
+    /** Cells whose pieces are placed and must not move. */
+    private final boolean[] frozen;
+
+    /** Cells the empty space moved into, in order. */
+    private final List<Integer> moves = new ArrayList<>();
+
+    /** Token checked after each piece, null if the search cannot be cancelled. */
+    private CancellationToken cancellationToken;
+
+    /** The solution path, empty until solve succeeds. */
+    private final List<SlideConfig> solution = new ArrayList<>();
+
+    /** Number of moves before redundant ones were removed. */
+    private int rawMoves;
+
+    /**
+     * Prepares a solver for the given configuration.
+     * @param initialConfig the board to solve
+     */
+    public ConstructiveSolver(SlideConfig initialConfig) {
+        this.initialConfig = initialConfig;
+        int[][] board = initialConfig.getBoard();
+        this.rows = board.length;
+        this.cols = board[0].length;
+        this.cells = new int[rows * cols];
+        int max = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                cells[row * cols + col] = board[row][col];
+                max = Math.max(max, board[row][col]);
+            }
+        }
+        this.position = new int[max + 1];
+        for (int cell = 0; cell < cells.length; cell++) {
+            position[cells[cell]] = cell;
+        }
+        this.frozen = new boolean[cells.length];
+    }
+
+    /**
+     * Checks whether a board is too large for breadth first search to give hints on.
+     * @param config the board
+     * @return true if hints should come from this solver
+     */
+    public static boolean isLarge(SlideConfig config) {
+        int[][] board = config.getBoard();
+        return board.length * board[0].length > LARGE_BOARD_CELLS;
+    }
+
+    /**
+     * Sets the token checked while solving, cancelling it makes solve return CANCELLED.
+     * @param cancellationToken the token, or null to make the search uncancellable
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Works out a solution.
+     * @return SOLVED, NO_SOLUTION if the goal cannot be reached, or CANCELLED
+     */
+    public SolveOutcome solve() {
+        solution.clear();
+        if (!initialConfig.isSolvable()) {
+            return SolveOutcome.NO_SOLUTION;
+        }
+        int[] goal = flatten(initialConfig.getGoal());
+        // walk the goal's empty space to the bottom right corner, the solver aims there first
+        int[] target = goal.clone();
+        List<Integer> walkBack = new ArrayList<>();
+        int blank = indexOf(target, 0);
+        int corner = cells.length - 1;
+        while (blank != corner) {
+            walkBack.add(0, blank);
+            int next = blank / cols < rows - 1 ? blank + cols : blank + 1;
+            target[blank] = target[next];
+            target[next] = 0;
+            blank = next;
+        }
+        if (!placeAll(target)) {
+            return SolveOutcome.CANCELLED;
+        }
+        Arrays.fill(frozen, false);
+        for (int cell : walkBack) {
+            slide(cell);
+        }
+        rawMoves = moves.size();
+        List<Integer> shortened = removeLoops(moves);
+        SlideConfig config = initialConfig;
+        List<SlideConfig> path = new ArrayList<>();
+        path.add(config);
+        for (int cell : shortened) {
+            config = config.slideBlock(cell / cols, cell % cols);
+            path.add(config);
+        }
+        if (!config.isSolution()) {
+            // two positions collided in the hash, keep the moves as they were
+            config = initialConfig;
+            path.clear();
+            path.add(config);
+            for (int cell : moves) {
+                config = config.slideBlock(cell / cols, cell % cols);
+                path.add(config);
+            }
+        }
+        solution.addAll(path);
+        return SolveOutcome.SOLVED;
+    }
+
+    /**
+     * Places every piece where the target board has it.
+     * @param target the board to reach, with the empty space in the bottom right corner
+     * @return false if the solve was cancelled
+     */
+    private boolean placeAll(int[] target) {
+        if (rows == 1 || cols == 1) {
+            // pieces in a line keep their order, and solvable means it is the goal order
+            moveBlank(cells.length - 1);
+            return true;
+        }
+        int top = 0;
+        int left = 0;
+        while (rows - top > 2) {
+            int row = top;
+            for (int col = left; col < cols - 2; col++) {
+                moveTile(target[row * cols + col], row * cols + col);
+                frozen[row * cols + col] = true;
+                if (isCancelled()) {
+                    return false;
+                }
+            }
+            int last = row * cols + cols - 1;
+            finishPair(target[last - 1], last - 1, target[last], last, row, cols - 2, 3, 2);
+            top++;
+            if (isCancelled()) {
+                return false;
+            }
+        }
+        while (cols - left > 2) {
+            int col = left;
+            int last = (top + 1) * cols + col;
+            finishPair(target[top * cols + col], top * cols + col, target[last], last, top, col, 2, 3);
+            left++;
+            if (isCancelled()) {
+                return false;
+            }
+        }
+        return finishBlock(top, left, 2, 2, target);
+    }
+
+    /**
+     * Places the last two pieces of a row or column. The first piece is parked
+     * in the last cell, the second and the empty space are brought into the
+     * small block around it, and a search over the block sets both pieces in
+     * their cells together.
+     * @param a the first piece
+     * @param aCell the first piece's cell
+     * @param b the second piece
+     * @param bCell the second piece's cell, the last of the row or column
+     * @param top the block's top row
+     * @param left the block's left column
+     * @param height the block's height
+     * @param width the block's width
+     */
+    private void finishPair(int a, int aCell, int b, int bCell, int top, int left, int height, int width) {
+        List<Integer> block = new ArrayList<>();
+        for (int row = top; row < top + height; row++) {
+            for (int col = left; col < left + width; col++) {
+                block.add(row * cols + col);
+            }
+        }
+        if (position[a] != aCell || position[b] != bCell) {
+            moveTile(a, bCell);
+            frozen[bCell] = true;
+            if (!block.contains(position[b])) {
+                moveTile(b, block.get(block.size() - 1));
+            }
+            frozen[position[b]] = true;
+            if (!block.contains(position[0])) {
+                List<Integer> shortest = null;
+                for (int cell : block) {
+                    List<Integer> path = frozen[cell] ? null : tryRoute(position[0], cell);
+                    if (path != null && (shortest == null || path.size() < shortest.size())) {
+                        shortest = path;
+                    }
+                }
+                if (shortest == null) {
+                    throw new IllegalStateException("the empty space cannot reach the block of " + a + " and " + b);
+                }
+                for (int cell : shortest) {
+                    slide(cell);
+                }
+            }
+            frozen[bCell] = false;
+            frozen[position[b]] = false;
+            if (!searchBlock(block, new int[] {a, b}, new int[] {aCell, bCell}, -1)) {
+                throw new IllegalStateException("no block move places " + a + " and " + b);
+            }
+        }
+        frozen[aCell] = true;
+        frozen[bCell] = true;
+    }
+
+    /**
+     * Solves the last block, where every piece is placed by one search.
+     * @param top the block's top row
+     * @param left the block's left column
+     * @param height the block's height
+     * @param width the block's width
+     * @param target the board to reach
+     * @return true, the block is small enough to finish at once
+     */
+    private boolean finishBlock(int top, int left, int height, int width, int[] target) {
+        List<Integer> block = new ArrayList<>();
+        List<Integer> pieces = new ArrayList<>();
+        List<Integer> goals = new ArrayList<>();
+        for (int row = top; row < top + height; row++) {
+            for (int col = left; col < left + width; col++) {
+                int cell = row * cols + col;
+                block.add(cell);
+                if (target[cell] != 0) {
+                    pieces.add(target[cell]);
+                    goals.add(cell);
+                }
+            }
+        }
+        int blankGoal = indexOf(target, 0);
+        if (!searchBlock(block, pieces.stream().mapToInt(Integer::intValue).toArray(),
+                goals.stream().mapToInt(Integer::intValue).toArray(), blankGoal)) {
+            throw new IllegalStateException("the last block cannot be solved");
+        }
+        return true;
+    }
+
+    /**
+     * Finds the shortest moves inside a block that bring the tracked pieces to
+     * their cells, treating the other pieces in the block as interchangeable,
+     * and makes them. The empty space and the tracked pieces must be in the block.
+     * @param block the cells of the block
+     * @param pieces the tracked pieces
+     * @param goals the cell each tracked piece must reach
+     * @param blankGoal the cell the empty space must reach, -1 for anywhere
+     * @return false if no moves inside the block do it
+     */
+    private boolean searchBlock(List<Integer> block, int[] pieces, int[] goals, int blankGoal) {
+        int size = block.size();
+        int[] local = new int[cells.length];
+        for (int i = 0; i < size; i++) {
+            local[block.get(i)] = i;
+        }
+        // a state is the block index of the empty space and then of each tracked piece, four bits each
+        long start = local[position[0]];
+        for (int i = 0; i < pieces.length; i++) {
+            start |= (long) local[position[pieces[i]]] << (4 * (i + 1));
+        }
+        Map<Long, Long> previous = new HashMap<>();
+        previous.put(start, start);
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        queue.add(start);
+        Long reached = null;
+        while (!queue.isEmpty()) {
+            long state = queue.poll();
+            if (isBlockGoal(state, pieces.length, block, goals, blankGoal)) {
+                reached = state;
+                break;
+            }
+            int blank = block.get((int) (state & 0xF));
+            for (int next : neighbors(blank)) {
+                Integer index = block.contains(next) ? local[next] : null;
+                if (index == null) {
+                    continue;
+                }
+                long moved = (state & ~0xFL) | index;
+                for (int i = 0; i < pieces.length; i++) {
+                    int shift = 4 * (i + 1);
+                    if (((state >>> shift) & 0xF) == index) {
+                        moved = (moved & ~(0xFL << shift)) | ((state & 0xF) << shift);
+                    }
+                }
+                if (previous.putIfAbsent(moved, state) == null) {
+                    queue.add(moved);
+                }
+            }
+        }
+        if (reached == null) {
+            return false;
+        }
+        List<Integer> path = new ArrayList<>();
+        for (long state = reached; state != start; state = previous.get(state)) {
+            path.add(0, block.get((int) (state & 0xF)));
+        }
+        for (int cell : path) {
+            slide(cell);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a block state has every tracked piece, and the empty space if asked, in place.
+     * @param state the packed state
+     * @param count the number of tracked pieces
+     * @param block the cells of the block
+     * @param goals the cell each tracked piece must reach
+     * @param blankGoal the cell the empty space must reach, -1 for anywhere
+     * @return true if the state is finished
+     */
+    private static boolean isBlockGoal(long state, int count, List<Integer> block, int[] goals, int blankGoal) {
+        if (blankGoal >= 0 && block.get((int) (state & 0xF)) != blankGoal) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (block.get((int) ((state >>> (4 * (i + 1))) & 0xF)) != goals[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks a piece to a cell, one step at a time, keeping placed pieces where they are.
+     * @param piece the piece
+     * @param target the cell it must reach
+     */
+    private void moveTile(int piece, int target) {
+        while (position[piece] != target) {
+            int at = position[piece];
+            int next = route(at, target).get(0);
+            frozen[at] = true;
+            List<Integer> blankRoute = tryRoute(position[0], next);
+            frozen[at] = false;
+            if (blankRoute == null) {
+                // the empty space is boxed in on the wrong side of the piece
+                searchTile(piece, target);
+                return;
+            }
+            for (int cell : blankRoute) {
+                slide(cell);
+            }
+            slide(at);
+        }
+    }
+
+    /**
+     * Moves a piece to a cell by a search over the positions of the piece and the
+     * empty space, which finds a way whenever there is one.
+     * @param piece the piece
+     * @param target the cell it must reach
+     */
+    private void searchTile(int piece, int target) {
+        int size = cells.length;
+        int start = position[piece] * size + position[0];
+        Map<Integer, Integer> previous = new HashMap<>();
+        previous.put(start, start);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        int reached = -1;
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int at = state / size;
+            int blank = state % size;
+            if (at == target) {
+                reached = state;
+                break;
+            }
+            for (int next : neighbors(blank)) {
+                if (!frozen[next]) {
+                    int moved = (next == at ? blank : at) * size + next;
+                    if (previous.putIfAbsent(moved, state) == null) {
+                        queue.add(moved);
+                    }
+                }
+            }
+        }
+        if (reached < 0) {
+            throw new IllegalStateException("piece " + piece + " cannot reach cell " + target);
+        }
+        List<Integer> path = new ArrayList<>();
+        for (int state = reached; state != start; state = previous.get(state)) {
+            path.add(0, state % size);
+        }
+        for (int cell : path) {
+            slide(cell);
+        }
+    }
+
+    /**
+     * Walks the empty space to a cell around the frozen cells.
+     * @param target the cell it must reach
+     */
+    private void moveBlank(int target) {
+        for (int cell : route(position[0], target)) {
+            slide(cell);
+        }
+    }
+
+    /**
+     * Finds a shortest route between two cells that avoids the frozen cells.
+     * @param from the starting cell
+     * @param to the cell to reach
+     * @return the cells of the route after from, empty if from is to
+     */
+    private List<Integer> route(int from, int to) {
+        List<Integer> path = tryRoute(from, to);
+        if (path == null) {
+            throw new IllegalStateException("no route from cell " + from + " to cell " + to);
+        }
+        return path;
+    }
+
+    /**
+     * Finds a shortest route between two cells that avoids the frozen cells.
+     * @param from the starting cell
+     * @param to the cell to reach
+     * @return the cells of the route after from, null if there is none
+     */
+    private List<Integer> tryRoute(int from, int to) {
+        int[] previous = new int[cells.length];
+        Arrays.fill(previous, -1);
+        previous[from] = from;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty() && previous[to] < 0) {
+            int cell = queue.poll();
+            for (int next : neighbors(cell)) {
+                if (previous[next] < 0 && !frozen[next]) {
+                    previous[next] = cell;
+                    queue.add(next);
+                }
+            }
+        }
+        if (previous[to] < 0) {
+            return null;
+        }
+        List<Integer> path = new ArrayList<>();
+        for (int cell = to; cell != from; cell = previous[cell]) {
+            path.add(0, cell);
+        }
+        return path;
+    }
+
+    /**
+     * Lists the cells next to a cell.
+     * @param cell the cell
+     * @return up to four neighboring cells
+     */
+    private int[] neighbors(int cell) {
+        int row = cell / cols;
+        int col = cell % cols;
+        int[] result = new int[4];
+        int count = 0;
+        if (row > 0) {
+            result[count++] = cell - cols;
+        }
+        if (row < rows - 1) {
+            result[count++] = cell + cols;
+        }
+        if (col > 0) {
+            result[count++] = cell - 1;
+        }
+        if (col < cols - 1) {
+            result[count++] = cell + 1;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Moves the empty space into a neighboring cell, sliding that cell's piece into the empty space.
+     * @param cell the cell next to the empty space
+     */
+    private void slide(int cell) {
+        int blank = position[0];
+        int piece = cells[cell];
+        cells[blank] = piece;
+        position[piece] = blank;
+        cells[cell] = 0;
+        position[0] = cell;
+        moves.add(cell);
+    }
+
+    /**
+     * Drops every stretch of moves that comes back to a position seen before.
+     * Positions are compared by Zobrist hash, which is updated in constant time per move.
+     * @param moves the cells the empty space moved into
+     * @return the moves without loops
+     */
+    private List<Integer> removeLoops(List<Integer> moves) {
+        int[] board = flatten(initialConfig.getBoard());
+        int max = Arrays.stream(board).max().orElse(0);
+        SplittableRandom random = new SplittableRandom(board.length);
+        long[][] zobrist = new long[max + 1][board.length];
+        long hash = 0;
+        for (int cell = 0; cell < board.length; cell++) {
+            for (int piece = 0; piece <= max; piece++) {
+                zobrist[piece][cell] = random.nextLong();
+            }
+            hash ^= zobrist[board[cell]][cell];
+        }
+        int blank = indexOf(board, 0);
+        List<Integer> kept = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        Map<Long, Integer> seen = new HashMap<>();
+        seen.put(hash, 0);
+        hashes.add(hash);
+        for (int cell : moves) {
+            int piece = board[cell];
+            hash ^= zobrist[piece][cell] ^ zobrist[piece][blank] ^ zobrist[0][blank] ^ zobrist[0][cell];
+            board[blank] = piece;
+            board[cell] = 0;
+            blank = cell;
+            Integer earlier = seen.get(hash);
+            if (earlier != null) {
+                // back at an earlier position: forget everything since
+                for (int i = kept.size(); i > earlier; i--) {
+                    seen.remove(hashes.remove(i));
+                    kept.remove(i - 1);
+                }
+            } else {
+                kept.add(cell);
+                hashes.add(hash);
+                seen.put(hash, kept.size());
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Checks the cancellation token.
+     * @return true if the solve was cancelled
+     */
+    private boolean isCancelled() {
+        return cancellationToken != null && cancellationToken.isCancelled();
+    }
+
+    /**
+     * Flattens a board in row order.
+     * @param board the board
+     * @return the cells
+     */
+    private static int[] flatten(int[][] board) {
+        return Arrays.stream(board).flatMapToInt(Arrays::stream).toArray();
+    }
+
+    /**
+     * Finds a value in an array.
+     * @param values the array
+     * @param value the value to find
+     * @return the index of the value, -1 if absent
+     */
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the solution path as a list of configurations, starting with the initial one.
+     * @return the solution path, empty if no solution was found
+     */
+    public List<SlideConfig> getSolutionPath() {
+        return solution;
+    }
+
+    /**
+     * Returns the number of moves made before redundant ones were removed.
+     * @return the number of moves placing the pieces made
+     */
+    public int getRawMoves() {
+        return rawMoves;
+    }
+
+    /**
+     * Solves a puzzle file and prints how many moves it took and how long.
+     * @param args the puzzle file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java ConstructiveSolver puzzle-file");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            ConstructiveSolver solver = new ConstructiveSolver(new SlideModel(args[0]).getCurrentConfig());
+            SolveOutcome outcome = solver.solve();
+            System.out.printf("%s: %d moves, %d before removing loops, %.1f ms%n", outcome,
+                    Math.max(solver.getSolutionPath().size() - 1, 0), solver.getRawMoves(),
+                    (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.out.println("Error reading the puzzle file: " + e.getMessage());
+        }
+    }
+}
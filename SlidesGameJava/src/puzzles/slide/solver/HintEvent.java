@@ -0,0 +1,35 @@
+package puzzles.slide.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one hint asked of a {@link HintService}, from the request until
+ * the hint is ready. Only recorded while a flight recording with the event
+ * enabled is running.
+ */
+@Name("puzzles.HintRequest")
+@Label("Hint Request")
+@Category({"Puzzles", "Hints"})
+@Description("A hint asked for by the player")
+public class HintEvent extends Event {
+
+    /** Size of the board, rows x columns. */
+    @Label("Board")
+    String board;
+
+    /** Whether the hint was already solved ahead when it was asked for. */
+    @Label("Prefetched")
+    boolean prefetched;
+
+    /** How the solve ended. */
+    @Label("Outcome")
+    String outcome;
+
+    /** Moves in the solution, -1 when there is none. */
+    @Label("Moves")
+    int moves;
+}
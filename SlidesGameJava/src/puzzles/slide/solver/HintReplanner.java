@@ -0,0 +1,396 @@
+package puzzles.slide.solver;
+
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.SolveMonitor;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.slide.model.BoardKernels;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideModel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Answers hint after hint for one goal board with a single search that is kept
+ * from one hint to the next, in the manner of D* Lite.
+ * <p>
+ * The search runs backwards, from the goal towards the configuration asked
+ * about, as A* with the Manhattan distance between the two boards. Every
+ * configuration it closes gets its exact distance to the goal. When the player
+ * moves on only the start changes, never the moves, so those distances stay
+ * true: the next solve keeps every closed and open configuration and only aims
+ * the search at the new start. The keys in the queue were worked out for the
+ * old start. As D* Lite does, the Manhattan distance between the old and the
+ * new start is added to every key worked out from then on, so the old keys are
+ * still lower bounds and are put right when they reach the top of the queue
+ * instead of all at once. A start the search has closed already is answered
+ * without searching, and a start a move or two off the path is usually closed
+ * after a few expansions.
+ * <p>
+ * The path is read off the distances, each step going to a neighbor one move
+ * closer to the goal, so it is as long as a breadth first solve's.
+ */
+public class HintReplanner {
+
+    /** Most configurations the search keeps, it starts over when it would keep more. */
+    public static final int MAX_NODES = 1_000_000;
+
+    /** Nodes taken from the queue between two checks of the clock and the token. */
+    private static final int CHECK_INTERVAL = 256;
+
+    /** The kernels that score boards. */
+    private static final BoardKernels KERNELS = BoardKernels.get();
+
+    /**
+     * A configuration the search has reached.
+     */
+    private static final class Node {
+
+        /** The configuration. */
+        final SlideConfig config;
+
+        /** Fewest moves to the goal found so far, exact once closed. */
+        int distance;
+
+        /** Whether the node was expanded, its distance is then final. */
+        boolean closed;
+
+        /**
+         * Creates a node.
+         * @param config the configuration
+         * @param distance the moves to the goal found so far
+         */
+        Node(SlideConfig config, int distance) {
+            this.config = config;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * A place in the queue. A node is queued again when its distance drops or
+     * its key turns out to be stale, the older places are skipped when popped.
+     * @param node the node
+     * @param distance the node's distance when it was queued
+     * @param key the distance plus the heuristic plus the key offset, when it was queued
+     */
+    private record Queued(Node node, int distance, int key) {
+    }
+
+    /** The goal every start is solved against. */
+    private final SlideConfig goal;
+
+    /** cellRow[i] is the row of cell i. */
+    private final int[] cellRow;
+
+    /** cellCol[i] is the column of cell i. */
+    private final int[] cellCol;
+
+    /** rowOf[tile] is the row of the tile on the current start. */
+    private final int[] rowOf;
+
+    /** colOf[tile] is the column of the tile on the current start. */
+    private final int[] colOf;
+
+    /** Every configuration reached, by board. */
+    private final Map<SlideConfig, Node> nodes = new HashMap<>();
+
+    /** The nodes to expand, lowest key first, the one nearer the start first among equal keys. */
+    private final PriorityQueue<Queued> open = new PriorityQueue<>((a, b) ->
+            a.key != b.key ? Integer.compare(a.key, b.key) : Integer.compare(b.distance, a.distance));
+
+    /** The start the search aims for, null before the first solve. */
+    private SlideConfig start;
+
+    /** Sum of the Manhattan distances between successive starts, added to every new key. */
+    private int keyOffset;
+
+    /** Whether solves are published over JMX. */
+    private boolean monitored;
+
+    /** The solution of the last solve, starting with its start. */
+    private final List<SlideConfig> solution = new ArrayList<>();
+
+    /** Nodes expanded by the last solve. */
+    private long expansions;
+
+    /**
+     * Creates a replanner for a goal board.
+     * @param goalBoard the goal every start is solved against
+     */
+    public HintReplanner(int[][] goalBoard) {
+        this.goal = new SlideConfig(goalBoard, goalBoard);
+        int rows = goalBoard.length;
+        int cols = goalBoard[0].length;
+        int cells = rows * cols;
+        this.cellRow = new int[cells];
+        this.cellCol = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            cellRow[cell] = cell / cols;
+            cellCol[cell] = cell % cols;
+        }
+        int max = 0;
+        for (int tile : goal.getCells()) {
+            max = Math.max(max, tile);
+        }
+        this.rowOf = new int[max + 1];
+        this.colOf = new int[max + 1];
+    }
+
+    /**
+     * Gives the goal every start is solved against.
+     * @return the goal configuration
+     */
+    public SlideConfig getGoal() {
+        return goal;
+    }
+
+    /**
+     * Publishes every solve over JMX while it runs, see SolveMonitor.
+     * @param monitored true to publish them
+     */
+    public synchronized void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+    }
+
+    /**
+     * Finds a shortest path from a configuration to the goal, going on from
+     * where the last solve stopped. A solve that is cancelled or runs out of
+     * time keeps what it found for the next one.
+     * @param config the configuration to solve, aiming for the replanner's goal
+     * @param token stops the solve, null if it cannot be cancelled
+     * @param timeLimit the longest the solve may run, in milliseconds
+     * @return SOLVED, NO_SOLUTION, CANCELLED, or BUDGET_EXCEEDED if it ran out of time or nodes
+     */
+    public synchronized SolveOutcome solve(SlideConfig config, CancellationToken token, long timeLimit) {
+        solution.clear();
+        expansions = 0;
+        if (!config.isSolvable()) {
+            return SolveOutcome.NO_SOLUTION;
+        }
+        SolveMonitor monitor = monitored ? SolveMonitor.register("HintReplanner") : null;
+        SolveOutcome outcome = null;
+        try {
+            outcome = search(config, token, System.currentTimeMillis() + timeLimit, monitor);
+            return outcome;
+        } finally {
+            if (monitor != null) {
+                monitor.finish(outcome);
+            }
+        }
+    }
+
+    /**
+     * Aims the search at a start and expands nodes until the start is closed.
+     * @param config the start
+     * @param token stops the search, null if it cannot be cancelled
+     * @param deadline when the search must stop, from System.currentTimeMillis
+     * @param monitor the JMX monitor, null if the solve is not monitored
+     * @return the outcome
+     */
+    private SolveOutcome search(SlideConfig config, CancellationToken token, long deadline, SolveMonitor monitor) {
+        aimAt(config);
+        Node target = nodes.get(config);
+        int depth = 0;
+        long polls = 0;
+        while (target == null || !target.closed) {
+            if (polls++ % CHECK_INTERVAL == 0) {
+                if (token != null && token.isCancelled()) {
+                    return SolveOutcome.CANCELLED;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    return SolveOutcome.BUDGET_EXCEEDED;
+                }
+                if (monitor != null) {
+                    monitor.update(depth, open.size(), nodes.size(), expansions, 0);
+                }
+            }
+            Queued top = open.poll();
+            if (top == null) {
+                return SolveOutcome.NO_SOLUTION;
+            }
+            Node node = top.node;
+            if (node.closed || top.distance != node.distance) {
+                continue;
+            }
+            int key = key(node);
+            if (top.key < key) {
+                // worked out for an earlier start
+                open.add(new Queued(node, node.distance, key));
+                continue;
+            }
+            node.closed = true;
+            depth = node.distance;
+            expansions++;
+            Iterator<Configuration> successors = node.config.successorIterator();
+            while (successors.hasNext()) {
+                SlideConfig next = (SlideConfig) successors.next();
+                Node reached = nodes.get(next);
+                if (reached == null) {
+                    reached = new Node(next, node.distance + 1);
+                    nodes.put(next, reached);
+                } else if (reached.closed || reached.distance <= node.distance + 1) {
+                    continue;
+                } else {
+                    reached.distance = node.distance + 1;
+                }
+                open.add(new Queued(reached, reached.distance, key(reached)));
+            }
+            if (nodes.size() > MAX_NODES) {
+                clear();
+                return SolveOutcome.BUDGET_EXCEEDED;
+            }
+            if (target == null) {
+                target = nodes.get(config);
+            }
+        }
+        walkDown(config, target.distance);
+        return SolveOutcome.SOLVED;
+    }
+
+    /**
+     * Makes a configuration the start the keys are worked out for.
+     * @param config the new start
+     */
+    private void aimAt(SlideConfig config) {
+        if (start != null && start.equals(config)) {
+            return;
+        }
+        int[] cells = config.getCells();
+        if (start != null) {
+            keyOffset += KERNELS.manhattan(cells, cellRow, cellCol, rowOf, colOf);
+        }
+        for (int cell = 0; cell < cells.length; cell++) {
+            rowOf[cells[cell]] = cellRow[cell];
+            colOf[cells[cell]] = cellCol[cell];
+        }
+        start = config;
+        if (nodes.isEmpty()) {
+            Node root = new Node(goal, 0);
+            nodes.put(goal, root);
+            open.add(new Queued(root, 0, key(root)));
+        }
+    }
+
+    /**
+     * Works out the key of a node for the current start.
+     * @param node the node
+     * @return its distance to the goal, plus its Manhattan distance to the start, plus the key offset
+     */
+    private int key(Node node) {
+        return node.distance + KERNELS.manhattan(node.config.getCells(), cellRow, cellCol, rowOf, colOf) + keyOffset;
+    }
+
+    /**
+     * Records the path from a closed configuration to the goal, stepping each
+     * time to a closed neighbor one move closer.
+     * @param config the configuration
+     * @param distance its distance to the goal
+     */
+    private void walkDown(SlideConfig config, int distance) {
+        solution.add(config);
+        while (distance > 0) {
+            for (Configuration neighbor : config.getNeighbors()) {
+                Node node = nodes.get(neighbor);
+                if (node != null && node.closed && node.distance == distance - 1) {
+                    config = (SlideConfig) neighbor;
+                    break;
+                }
+            }
+            solution.add(config);
+            distance--;
+        }
+    }
+
+    /**
+     * Drops everything the search found.
+     */
+    public synchronized void clear() {
+        nodes.clear();
+        open.clear();
+        start = null;
+        keyOffset = 0;
+    }
+
+    /**
+     * Returns the solution of the last solve.
+     * @return the path from the configuration solved to the goal, empty if it was not solved
+     */
+    public synchronized List<SlideConfig> getSolutionPath() {
+        return new ArrayList<>(solution);
+    }
+
+    /**
+     * Returns the number of nodes the last solve expanded.
+     * @return the expansions, 0 when the start had been closed already
+     */
+    public synchronized long getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Returns the number of configurations the search keeps.
+     * @return the configurations reached so far
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Plays a puzzle file along its solution with a wrong move every few
+     * steps, and prints what each hint cost when replanned and when solved
+     * from scratch by breadth first search.
+     * @param args the puzzle file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java HintReplanner puzzle-file");
+            return;
+        }
+        SlideConfig config;
+        try {
+            config = new SlideModel(args[0]).getCurrentConfig();
+        } catch (IOException e) {
+            System.out.println("Error reading the puzzle file: " + e.getMessage());
+            return;
+        }
+        HintReplanner replanner = new HintReplanner(config.getGoal());
+        long replanNanos = 0;
+        long freshNanos = 0;
+        for (int move = 0; !config.isSolution(); move++) {
+            long begin = System.nanoTime();
+            SolveOutcome outcome = replanner.solve(config, null, HintService.TIME_LIMIT);
+            long replanned = System.nanoTime() - begin;
+            List<SlideConfig> path = replanner.getSolutionPath();
+            begin = System.nanoTime();
+            HintService.Hint fresh = HintService.solve(config, null);
+            long solved = System.nanoTime() - begin;
+            replanNanos += replanned;
+            freshNanos += solved;
+            if (outcome != SolveOutcome.SOLVED) {
+                System.out.println("Move " + move + ": " + outcome);
+                return;
+            }
+            System.out.printf("Move %2d: %2d moves left (bfs %2d), %7d expanded, %8.2f ms replanned, %8.2f ms bfs%n",
+                    move, path.size() - 1, fresh.path().size() - 1, replanner.getExpansions(),
+                    replanned / 1e6, solved / 1e6);
+            // every third move leaves the path for the first neighbor that is not on it
+            SlideConfig next = path.get(1);
+            if (move % 3 == 2) {
+                for (Configuration neighbor : config.getNeighbors()) {
+                    if (!neighbor.equals(next)) {
+                        next = (SlideConfig) neighbor;
+                        break;
+                    }
+                }
+            }
+            config = next;
+        }
+        System.out.printf("Total: %.1f ms replanned, %.1f ms bfs, %d configurations kept%n",
+                replanNanos / 1e6, freshNanos / 1e6, replanner.size());
+    }
+}
@@ -0,0 +1,476 @@
+package puzzles.slide.solver;
+
+import puzzles.common.model.Observer;
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.SolutionCache;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.Solver;
+import puzzles.slide.model.SlideCodec;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideEvent;
+import puzzles.slide.model.SlideModel;
+import jdk.jfr.FlightRecorder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves hints ahead of time, while the player is still thinking.
+ * <p>
+ * Registered as an observer of a SlideModel, the service starts solving the
+ * current configuration and every configuration one move away each time the
+ * model changes, on low priority background threads. Solutions are kept in a
+ * small cache that drops the least recently used, so a hint asked for after a
+ * pause is usually answered at once. Speculative solves for configurations
+ * that can no longer be asked about are cancelled when the model moves on.
+ * <p>
+ * A hint asked for before its speculative solve started is not left waiting in
+ * the queue, it is solved right away on a thread kept for hints, at normal priority. Boards with more than
+ * ConstructiveSolver.LARGE_BOARD_CELLS cells are solved constructively. Smaller
+ * ones are solved within TIME_LIMIT by a HintReplanner kept for the goal, which
+ * goes on from the search of the hints before, so a player who leaves the path
+ * costs a small repair rather than a new search. Its paths are as short as a
+ * breadth first solve's. Each prefetch thread keeps a replanner of its own, so
+ * speculative solves neither wait for each other nor hold up a hint asked for. With a SolutionCache set, these solves are looked up
+ * there first and added to it after, under the same name Slide uses, so hints
+ * and the solver share their solutions. With directories given to presolve,
+ * boards from the puzzle files there are answered by a PuzzlePresolver that
+ * solved them before they were loaded.
+ * Every hint asked for is recorded as a {@link HintEvent} when a flight recording
+ * asks for it.
+ */
+public class HintService implements Observer<SlideModel, SlideEvent> {
+
+    /** Longest time a breadth first search for a hint may run, in milliseconds. */
+    public static final long TIME_LIMIT = 10_000;
+
+    /** Most configurations whose solutions are kept. */
+    public static final int CACHE_SIZE = 64;
+
+    /**
+     * The answer to a hint.
+     * @param outcome how the solve ended
+     * @param path the solution path, starting with the configuration asked about
+     */
+    public record Hint(SolveOutcome outcome, List<SlideConfig> path) {
+
+        /**
+         * Gives the configuration one step along the solution.
+         * @param config the configuration the hint is for
+         * @return the next configuration, null if config is already solved or there is no solution
+         */
+        public SlideConfig nextStep(SlideConfig config) {
+            int currentStep = path.indexOf(config);
+            if (outcome != SolveOutcome.SOLVED || currentStep < 0 || currentStep >= path.size() - 1) {
+                return null;
+            }
+            return path.get(currentStep + 1);
+        }
+    }
+
+    /**
+     * A solve, queued, running or done.
+     */
+    private static final class Entry {
+
+        /** Completed with the hint once the solve ends. */
+        final CompletableFuture<Hint> future = new CompletableFuture<>();
+
+        /** Stops the solve. */
+        final CancellationToken token = new CancellationToken();
+
+        /** Set by whoever runs the solve, so it runs once. */
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        /** Whether the solve was only started in case it would be needed. */
+        volatile boolean speculative = true;
+    }
+
+    /** Goal board of the cached solves, configurations only compare by board. */
+    private int[][] goal;
+
+    /** Solutions kept on disk, null when there is no cache. */
+    private volatile SolutionCache solutionCache;
+
+    /** Solves the puzzle files of some directories ahead of time, null when there are none. */
+    private volatile PuzzlePresolver presolver;
+
+    /** Whether optimal solves are published over JMX. */
+    private volatile boolean monitored;
+
+    /** Solves hints for the goal of the cached solves, null before the first hint. */
+    private volatile HintReplanner replanner;
+
+    /** The replanner of each prefetch thread, for the goal of the last board it solved. */
+    private final ThreadLocal<HintReplanner> prefetchReplanner = new ThreadLocal<>();
+
+    /** Runs the speculative solves. */
+    private final ExecutorService executor;
+
+    /** Runs the solves of hints asked for before their speculative solve started, one at a time. */
+    private final ExecutorService hintExecutor;
+
+    /** Solves by configuration, least recently used first. */
+    private final Map<SlideConfig, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SlideConfig, Entry> eldest) {
+            if (size() > CACHE_SIZE) {
+                eldest.getValue().token.cancel();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Creates a service that solves ahead on up to one thread per core but one.
+     */
+    public HintService() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "hint-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.hintExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hint-solver");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Looks hints up in a solution cache and adds new ones to it. The service closes the cache on shutdown.
+     * @param solutionCache the cache, null for none
+     */
+    public void setSolutionCache(SolutionCache solutionCache) {
+        this.solutionCache = solutionCache;
+    }
+
+    /**
+     * Starts solving the puzzle files of some directories in the background, as
+     * they appear or change, and answers hints for their boards from those
+     * solves. The service stops the presolver on shutdown.
+     * @param directories the directories, nothing is started when empty
+     * @throws IOException if a directory cannot be watched
+     */
+    public void presolve(List<Path> directories) throws IOException {
+        if (directories.isEmpty()) {
+            return;
+        }
+        PuzzlePresolver started = new PuzzlePresolver(directories);
+        started.start();
+        presolver = started;
+    }
+
+    /**
+     * Publishes every optimal solve over JMX while it runs, see SolveMonitor.
+     * @param monitored true to publish them
+     */
+    public void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+        HintReplanner current = replanner;
+        if (current != null) {
+            current.setMonitored(monitored);
+        }
+    }
+
+    /**
+     * Starts solving ahead whenever the model's configuration changes.
+     * @param model the model
+     * @param event what changed
+     */
+    @Override
+    public void update(SlideModel model, SlideEvent event) {
+        prefetch(event.config());
+    }
+
+    /**
+     * Starts solving a configuration and its neighbors, and cancels the
+     * speculative solves of every other configuration.
+     * @param config the configuration the player is looking at
+     */
+    public void prefetch(SlideConfig config) {
+        Set<Configuration> wanted = new HashSet<>(config.getNeighbors());
+        wanted.add(config);
+        synchronized (cache) {
+            checkGoal(config);
+            Iterator<Map.Entry<SlideConfig, Entry>> iterator = cache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<SlideConfig, Entry> entry = iterator.next();
+                Entry solve = entry.getValue();
+                if (solve.speculative && !solve.future.isDone() && !wanted.contains(entry.getKey())) {
+                    solve.token.cancel();
+                    iterator.remove();
+                }
+            }
+            for (Configuration neighbor : wanted) {
+                SlideConfig next = (SlideConfig) neighbor;
+                if (!cache.containsKey(next)) {
+                    Entry entry = new Entry();
+                    cache.put(next, entry);
+                    executor.execute(() -> run(next, entry, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the hint for a configuration, from the cache if it is there.
+     * @param config the configuration
+     * @return completes with the hint, at once when it was solved ahead, or
+     *         exceptionally if the solve failed
+     */
+    public CompletableFuture<Hint> hint(SlideConfig config) {
+        // event classes are only loaded once JFR is running, loading them starts part of it
+        HintEvent event = FlightRecorder.isInitialized() ? new HintEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Entry entry;
+        synchronized (cache) {
+            checkGoal(config);
+            entry = cache.get(config);
+            if (entry == null || entry.token.isCancelled()) {
+                entry = new Entry();
+                cache.put(config, entry);
+            }
+            entry.speculative = false;
+        }
+        if (event != null && event.isEnabled()) {
+            event.board = config.getRows() + "x" + config.getCols();
+            event.prefetched = entry.future.isDone();
+            entry.future.thenAccept(hint -> {
+                event.end();
+                event.outcome = hint.outcome().name();
+                event.moves = hint.path().size() - 1;
+                event.commit();
+            });
+        }
+        if (!entry.claimed.get()) {
+            // still queued behind other speculative solves, do not wait for them
+            Entry solve = entry;
+            hintExecutor.execute(() -> run(config, solve, false));
+        }
+        return entry.future;
+    }
+
+    /**
+     * Drops every cached solve when a configuration aims for another goal. Called with the cache locked.
+     * @param config the configuration about to be solved
+     */
+    private void checkGoal(SlideConfig config) {
+        int[][] configGoal = config.getGoal();
+        if (!Arrays.deepEquals(goal, configGoal)) {
+            for (Entry entry : cache.values()) {
+                entry.token.cancel();
+            }
+            cache.clear();
+            goal = configGoal;
+            HintReplanner fresh = new HintReplanner(configGoal);
+            fresh.setMonitored(monitored);
+            replanner = fresh;
+        }
+    }
+
+    /**
+     * Cancels the solve of a configuration, if it is still running.
+     * @param config the configuration
+     */
+    public void cancel(SlideConfig config) {
+        synchronized (cache) {
+            Entry entry = cache.get(config);
+            if (entry != null && !entry.future.isDone()) {
+                entry.token.cancel();
+                cache.remove(config);
+            }
+        }
+    }
+
+    /**
+     * Solves a configuration unless someone else already is.
+     * @param config the configuration
+     * @param entry its cache entry
+     * @param prefetching true on a prefetch thread
+     */
+    private void run(SlideConfig config, Entry entry, boolean prefetching) {
+        if (!entry.claimed.compareAndSet(false, true)) {
+            return;
+        }
+        Hint hint;
+        try {
+            hint = solveCached(config, entry.token, prefetching);
+        } catch (RuntimeException | Error e) {
+            // a solve that failed must not leave a future nobody completes in the cache
+            synchronized (cache) {
+                cache.remove(config, entry);
+            }
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        if (hint.outcome() == SolveOutcome.CANCELLED || hint.outcome() == SolveOutcome.BUDGET_EXCEEDED) {
+            // only answers worth repeating stay in the cache
+            synchronized (cache) {
+                cache.remove(config, entry);
+            }
+        }
+        entry.future.complete(hint);
+    }
+
+    /**
+     * Solves a configuration, through the solution cache when there is one and
+     * the board is small enough for an optimal solve.
+     * @param config the configuration
+     * @param token stops the solve
+     * @param prefetching true on a prefetch thread
+     * @return the hint
+     */
+    private Hint solveCached(SlideConfig config, CancellationToken token, boolean prefetching) {
+        PuzzlePresolver files = presolver;
+        Hint presolved = files == null ? null : files.lookup(config);
+        if (presolved != null) {
+            return presolved;
+        }
+        SolutionCache cache = solutionCache;
+        if (cache == null || ConstructiveSolver.isLarge(config)) {
+            return replan(config, token, prefetching);
+        }
+        int[][] configGoal = config.getGoal();
+        SlideCodec codec = new SlideCodec(configGoal);
+        SlideConfig target = new SlideConfig(configGoal, configGoal);
+        try {
+            SolutionCache.Result<SlideConfig> cached = cache.lookup(Slide.CACHE_NAME, codec, config, target);
+            if (cached != null) {
+                return new Hint(cached.outcome(), cached.path());
+            }
+        } catch (IOException e) {
+            disableCache(e);
+            return replan(config, token, prefetching);
+        }
+        HintReplanner search = replanner(config, prefetching);
+        SolutionCache.Result<SlideConfig> result;
+        synchronized (search) {
+            SolveOutcome outcome = search.solve(config, token, TIME_LIMIT);
+            result = new SolutionCache.Result<>(outcome, search.getSolutionPath(), search.getExpansions(),
+                    search.size());
+        }
+        try {
+            cache.store(Slide.CACHE_NAME, codec, config, target, result);
+        } catch (IOException e) {
+            disableCache(e);
+        }
+        return new Hint(result.outcome(), result.path());
+    }
+
+    /**
+     * Solves a configuration with the replanner, or constructively when it is large.
+     * @param config the configuration
+     * @param token stops the solve
+     * @param prefetching true on a prefetch thread
+     * @return the hint
+     */
+    private Hint replan(SlideConfig config, CancellationToken token, boolean prefetching) {
+        if (ConstructiveSolver.isLarge(config)) {
+            return solve(config, token);
+        }
+        HintReplanner search = replanner(config, prefetching);
+        synchronized (search) {
+            SolveOutcome outcome = search.solve(config, token, TIME_LIMIT);
+            return new Hint(outcome, search.getSolutionPath());
+        }
+    }
+
+    /**
+     * Picks the replanner for a solve: the shared one for a hint asked for, the
+     * prefetch thread's own one for a speculative solve, made anew when the goal changed.
+     * @param config the configuration about to be solved
+     * @param prefetching true on a prefetch thread
+     * @return the replanner
+     */
+    private HintReplanner replanner(SlideConfig config, boolean prefetching) {
+        if (!prefetching) {
+            return replanner;
+        }
+        HintReplanner own = prefetchReplanner.get();
+        if (own == null || !Arrays.deepEquals(own.getGoal().getBoard(), config.getGoal())) {
+            own = new HintReplanner(config.getGoal());
+            prefetchReplanner.set(own);
+        }
+        own.setMonitored(monitored);
+        return own;
+    }
+
+    /**
+     * Stops using the solution cache after it failed.
+     * @param e what went wrong
+     */
+    private void disableCache(IOException e) {
+        if (solutionCache != null) {
+            solutionCache = null;
+            System.err.println("Solution cache disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Solves a configuration from scratch with the solver that suits its size,
+     * breadth first search or constructively.
+     * @param config the configuration
+     * @param token stops the solve
+     * @return the hint
+     */
+    public static Hint solve(SlideConfig config, CancellationToken token) {
+        if (ConstructiveSolver.isLarge(config)) {
+            // too large for breadth first search, take a step of a longer solution
+            ConstructiveSolver solver = new ConstructiveSolver(config);
+            solver.setCancellationToken(token);
+            SolveOutcome outcome = solver.solve();
+            return new Hint(outcome, solver.getSolutionPath());
+        }
+        Solver<SlideConfig> solver = new Solver<>(config);
+        solver.setCancellationToken(token);
+        solver.setTimeBudget(TIME_LIMIT);
+        SolveOutcome outcome = solver.solve();
+        return new Hint(outcome, solver.getSolutionPath());
+    }
+
+    /**
+     * Cancels every solve and stops the background threads.
+     */
+    public void shutdown() {
+        synchronized (cache) {
+            for (Entry entry : cache.values()) {
+                entry.token.cancel();
+            }
+            cache.clear();
+        }
+        executor.shutdownNow();
+        hintExecutor.shutdownNow();
+        PuzzlePresolver files = presolver;
+        presolver = null;
+        if (files != null) {
+            files.shutdown();
+        }
+        SolutionCache cache = solutionCache;
+        solutionCache = null;
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the solution cache: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package puzzles.slide.solver;
+
+import puzzles.common.solver.BudgetedSearch;
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.Solver;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideModel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optimal slide puzzle solver using IDA* with the Manhattan distance heuristic,
+ * spread over a fork/join pool.
+ * <p>
+ * Each iteration searches depth first up to a bound on moves plus heuristic.
+ * The top of the tree, down to a small split depth, is expanded as fork/join
+ * tasks, one per node, and everything below a split-depth node is searched
+ * sequentially by the thread that runs its task. Idle threads steal tasks from
+ * busy ones, which keeps the cores busy even though subtrees differ wildly in
+ * size. The bound is shared: every thread records the smallest value it pruned,
+ * which becomes the next iteration's bound, and the first thread to reach the
+ * goal publishes its path, which makes every other thread stop. Any solution
+ * found in an iteration is as long as the bound, so it is optimal.
+ * <p>
+ * The search never steps straight back to the previous position, but keeps no
+ * visited set, so memory stays tiny whatever the depth. The cancellation token
+ * and the node and time budgets are checked wherever the stop flag is.
+ */
+public class ParallelIDAStar implements BudgetedSearch {
+
+    /** Offsets of the four moves of the empty space: up, down, left, right. */
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    /** Nodes between two checks of the stop flag in the sequential search. */
+    private static final int CHECK_INTERVAL = 4096;
+
+    /** Number of rows. */
+    private final int rows;
+
+    /** Number of columns. */
+    private final int cols;
+
+    /**
+     * The starting board, flattened in row order, each tile written as its goal
+     * cell plus one and the empty space as 0, so any numbering of the tiles works.
+     */
+    private final int[] start;
+
+    /** distance[tile][cell] is the Manhattan distance from cell to the goal cell of a tile written as in start. */
+    private final int[][] distance;
+
+    /** neighbors[cell] lists the cells next to cell. */
+    private final int[][] neighbors;
+
+    /** The initial configuration. */
+    private final SlideConfig initialConfig;
+
+    /** Token that stops the search when cancelled, null if it cannot be cancelled. */
+    private CancellationToken cancellationToken;
+
+    /** Maximum number of nodes the search may generate. */
+    private long nodeBudget = Solver.UNLIMITED;
+
+    /** Maximum running time in milliseconds. */
+    private long timeBudgetMillis = Solver.UNLIMITED;
+
+    /** System.nanoTime past which the search stops. */
+    private long deadlineNanos;
+
+    /** Set when the search stopped because a budget ran out. */
+    private volatile boolean budgetExceeded;
+
+    /** Number of nodes generated over all iterations. */
+    private final LongAdder nodes = new LongAdder();
+
+    /** Bound of the iteration being searched. */
+    private volatile int bound;
+
+    /** Smallest f value above the bound seen in this iteration. */
+    private final AtomicInteger nextBound = new AtomicInteger();
+
+    /** Cells visited by the empty space on the solution path, null until found. */
+    private final AtomicReference<int[]> solution = new AtomicReference<>();
+
+    /** Set when the search must stop, because it is solved, cancelled or out of budget. */
+    private volatile boolean stop;
+
+    /** Depth down to which nodes become fork/join tasks. */
+    private int splitDepth;
+
+    /** Time the last solve took in nanoseconds. */
+    private long elapsedNanos;
+
+    /**
+     * Prepares a search from the given configuration.
+     * @param initialConfig the board to solve
+     * @throws IllegalArgumentException if a tile appears more than once on the goal board,
+     *         as the Manhattan distance is then no lower bound
+     */
+    public ParallelIDAStar(SlideConfig initialConfig) {
+        this.initialConfig = initialConfig;
+        this.rows = initialConfig.getRows();
+        this.cols = initialConfig.getCols();
+        int cells = rows * cols;
+        int[][] goalBoard = initialConfig.getGoal();
+        Map<Integer, Integer> goalCellOf = new HashMap<>();
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = goalBoard[cell / cols][cell % cols];
+            if (goalCellOf.put(tile, cell) != null) {
+                throw new IllegalArgumentException("IDA* needs every tile to be different, the goal board holds "
+                        + tile + " more than once");
+            }
+        }
+        int[] board = initialConfig.getCells();
+        this.start = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            start[cell] = board[cell] == 0 ? 0 : goalCellOf.get(board[cell]) + 1;
+        }
+        this.distance = new int[cells + 1][cells];
+        for (int tile = 1; tile <= cells; tile++) {
+            int goal = tile - 1;
+            for (int cell = 0; cell < cells; cell++) {
+                distance[tile][cell] = Math.abs(goal / cols - cell / cols) + Math.abs(goal % cols - cell % cols);
+            }
+        }
+        this.neighbors = new int[cells][];
+        for (int cell = 0; cell < cells; cell++) {
+            List<Integer> next = new ArrayList<>();
+            for (int[] direction : DIRECTIONS) {
+                int row = cell / cols + direction[0];
+                int col = cell % cols + direction[1];
+                if (row >= 0 && row < rows && col >= 0 && col < cols) {
+                    next.add(row * cols + col);
+                }
+            }
+            neighbors[cell] = next.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Sets the token checked by the search, cancelling it makes solve return CANCELLED.
+     * @param cancellationToken the token, or null to make the search uncancellable
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Limits the number of nodes the search may generate.
+     * @param nodeBudget the maximum number of generated nodes, or Solver.UNLIMITED
+     */
+    @Override
+    public void setNodeBudget(long nodeBudget) {
+        if (nodeBudget <= 0) {
+            throw new IllegalArgumentException("Node budget must be positive: " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Limits the time the search may run.
+     * @param timeBudgetMillis the maximum running time in milliseconds, or Solver.UNLIMITED
+     */
+    @Override
+    public void setTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive: " + timeBudgetMillis);
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Checks whether the board can reach the goal.
+     * @return true if the board is solvable
+     */
+    public boolean isSolvable() {
+        return initialConfig.isSolvable();
+    }
+
+    /**
+     * Solves the board on a pool with the given number of threads.
+     * @param threads the number of worker threads
+     * @return SOLVED, NO_SOLUTION if the board is unsolvable, CANCELLED, or BUDGET_EXCEEDED
+     */
+    public SolveOutcome solve(int threads) {
+        long startNanos = System.nanoTime();
+        deadlineNanos = timeBudgetMillis == Solver.UNLIMITED
+                ? Long.MAX_VALUE : startNanos + timeBudgetMillis * 1_000_000L;
+        nodes.reset();
+        solution.set(null);
+        stop = false;
+        budgetExceeded = false;
+        try {
+            if (!isSolvable()) {
+                return SolveOutcome.NO_SOLUTION;
+            }
+            splitDepth = 1;
+            for (long units = 2; units < threads * 32L && splitDepth < 12; units *= 2) {
+                splitDepth++;
+            }
+            int blank = indexOf(start, 0);
+            int h = 0;
+            for (int cell = 0; cell < start.length; cell++) {
+                if (start[cell] != 0) {
+                    h += distance[start[cell]][cell];
+                }
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                bound = h;
+                while (true) {
+                    nextBound.set(Integer.MAX_VALUE);
+                    pool.invoke(new SearchTask(start.clone(), blank, -1, 0, h, new int[0]));
+                    if (solution.get() != null) {
+                        return SolveOutcome.SOLVED;
+                    }
+                    if (stop) {
+                        return budgetExceeded ? SolveOutcome.BUDGET_EXCEEDED : SolveOutcome.CANCELLED;
+                    }
+                    bound = nextBound.get();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } finally {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Records an f value that was pruned by the bound.
+     * @param f the pruned value
+     */
+    private void pruned(int f) {
+        nextBound.accumulateAndGet(f, Math::min);
+    }
+
+    /**
+     * Checks whether the search has to stop.
+     * @return true when another thread solved the board, the search was cancelled or a budget ran out
+     */
+    private boolean mustStop() {
+        if (!stop) {
+            if (cancellationToken != null && cancellationToken.isCancelled()) {
+                stop = true;
+            } else if (nodes.sum() >= nodeBudget || System.nanoTime() > deadlineNanos) {
+                budgetExceeded = true;
+                stop = true;
+            }
+        }
+        return stop;
+    }
+
+    /**
+     * Publishes a solution and stops every other thread.
+     * @param path the cells visited by the empty space
+     */
+    private void found(int[] path) {
+        solution.compareAndSet(null, path);
+        stop = true;
+    }
+
+    /**
+     * A node near the top of the tree. Nodes above the split depth fork a task
+     * per child, the others search their subtree sequentially.
+     */
+    private class SearchTask extends RecursiveAction {
+
+        /** Version of the serialized form, which RecursiveAction inherits but tasks never use. */
+        private static final long serialVersionUID = 1L;
+
+        /** The board at this node, owned by this task. */
+        private final int[] tiles;
+
+        /** Cell of the empty space. */
+        private final int blank;
+
+        /** Cell the empty space came from, -1 at the root. */
+        private final int previous;
+
+        /** Number of moves from the start. */
+        private final int g;
+
+        /** Manhattan distance of the board. */
+        private final int h;
+
+        /** Cells visited by the empty space so far. */
+        private final int[] path;
+
+        /**
+         * Creates a task for one node.
+         * @param tiles the board
+         * @param blank the cell of the empty space
+         * @param previous the cell the empty space came from
+         * @param g the number of moves so far
+         * @param h the heuristic value
+         * @param path the cells visited by the empty space
+         */
+        SearchTask(int[] tiles, int blank, int previous, int g, int h, int[] path) {
+            this.tiles = tiles;
+            this.blank = blank;
+            this.previous = previous;
+            this.g = g;
+            this.h = h;
+            this.path = path;
+        }
+
+        /**
+         * Expands the node, forking children above the split depth.
+         */
+        @Override
+        protected void compute() {
+            if (mustStop()) {
+                return;
+            }
+            if (g >= splitDepth) {
+                int[] moves = new int[bound + 1];
+                System.arraycopy(path, 0, moves, 0, g);
+                Sequential search = new Sequential(tiles, moves);
+                search.dfs(blank, previous, g, h);
+                nodes.add(search.count % CHECK_INTERVAL);
+                return;
+            }
+            nodes.increment();
+            int f = g + h;
+            if (f > bound) {
+                pruned(f);
+                return;
+            }
+            if (h == 0) {
+                found(path);
+                return;
+            }
+            List<SearchTask> children = new ArrayList<>(4);
+            for (int next : neighbors[blank]) {
+                if (next == previous) {
+                    continue;
+                }
+                int tile = tiles[next];
+                int[] child = tiles.clone();
+                child[blank] = tile;
+                child[next] = 0;
+                int[] childPath = new int[g + 1];
+                System.arraycopy(path, 0, childPath, 0, g);
+                childPath[g] = next;
+                children.add(new SearchTask(child, next, blank,
+                        g + 1, h - distance[tile][next] + distance[tile][blank], childPath));
+            }
+            invokeAll(children);
+        }
+    }
+
+    /**
+     * Depth first search of one subtree on a single thread, moving tiles in place.
+     */
+    private class Sequential {
+
+        /** The board, changed in place and restored on the way back. */
+        private final int[] tiles;
+
+        /** Cells visited by the empty space, index g holds the g-th move. */
+        private final int[] moves;
+
+        /** Nodes generated by this search. */
+        private long count;
+
+        /**
+         * Creates a search over the given board.
+         * @param tiles the board, owned by the search
+         * @param moves room for the moves, with the moves to the subtree's root filled in
+         */
+        Sequential(int[] tiles, int[] moves) {
+            this.tiles = tiles;
+            this.moves = moves;
+        }
+
+        /**
+         * Searches below a node.
+         * @param blank the cell of the empty space
+         * @param previous the cell the empty space came from
+         * @param g the number of moves so far
+         * @param h the heuristic value
+         * @return true if the search must stop
+         */
+        boolean dfs(int blank, int previous, int g, int h) {
+            if (++count % CHECK_INTERVAL == 0) {
+                // counted as it goes, so the node budget sees long subtrees
+                nodes.add(CHECK_INTERVAL);
+                if (mustStop()) {
+                    return true;
+                }
+            }
+            int f = g + h;
+            if (f > bound) {
+                pruned(f);
+                return false;
+            }
+            if (h == 0) {
+                int[] path = new int[g];
+                System.arraycopy(moves, 0, path, 0, g);
+                found(path);
+                return true;
+            }
+            for (int next : neighbors[blank]) {
+                if (next == previous) {
+                    continue;
+                }
+                int tile = tiles[next];
+                tiles[blank] = tile;
+                tiles[next] = 0;
+                moves[g] = next;
+                boolean done = dfs(next, blank, g + 1, h - distance[tile][next] + distance[tile][blank]);
+                tiles[next] = tile;
+                tiles[blank] = 0;
+                if (done) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the solution path as a list of configurations, starting with the initial one.
+     * @return the solution path, empty if no solution was found
+     */
+    public List<SlideConfig> getSolutionPath() {
+        List<SlideConfig> path = new ArrayList<>();
+        int[] moves = solution.get();
+        if (moves == null) {
+            return path;
+        }
+        SlideConfig config = initialConfig;
+        path.add(config);
+        for (int cell : moves) {
+            config = config.slideBlock(cell / cols, cell % cols);
+            path.add(config);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of nodes generated by the last solve, over all iterations.
+     * @return the number of nodes
+     */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * Returns the generation rate of the last solve.
+     * @return nodes per second
+     */
+    public double getNodesPerSecond() {
+        return nodes.sum() / (Math.max(elapsedNanos, 1) / 1e9);
+    }
+
+    /**
+     * Finds a value in an array.
+     * @param values the array
+     * @param value the value to find
+     * @return the index of the value, -1 if absent
+     */
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Solves a puzzle file with one thread and then with every core, and prints
+     * both node rates so the scaling can be checked.
+     * @param args the puzzle file, optionally followed by the number of threads
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java ParallelIDAStar puzzle-file [threads]");
+            return;
+        }
+        int threads = args.length == 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        try {
+            SlideConfig config = new SlideModel(args[0]).getCurrentConfig();
+            double single = 0;
+            for (int n : new int[] {1, threads}) {
+                ParallelIDAStar search = new ParallelIDAStar(config);
+                SolveOutcome outcome = search.solve(n);
+                double rate = search.getNodesPerSecond();
+                if (n == 1) {
+                    single = rate;
+                }
+                System.out.printf("%2d thread(s): %s, %d moves, %d nodes in %.1f ms, %.0f nodes/s, speedup %.2f%n",
+                        n, outcome, Math.max(search.getSolutionPath().size() - 1, 0), search.getNodes(),
+                        search.elapsedNanos / 1e6, rate, single > 0 ? rate / single : 1.0);
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading the puzzle file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package puzzles.slide.solver;
+
+import puzzles.common.solver.CancellationToken;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.Solver;
+import puzzles.common.solver.SolverOptions;
+import puzzles.slide.model.SlideConfig;
+import puzzles.slide.model.SlideFileParser;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves the puzzle files in a few directories before anyone loads them.
+ * <p>
+ * Every file already in a watched directory, and every file created or changed
+ * there later, is queued once it has been left alone for SETTLE_MILLIS. A
+ * single thread of the lowest priority solves the queued files one at a time,
+ * the way HintService solves a hint: constructively for large boards, by
+ * breadth first search otherwise. The solutions are kept by board, so a
+ * HintService given the presolver answers the first hint after a file is
+ * loaded at once.
+ * <p>
+ * The presolver stays out of the way of interactive solving. A solve only
+ * starts while the rest of the machine leaves at least one core free and the
+ * heap is under MEMORY_SHARE percent full, and it is cancelled and queued again
+ * as soon as either stops being true. Its breadth first searches are limited
+ * to the configurations the free heap can hold; a file whose solve runs out of
+ * that budget or of TIME_LIMIT is reported and left until it changes. Only the
+ * CACHE_SIZE most recently used solutions are kept.
+ */
+public class PuzzlePresolver {
+
+    /** Time a file must be left alone before it is solved, in milliseconds, so half written files are skipped. */
+    public static final long SETTLE_MILLIS = 500;
+
+    /** Share of the heap in use, in percent, above which no solve runs. */
+    public static final int MEMORY_SHARE = 50;
+
+    /** Longest time one breadth first solve may run, in milliseconds. */
+    public static final long TIME_LIMIT = 5 * 60_000;
+
+    /** Most boards whose solutions are kept. */
+    public static final int CACHE_SIZE = 1024;
+
+    /** Time between two looks at the watched directories and the load, in milliseconds. */
+    private static final long POLL_MILLIS = 250;
+
+    /** Time a file waits after its solve was cancelled for load, in milliseconds. */
+    private static final long RETRY_MILLIS = 5_000;
+
+    /** Heap bytes a visited configuration of a breadth first search costs, to size its node budget. */
+    private static final long BYTES_PER_STATE = 200;
+
+    /** Share of a core, from 0 to 1, that counts as free. */
+    private static final double FREE_CORE = 0.75;
+
+    /**
+     * A solved puzzle file.
+     * @param config the board in the file
+     * @param hint the solve's outcome and path
+     */
+    private record Presolved(SlideConfig config, HintService.Hint hint) {
+    }
+
+    /** The directories to watch. */
+    private final List<Path> directories;
+
+    /** Reads the puzzle files, only used by the solving thread. */
+    private final SlideFileParser parser = new SlideFileParser();
+
+    /** Tells about new and changed files. */
+    private final WatchService watcher;
+
+    /** Runs the solves, one at a time. */
+    private final ExecutorService pool;
+
+    /** Files waiting to be solved, with the time each may be solved from. */
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+
+    /** The solved files, by board, least recently used first. */
+    private final Map<SlideConfig, Presolved> solved = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SlideConfig, Presolved> eldest) {
+            if (size() > CACHE_SIZE) {
+                boards.values().removeIf(eldest.getKey()::equals);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** The board each solved file held, to drop it when the file changes. */
+    private final Map<Path, SlideConfig> boards = new HashMap<>();
+
+    /** The file being solved, null when none is. */
+    private Path running;
+
+    /** Stops the running solve. */
+    private CancellationToken runningToken;
+
+    /** Number of files solved. */
+    private int solvedCount;
+
+    /** Number of solves cancelled for load. */
+    private int throttledCount;
+
+    /** Number of files whose solve ran out of its node or time budget. */
+    private int budgetExceededCount;
+
+    /**
+     * Creates a presolver for some directories, not yet started.
+     * @param directories the directories holding puzzle files
+     * @throws IOException if the directories cannot be watched
+     */
+    public PuzzlePresolver(List<Path> directories) throws IOException {
+        this.directories = List.copyOf(directories);
+        this.watcher = FileSystems.getDefault().newWatchService();
+        for (Path directory : this.directories) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+        this.pool = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "puzzle-presolver");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues every file already in the directories and starts watching them.
+     */
+    public void start() {
+        queueAll();
+        Thread thread = new Thread(this::watch, "puzzle-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues every file in the directories.
+     */
+    private void queueAll() {
+        long now = System.currentTimeMillis();
+        for (Path directory : directories) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file)) {
+                        synchronized (this) {
+                            pending.put(file, now);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot list " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gives the solution of a board if a watched file held it.
+     * @param config the board
+     * @return the hint for it, null if no watched file with that board and goal has been solved
+     */
+    public synchronized HintService.Hint lookup(SlideConfig config) {
+        Presolved presolved = solved.get(config);
+        if (presolved == null || !Arrays.deepEquals(presolved.config.getGoal(), config.getGoal())) {
+            return null;
+        }
+        return presolved.hint;
+    }
+
+    /**
+     * Returns the number of files solved so far.
+     * @return the files solved
+     */
+    public synchronized int getSolvedCount() {
+        return solvedCount;
+    }
+
+    /**
+     * Returns the number of solves that were cancelled because the machine or the heap was busy.
+     * @return the solves cancelled for load
+     */
+    public synchronized int getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Returns the number of files that were given up on because their solve ran out of budget.
+     * @return the solves over budget
+     */
+    public synchronized int getBudgetExceededCount() {
+        return budgetExceededCount;
+    }
+
+    /**
+     * Stops watching and cancels the running solve.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (runningToken != null) {
+                runningToken.cancel();
+            }
+            pending.clear();
+        }
+        pool.shutdownNow();
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the puzzle watcher: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the watcher's events and starts a solve whenever a file is due and
+     * the machine is idle enough. Runs on its own thread until shutdown.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    queue(key);
+                }
+                schedule();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shut down
+        }
+    }
+
+    /**
+     * Queues the files a watch key reports on, or forgets them when they are deleted.
+     * @param key the key with the events
+     */
+    private synchronized void queue(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        long due = System.currentTimeMillis() + SETTLE_MILLIS;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, look at every file again
+                queueAll();
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            forget(file);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(file);
+            } else {
+                // a file being written keeps moving its due time back
+                pending.remove(file);
+                pending.put(file, due);
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Drops the solution of a file that changed or went away.
+     * @param file the file
+     */
+    private void forget(Path file) {
+        SlideConfig board = boards.remove(file);
+        if (board != null && !boards.containsValue(board)) {
+            solved.remove(board);
+        }
+    }
+
+    /**
+     * Cancels the running solve if the machine got busy, or starts the first
+     * due file if nothing is running and the machine is idle.
+     */
+    private synchronized void schedule() {
+        boolean idle = isIdle();
+        if (running != null) {
+            if (!idle) {
+                runningToken.cancel();
+            }
+            return;
+        }
+        if (!idle) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                it.remove();
+                Path file = entry.getKey();
+                CancellationToken token = new CancellationToken();
+                running = file;
+                runningToken = token;
+                pool.execute(() -> solve(file, token));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a solve may run: the rest of the machine leaves a core free
+     * and the heap is not too full. This process's own CPU time is taken out of
+     * the machine's load, so a running solve, with the collection and compiling
+     * it causes, does not stop itself.
+     * @return true if a solve may run
+     */
+    private boolean isIdle() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used * 100 > runtime.maxMemory() * MEMORY_SHARE) {
+            return false;
+        }
+        if (!(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os)) {
+            return true;
+        }
+        double load = os.getCpuLoad();
+        double own = os.getProcessCpuLoad();
+        if (load < 0 || own < 0) {
+            // not known yet
+            return true;
+        }
+        int cores = os.getAvailableProcessors();
+        double others = Math.max(0, load - own) * cores;
+        return cores - others >= FREE_CORE;
+    }
+
+    /**
+     * Solves one file and keeps the solution. Runs on the solving thread.
+     * @param file the file
+     * @param token stops the solve when the machine gets busy
+     */
+    private void solve(Path file, CancellationToken token) {
+        SolveOutcome outcome = SolveOutcome.CANCELLED;
+        SlideConfig config = null;
+        HintService.Hint hint = null;
+        try {
+            config = parser.parse(file);
+            hint = solve(config, token);
+            outcome = hint.outcome();
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            // not a puzzle file, or not a whole one yet; a later change queues it again
+            outcome = null;
+        } finally {
+            synchronized (this) {
+                running = null;
+                runningToken = null;
+                if (outcome == SolveOutcome.CANCELLED && !pool.isShutdown()) {
+                    throttledCount++;
+                    pending.putIfAbsent(file, System.currentTimeMillis() + RETRY_MILLIS);
+                } else if (outcome == SolveOutcome.SOLVED || outcome == SolveOutcome.NO_SOLUTION) {
+                    forget(file);
+                    boards.put(file, config);
+                    solved.put(config, new Presolved(config, hint));
+                    solvedCount++;
+                } else if (outcome == SolveOutcome.BUDGET_EXCEEDED) {
+                    // the same board would run out again, so wait for the file to change
+                    budgetExceededCount++;
+                    System.err.println("Not presolving " + file + ": " + SolverOptions.stoppedMessage(outcome));
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves a board with the solver HintService would use, with a node budget
+     * the free heap can hold.
+     * @param config the board
+     * @param token stops the solve
+     * @return the outcome and path
+     */
+    private static HintService.Hint solve(SlideConfig config, CancellationToken token) {
+        if (ConstructiveSolver.isLarge(config)) {
+            return HintService.solve(config, token);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() * MEMORY_SHARE / 100 - (runtime.totalMemory() - runtime.freeMemory());
+        Solver<SlideConfig> solver = new Solver<>(config);
+        solver.setCancellationToken(token);
+        solver.setTimeBudget(TIME_LIMIT);
+        solver.setNodeBudget(Math.max(1, free / BYTES_PER_STATE));
+        SolveOutcome outcome = solver.solve();
+        return new HintService.Hint(outcome, solver.getSolutionPath());
+    }
+
+    /**
+     * Watches directories and prints each file as it is solved, to try the presolver out.
+     * @param args the directories
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java PuzzlePresolver directory...");
+            return;
+        }
+        try {
+            PuzzlePresolver presolver = new PuzzlePresolver(Arrays.stream(args).map(Path::of).toList());
+            presolver.start();
+            int reported = 0;
+            int throttled = 0;
+            int overBudget = 0;
+            while (true) {
+                Thread.sleep(1000);
+                synchronized (presolver) {
+                    if (presolver.solvedCount != reported || presolver.throttledCount != throttled
+                            || presolver.budgetExceededCount != overBudget) {
+                        reported = presolver.solvedCount;
+                        throttled = presolver.throttledCount;
+                        overBudget = presolver.budgetExceededCount;
+                        for (Map.Entry<Path, SlideConfig> entry : presolver.boards.entrySet()) {
+                            HintService.Hint hint = presolver.solved.get(entry.getValue()).hint;
+                            System.out.println(entry.getKey() + ": " + hint.outcome()
+                                    + (hint.outcome() == SolveOutcome.SOLVED ? ", " + (hint.path().size() - 1) + " moves" : ""));
+                        }
+                        System.out.println("Solved " + presolver.solvedCount + ", throttled " + presolver.throttledCount
+                                + ", over budget " + presolver.budgetExceededCount
+                                + ", waiting " + presolver.pending.size());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot watch the directories: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,58 +1,329 @@
 package puzzles.slide.solver;
+import puzzles.slide.model.SlideCodec;
 import puzzles.slide.model.SlideConfig;
 import puzzles.slide.model.SlideModel;
-import puzzles.common.solver.Configuration;
-import puzzles.common.solver.Solver;
+import puzzles.slide.model.SlideStateSpace;
+import puzzles.common.solver.BitsetSolver;
+import puzzles.common.solver.ReverseSearchCache;
+import puzzles.common.solver.SolutionCache;
+import puzzles.common.solver.SolvePlanner;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.SolverOptions;
+import puzzles.common.solver.distributed.DistributedSolver;
+import puzzles.common.solver.distributed.PuzzleFactory;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The main class for solving Slide Puzzle configurations.
  * NOTE: only for slide-2 solution steps may differ a little but same amount of steps are still taken
  * and solution
  */
-public class Slide {
+public class Slide implements PuzzleFactory {
+
+    /** Name of the slide puzzle in the solution cache, shared with the hints. */
+    public static final String CACHE_NAME = "slide";
 
     /**
      * The main point for running the Slide Puzzle solver.
-     * @param args Command-line arguments. Expects a single puzzle filename argument.
+     * @param args Command-line arguments. Expects a single puzzle filename argument,
+     *             followed by optional solver options.
      */
     public static void main(String[] args) {
+        SolverOptions options;
+        try {
+            options = SolverOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java Slide <puzzle_file> " + SolverOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        args = options.positional();
+        if (options.engine().equals("reverse") && args.length > 0) {
+            new Slide().solveAll(args, options);
+            return;
+        }
         if (args.length != 1) {
-            System.out.println("Usage: java Slide <puzzle_file>");
+            System.out.println("Usage: java Slide <puzzle_file> " + SolverOptions.USAGE);
             System.exit(1);
         }
 
         String puzzleFileName = args[0];
         Slide slideSolver = new Slide();
-        slideSolver.solveSlidePuzzle(puzzleFileName);
+        slideSolver.solveSlidePuzzle(puzzleFileName, options);
     }
 
     /**
      * Solves a Slide Puzzle configuration loaded from the specified file.
      * @param puzzleFileName The name of the file containing the puzzle configuration.
+     * @param options The budgets and progress reporting for the solver.
      */
 
-    private void solveSlidePuzzle(String puzzleFileName) {
+    private void solveSlidePuzzle(String puzzleFileName, SolverOptions options) {
         try {
             SlideModel slideModel = new SlideModel(puzzleFileName);
-            Solver solver = new Solver(slideModel.getCurrentConfig());
-            boolean solutionFound = solver.solve();
-            if (solutionFound) {
-                List<Configuration> solutionPath = solver.getSolutionPath();
-                System.out.println("File: " + puzzleFileName);
-                System.out.println(slideModel.getCurrentConfig() + "Total configs:" +solver.getTotalConfigurations());
-                System.out.println("Unique configs: " + solver.getUniqueConfigurations());
-                int step = 0;
-                for (Configuration config : solutionPath) {
-                    System.out.println("Step " + step++ + ":");
-                    System.out.println(config);
+            if (options.engine().equals("auto")) {
+                SolvePlanner.Plan plan = plan(slideModel.getCurrentConfig());
+                SolverOptions.printPlan(plan);
+                options.follow(plan);
+            }
+            if (options.engine().equals("idastar")) {
+                solveWithIDAStar(puzzleFileName, slideModel.getCurrentConfig(), options);
+                return;
+            }
+            if (options.engine().equals("constructive")) {
+                solveConstructively(puzzleFileName, slideModel.getCurrentConfig());
+                return;
+            }
+            if (options.engine().equals("distributed")) {
+                DistributedSolver solver = new DistributedSolver(create(new String[] {puzzleFileName}),
+                        Slide.class, new String[] {puzzleFileName});
+                options.apply(solver);
+                SolveOutcome outcome;
+                try {
+                    outcome = solver.solve();
+                } catch (IOException e) {
+                    System.out.println("Distributed search failed: " + e.getMessage());
+                    return;
+                }
+                if (outcome == SolveOutcome.SOLVED) {
+                    printSolution(puzzleFileName, slideModel.getCurrentConfig(),
+                            solver.getSolutionPath(SlideConfig.class),
+                            solver.getTotalConfigurations(), solver.getUniqueConfigurations());
+                } else if (outcome == SolveOutcome.NO_SOLUTION) {
+                    System.out.println("No solution found for the puzzle.");
+                } else {
+                    System.out.println(SolverOptions.stoppedMessage(outcome));
+                }
+                return;
+            }
+            if (!options.engine().equals("bfs") && !options.engine().equals("bitset")) {
+                System.out.println("Unknown engine " + options.engine()
+                        + ", use bfs, bitset, idastar, distributed, constructive, reverse or auto");
+                return;
+            }
+            SlideConfig start = slideModel.getCurrentConfig();
+            int[][] goal = start.getGoal();
+            SolutionCache.Result<SlideConfig> result;
+            if (options.engine().equals("bitset")) {
+                try {
+                    result = options.solveRanked(CACHE_NAME, new SlideCodec(goal), new SlideStateSpace(goal), start,
+                            new SlideConfig(goal, goal));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
                 }
             } else {
+                result = options.solve(CACHE_NAME, new SlideCodec(goal), start, new SlideConfig(goal, goal));
+            }
+            SolveOutcome outcome = result.outcome();
+            if (outcome == SolveOutcome.SOLVED) {
+                printSolution(puzzleFileName, start, result.path(),
+                        result.totalConfigurations(), result.uniqueConfigurations());
+            } else if (outcome == SolveOutcome.NO_SOLUTION) {
                 System.out.println("No solution found for the puzzle.");
+            } else {
+                System.out.println(SolverOptions.stoppedMessage(outcome));
             }
         } catch (IOException e) {
             System.out.println("Error reading the puzzle file: " + e.getMessage());
         }
     }
+
+    /**
+     * Plans how to solve a configuration, from the (rows*cols)!/2 configurations
+     * a board can reach and the Manhattan distance to its goal. Boards whose
+     * (rows*cols)! ranks fit in bitsets are offered the bitset engine.
+     * @param config The configuration to solve.
+     * @return The plan.
+     */
+    private static SolvePlanner.Plan plan(SlideConfig config) {
+        int[][] board = config.getBoard();
+        int rows = board.length;
+        int cols = board[0].length;
+        int cells = rows * cols;
+        double reachable = reachableBoards(cells);
+        SolvePlanner planner = new SolvePlanner(config, new SlideCodec(config.getGoal()));
+        planner.setStateCount(reachable, "(" + rows + "*" + cols + ")!/2");
+        if (config.isSolvable()) {
+            planner.setDepth(config.getManhattanDistance(), false, "Manhattan distance");
+            // IDA* needs every tile to be different for the Manhattan distance to be a lower bound
+            if (cells <= ConstructiveSolver.LARGE_BOARD_CELLS
+                    && Arrays.stream(config.getCells()).distinct().count() == cells) {
+                planner.addAlternative("idastar", "IDA* with the Manhattan distance, optimal, keeps no visited set");
+            }
+        } else {
+            planner.addNote("the board has the wrong parity for its goal, a search would have to see every configuration");
+        }
+        if (cells <= SlideStateSpace.MAX_CELLS) {
+            try {
+                long bytes = BitsetSolver.memoryNeeded(new SlideStateSpace(config.getGoal()).size());
+                if (bytes <= Runtime.getRuntime().maxMemory() / 2) {
+                    planner.addAlternative("bitset", "breadth first search with a bit per board, optimal, "
+                            + (bytes >> 20) + " MB");
+                }
+            } catch (IllegalArgumentException e) {
+                // boards with a repeated tile cannot be ranked, the other engines still solve them
+                planner.addNote("no bitset engine: " + e.getMessage());
+            }
+        }
+        planner.addAlternative("constructive", "places rows and columns one at a time, fast but not optimal");
+        return planner.plan();
+    }
+
+    /**
+     * Counts the boards that can be reached from any one board, half of all of them.
+     * @param cells The number of cells of the board.
+     * @return (cells)!/2
+     */
+    private static double reachableBoards(int cells) {
+        double reachable = 0.5;
+        for (int i = 2; i <= cells; i++) {
+            reachable *= i;
+        }
+        return reachable;
+    }
+
+    /**
+     * Solves several puzzle files with one backward search per goal board, shared
+     * by every file that aims for it.
+     * @param puzzleFileNames The names of the files containing the configurations.
+     * @param options The radius of the backward searches and the node budget of the forward ones.
+     */
+    private void solveAll(String[] puzzleFileNames, SolverOptions options) {
+        Map<String, ReverseSearchCache<SlideConfig>> caches = new HashMap<>();
+        for (String puzzleFileName : puzzleFileNames) {
+            SlideConfig config;
+            try {
+                config = new SlideModel(puzzleFileName).getCurrentConfig();
+            } catch (IOException e) {
+                System.out.println("Error reading the puzzle file: " + e.getMessage());
+                continue;
+            }
+            int[][] goal = config.getGoal();
+            ReverseSearchCache<SlideConfig> cache = caches.computeIfAbsent(Arrays.deepToString(goal), key -> {
+                ReverseSearchCache<SlideConfig> built = new ReverseSearchCache<>(
+                        new SlideConfig(goal, goal), new SlideCodec(goal));
+                options.apply(built);
+                double reaching = reachableBoards(goal.length * goal[0].length);
+                if (options.radius() == ReverseSearchCache.UNLIMITED_RADIUS && !built.fits(reaching)) {
+                    System.out.println("The goal is reached from " + String.format("%.3g", reaching)
+                            + " boards, too many to cache, give --radius=moves");
+                    return null;
+                }
+                SolveOutcome outcome = built.build(options.radius());
+                System.out.println("Cached configs: " + built.size() + ", radius: " + built.getRadius());
+                if (outcome != SolveOutcome.SOLVED) {
+                    System.out.println("Backward search: " + SolverOptions.stoppedMessage(outcome));
+                }
+                return built;
+            });
+            if (cache == null) {
+                continue;
+            }
+            SolveOutcome outcome = cache.solve(config);
+            if (outcome == SolveOutcome.SOLVED) {
+                System.out.println("File: " + puzzleFileName);
+                System.out.println(config + "Forward configs: " + cache.getForwardConfigurations());
+                int stepNumber = 0;
+                for (SlideConfig step : cache.getSolutionPath()) {
+                    System.out.println("Step " + stepNumber++ + ":");
+                    System.out.println(step);
+                }
+            } else if (outcome == SolveOutcome.NO_SOLUTION) {
+                System.out.println("No solution found for the puzzle.");
+            } else {
+                System.out.println(SolverOptions.stoppedMessage(outcome));
+            }
+        }
+    }
+
+    /**
+     * Prints a solution found by breadth first search.
+     * @param puzzleFileName The name of the file the configuration came from.
+     * @param config The configuration that was solved.
+     * @param solutionPath The solution steps, starting with config.
+     * @param totalConfigs The number of configurations generated.
+     * @param uniqueConfigs The number of distinct configurations seen.
+     */
+    private void printSolution(String puzzleFileName, SlideConfig config, List<SlideConfig> solutionPath,
+                               long totalConfigs, long uniqueConfigs) {
+        System.out.println("File: " + puzzleFileName);
+        System.out.println(config + "Total configs:" + totalConfigs);
+        System.out.println("Unique configs: " + uniqueConfigs);
+        int step = 0;
+        for (SlideConfig stepConfig : solutionPath) {
+            System.out.println("Step " + step++ + ":");
+            System.out.println(stepConfig);
+        }
+    }
+
+    /**
+     * Builds the puzzle of a data file, for the workers of a distributed search.
+     * @param args the puzzle file name
+     * @return the puzzle's initial configuration and codec
+     * @throws IOException if the file cannot be read
+     */
+    @Override
+    public Puzzle create(String[] args) throws IOException {
+        SlideConfig config = new SlideModel(args[0]).getCurrentConfig();
+        return new Puzzle(config, new SlideCodec(config.getGoal()));
+    }
+
+    /**
+     * Solves a configuration optimally with parallel IDA* on every core.
+     * @param puzzleFileName The name of the file the configuration came from.
+     * @param config The configuration to solve.
+     * @param options The node and time budgets of the search.
+     */
+    private void solveWithIDAStar(String puzzleFileName, SlideConfig config, SolverOptions options) {
+        ParallelIDAStar search;
+        try {
+            search = new ParallelIDAStar(config);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        options.apply(search);
+        SolveOutcome outcome = search.solve(Runtime.getRuntime().availableProcessors());
+        if (outcome == SolveOutcome.NO_SOLUTION) {
+            System.out.println("No solution found for the puzzle.");
+            return;
+        } else if (outcome != SolveOutcome.SOLVED) {
+            System.out.println(SolverOptions.stoppedMessage(outcome));
+            return;
+        }
+        System.out.println("File: " + puzzleFileName);
+        System.out.println(config + "Nodes: " + search.getNodes());
+        int stepNumber = 0;
+        for (SlideConfig step : search.getSolutionPath()) {
+            System.out.println("Step " + stepNumber++ + ":");
+            System.out.println(step);
+        }
+    }
+
+    /**
+     * Solves a configuration of any size by placing rows and columns one by one.
+     * The solution is valid but usually far from the shortest.
+     * @param puzzleFileName The name of the file the configuration came from.
+     * @param config The configuration to solve.
+     */
+    private void solveConstructively(String puzzleFileName, SlideConfig config) {
+        ConstructiveSolver solver = new ConstructiveSolver(config);
+        if (solver.solve() != SolveOutcome.SOLVED) {
+            System.out.println("No solution found for the puzzle.");
+            return;
+        }
+        System.out.println("File: " + puzzleFileName);
+        System.out.println(config + "Moves before removing loops: " + solver.getRawMoves());
+        int stepNumber = 0;
+        for (SlideConfig step : solver.getSolutionPath()) {
+            System.out.println("Step " + stepNumber++ + ":");
+            System.out.println(step);
+        }
+    }
 }
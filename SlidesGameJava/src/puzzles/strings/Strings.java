@@ -1,39 +1,214 @@
 package puzzles.strings;
-import puzzles.common.solver.Configuration;
-import puzzles.common.solver.Solver;
+import puzzles.common.solver.BitsetSolver;
+import puzzles.common.solver.ReverseSearchCache;
+import puzzles.common.solver.SolutionCache;
+import puzzles.common.solver.SolvePlanner;
+import puzzles.common.solver.SolveOutcome;
+import puzzles.common.solver.SolverOptions;
+import puzzles.common.solver.distributed.DistributedSolver;
+import puzzles.common.solver.distributed.PuzzleFactory;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * The Strings class solves a string transformation puzzle using the Solver class.
  */
-public class Strings {
+public class Strings implements PuzzleFactory {
     /**
      * The main method of the Strings program.
      * It takes two command-line arguments, start and finish, and solves the  transformation puzzle.
      * Prints the solution path if a solution is found.
-     * @param args the command-line arguments: start and finish strings
+     * @param args the command-line arguments: start and finish strings, followed by optional solver options
      */
     public static void main(String[] args) {
+        SolverOptions options;
+        try {
+            options = SolverOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java Strings start finish " + SolverOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        args = options.positional();
+        if (options.engine().equals("reverse")) {
+            solveAll(args, options);
+            return;
+        }
         if (args.length != 2) {
-            System.out.println("Usage: java Strings start finish");
+            System.out.println("Usage: java Strings start finish " + SolverOptions.USAGE);
             return;
         }
         String start = args[0];
         String finish = args[1];
+        if (options.engine().equals("auto")) {
+            SolvePlanner.Plan plan = plan(start, finish);
+            SolverOptions.printPlan(plan);
+            if (plan.engine().equals(SolvePlanner.NO_SOLUTION)) {
+                System.out.println("No solution");
+                return;
+            }
+            options.follow(plan);
+        }
         System.out.println("Start: " + start + ", Finish: " + finish);
-        StringsConfiguration startConfig = new StringsConfiguration(start, finish);
-        Solver solver = new Solver(startConfig);
-        boolean hasSolution = solver.solve();
-        if (hasSolution) {
-            System.out.println("Total configs: " + solver.getTotalConfigurations());
-            System.out.println("Unique configs: " + solver.getUniqueConfigurations());
-            int step = 0;
-            for (Configuration config : solver.getSolutionPath()) {
-                StringsConfiguration stringsConfig = (StringsConfiguration) config;
-                System.out.println("Step " + step + ": " + stringsConfig.getString());
-                step++;
+        if (options.engine().equals("distributed")) {
+            DistributedSolver solver = new DistributedSolver(new Strings().create(args), Strings.class, args);
+            options.apply(solver);
+            try {
+                SolveOutcome outcome = solver.solve();
+                if (outcome == SolveOutcome.SOLVED) {
+                    printSolution(solver.getSolutionPath(StringsConfiguration.class), solver.getTotalConfigurations(),
+                            solver.getUniqueConfigurations());
+                } else if (outcome == SolveOutcome.NO_SOLUTION) {
+                    System.out.println("No solution");
+                } else {
+                    System.out.println(SolverOptions.stoppedMessage(outcome));
+                }
+            } catch (IOException e) {
+                System.out.println("Distributed search failed: " + e.getMessage());
             }
-        } else {
+            return;
+        } else if (!options.engine().equals("bfs") && !options.engine().equals("bitset")) {
+            System.out.println("Unknown engine " + options.engine() + ", use bfs, bitset, distributed, reverse or auto");
+            return;
+        }
+        SolutionCache.Result<StringsConfiguration> result;
+        try {
+            StringsCodec codec = new StringsCodec(finish);
+            StringsConfiguration startConfig = new StringsConfiguration(start, finish);
+            StringsConfiguration target = new StringsConfiguration(finish, finish);
+            if (options.engine().equals("bitset")) {
+                result = options.solveRanked("strings", codec, new StringsStateSpace(start.length(), finish),
+                        startConfig, target);
+            } else {
+                result = options.solve("strings", codec, startConfig, target);
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening the checkpoint or solution cache: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        SolveOutcome outcome = result.outcome();
+        if (outcome == SolveOutcome.SOLVED) {
+            printSolution(result.path(), result.totalConfigurations(), result.uniqueConfigurations());
+        } else if (outcome == SolveOutcome.NO_SOLUTION) {
             System.out.println("No solution");
+        } else {
+            System.out.println(SolverOptions.stoppedMessage(outcome));
+        }
+    }
+
+    /**
+     * Plans how to solve a puzzle. Letters only turn into letters, so a start of
+     * letters reaches the 26^length strings, and as every character turns on its
+     * own the distances around the alphabet add up to the exact number of moves.
+     * When those strings fit in bitsets, the bitset engine is offered. A finish
+     * of another length, or one with characters letters never turn into, has no
+     * solution and the plan runs no search.
+     * @param start the start string
+     * @param finish the finish string
+     * @return the plan
+     */
+    private static SolvePlanner.Plan plan(String start, String finish) {
+        SolvePlanner planner = new SolvePlanner(new StringsConfiguration(start, finish), new StringsCodec(finish));
+        boolean startLetters = start.chars().allMatch(ch -> ch >= 'A' && ch <= 'Z');
+        boolean finishLetters = finish.chars().allMatch(ch -> ch >= 'A' && ch <= 'Z');
+        if (startLetters) {
+            planner.setStateCount(Math.pow(26, start.length()), "26^" + start.length());
+        }
+        if (start.length() != finish.length()) {
+            planner.setUnsolvable("start and finish differ in length, no number of moves joins them");
+        } else if (startLetters && !finishLetters) {
+            planner.setUnsolvable("the finish has characters outside A to Z, which letters never turn into");
+        } else if (startLetters) {
+            int moves = 0;
+            for (int i = 0; i < start.length(); i++) {
+                int distance = Math.abs(start.charAt(i) - finish.charAt(i));
+                moves += Math.min(distance, 26 - distance);
+            }
+            planner.setDepth(moves, true, "distance around the alphabet");
+        } else {
+            planner.addNote("the start has characters outside A to Z, which can turn without end");
         }
+        if (startLetters && start.length() <= StringsStateSpace.MAX_LENGTH) {
+            long size = new StringsStateSpace(start.length(), finish).size();
+            if (BitsetSolver.memoryNeeded(size) <= Runtime.getRuntime().maxMemory() / 2) {
+                planner.addAlternative("bitset", "breadth first search with a bit per string, optimal, "
+                        + (BitsetSolver.memoryNeeded(size) >> 20) + " MB");
+            }
+        }
+        return planner.plan();
+    }
+
+    /**
+     * Solves several starts aiming for the same finish string with one backward
+     * search from the finish, shared by all of them.
+     * @param args the start strings followed by the finish string
+     * @param options the radius of the backward search and the node budget of the forward ones
+     */
+    private static void solveAll(String[] args, SolverOptions options) {
+        if (args.length < 2) {
+            System.out.println("Usage: java Strings start... finish --engine=reverse " + SolverOptions.USAGE);
+            return;
+        }
+        String finish = args[args.length - 1];
+        ReverseSearchCache<StringsConfiguration> cache = new ReverseSearchCache<>(
+                new StringsConfiguration(finish, finish), new StringsCodec(finish));
+        options.apply(cache);
+        // every character can be turned into any other, so every string of the length reaches the finish
+        double reaching = Math.pow(Character.MAX_VALUE + 1, finish.length());
+        if (options.radius() == ReverseSearchCache.UNLIMITED_RADIUS && !cache.fits(reaching)) {
+            System.out.println("Finish: " + finish + " is reached from " + String.format("%.3g", reaching)
+                    + " strings, too many to cache, give --radius=moves");
+            return;
+        }
+        SolveOutcome built = cache.build(options.radius());
+        System.out.println("Finish: " + finish + ", cached configs: " + cache.size() + ", radius: " + cache.getRadius());
+        if (built != SolveOutcome.SOLVED) {
+            System.out.println("Backward search: " + SolverOptions.stoppedMessage(built));
+        }
+        for (int i = 0; i < args.length - 1; i++) {
+            System.out.println("Start: " + args[i] + ", Finish: " + finish);
+            SolveOutcome outcome = cache.solve(new StringsConfiguration(args[i], finish));
+            if (outcome == SolveOutcome.SOLVED) {
+                System.out.println("Forward configs: " + cache.getForwardConfigurations());
+                int step = 0;
+                for (StringsConfiguration config : cache.getSolutionPath()) {
+                    System.out.println("Step " + step++ + ": " + config);
+                }
+            } else if (outcome == SolveOutcome.NO_SOLUTION) {
+                System.out.println("No solution");
+            } else {
+                System.out.println(SolverOptions.stoppedMessage(outcome));
+            }
+        }
+    }
+
+    /**
+     * Prints the counts and the steps of a solution.
+     * @param solutionPath the solution steps
+     * @param totalConfigs the number of configurations generated
+     * @param uniqueConfigs the number of distinct configurations seen
+     */
+    private static void printSolution(List<StringsConfiguration> solutionPath, long totalConfigs, long uniqueConfigs) {
+        System.out.println("Total configs: " + totalConfigs);
+        System.out.println("Unique configs: " + uniqueConfigs);
+        int step = 0;
+        for (StringsConfiguration config : solutionPath) {
+            System.out.println("Step " + step + ": " + config.getString());
+            step++;
+        }
+    }
+
+    /**
+     * Builds the puzzle from the start and finish strings, for the workers of a distributed search.
+     * @param args the start and finish strings
+     * @return the puzzle's initial configuration and codec
+     */
+    @Override
+    public Puzzle create(String[] args) {
+        return new Puzzle(new StringsConfiguration(args[0], args[1]), new StringsCodec(args[1]));
     }
 }
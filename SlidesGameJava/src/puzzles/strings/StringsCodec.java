@@ -0,0 +1,61 @@
+package puzzles.strings;
+
+import puzzles.common.solver.ConfigurationCodec;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of a StringsConfiguration: the length of the current string
+ * followed by its characters. The finish string is held by the codec.
+ */
+public class StringsCodec implements ConfigurationCodec<StringsConfiguration> {
+
+    /** The finish string shared by every configuration of the solve. */
+    private final String finish;
+
+    /**
+     * Creates a codec for configurations that aim for the given finish string.
+     * @param finish the finish string
+     */
+    public StringsCodec(String finish) {
+        this.finish = finish;
+    }
+
+    /**
+     * Gives the encoded size of a configuration.
+     * @param config the configuration to measure
+     * @return the size in bytes
+     */
+    @Override
+    public int encodedSize(StringsConfiguration config) {
+        return 2 + 2 * config.getString().length();
+    }
+
+    /**
+     * Writes a configuration into the buffer.
+     * @param config the configuration to write
+     * @param out the buffer to write into
+     */
+    @Override
+    public void encode(StringsConfiguration config, ByteBuffer out) {
+        String string = config.getString();
+        out.putShort((short) string.length());
+        for (int i = 0; i < string.length(); i++) {
+            out.putChar(string.charAt(i));
+        }
+    }
+
+    /**
+     * Reads a configuration from the buffer.
+     * @param in the buffer to read from
+     * @return the decoded configuration
+     */
+    @Override
+    public StringsConfiguration decode(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.getChar();
+        }
+        return new StringsConfiguration(new String(chars), finish);
+    }
+}
@@ -1,14 +1,20 @@
 package puzzles.strings;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import puzzles.common.solver.Configuration;
+import puzzles.common.solver.ReversibleConfiguration;
 
 /**
  * The Strings Configuration class represents config of Strings puzzle.
  * Contains a string and provides methods to check if it is a solution, generate its neighbors.
+ * A configuration made by a change remembers it. Changes to different positions
+ * commute, so a search only needs to change positions in order, and never needs
+ * the change that undoes the last one.
  */
-public class StringsConfiguration implements Configuration {
+public class StringsConfiguration implements ReversibleConfiguration {
 
     /**The string representing the current state in the strings puzzle.*/
     private String string;
@@ -16,6 +22,12 @@ public class StringsConfiguration implements Configuration {
     /**The string representing the target or finish in the strings puzzle.*/
     private String FinishedString;
 
+    /** The change that made this configuration, numbered as in neighborIterator, -1 if not made by a change. */
+    private final int lastChange;
+
+    /** The change that turns this configuration back into the one it was made from, -1 if none does. */
+    private final int undoChange;
+
     /**
      * Gets the current string config.
      * @return the current string
@@ -30,8 +42,21 @@ public class StringsConfiguration implements Configuration {
      * @param FinishedString the finish string
      */
     public StringsConfiguration(String string, String FinishedString) {
+        this(string, FinishedString, -1, -1);
+    }
+
+    /**
+     * Constructs the configuration made by a change.
+     * @param string the changed string
+     * @param FinishedString the finish string
+     * @param lastChange the change that was made
+     * @param undoChange the change that undoes it, -1 if none does
+     */
+    private StringsConfiguration(String string, String FinishedString, int lastChange, int undoChange) {
         this.string = string;
         this.FinishedString = FinishedString;
+        this.lastChange = lastChange;
+        this.undoChange = undoChange;
     }
 
     /**
@@ -49,20 +74,101 @@ public class StringsConfiguration implements Configuration {
      */
     @Override
     public Collection<Configuration> getNeighbors() {
-        List<Configuration> neighbors = new ArrayList<>();
-        // neighbors by moving chars
+        List<Configuration> neighbors = new ArrayList<>(2 * string.length());
+        neighborIterator().forEachRemaining(neighbors::add);
+        return neighbors;
+    }
+
+    /**
+     * Makes the neighboring configs one at a time: for each position the string
+     * with the next character there, then the one with the previous character.
+     * @return an iterator over the neighboring configurations
+     */
+    @Override
+    public Iterator<Configuration> neighborIterator() {
+        return changes(0, -1);
+    }
+
+    /**
+     * Makes the neighboring configs as neighborIterator does, but starts at the
+     * position of the last change and leaves out the change that undoes it.
+     * Any other order of the same changes gives the same string in as many moves.
+     * @return an iterator over the neighbors worth searching
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        return lastChange < 0 ? neighborIterator() : changes(lastChange / 2 * 2, undoChange);
+    }
+
+    /**
+     * Makes the changes from one on, one at a time, leaving one out.
+     * @param first the first change to make
+     * @param skipped the change to leave out, -1 for none
+     * @return an iterator over the changed configurations
+     */
+    private Iterator<Configuration> changes(int first, int skipped) {
+        return new Iterator<>() {
+
+            /** Twice the position of the next change, plus one for the previous character. */
+            private int change = first == skipped ? first + 1 : first;
+
+            @Override
+            public boolean hasNext() {
+                return change < 2 * string.length();
+            }
+
+            @Override
+            public Configuration next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int made = change;
+                int i = made / 2;
+                char currentChar = string.charAt(i);
+                boolean forward = made % 2 == 0;
+                char newChar = forward ? getNextCharacter(currentChar) : getPreviousCharacter(currentChar);
+                change++;
+                if (change == skipped) {
+                    change++;
+                }
+                char[] chars = string.toCharArray();
+                chars[i] = newChar;
+                // the changes are not inverses next to the wrap from Z to A, as for '[' and '@'
+                char undone = forward ? getPreviousCharacter(newChar) : getNextCharacter(newChar);
+                return new StringsConfiguration(new String(chars), FinishedString, made,
+                        undone == currentChar ? made ^ 1 : -1);
+            }
+        };
+    }
+
+    /**
+     * Generates the configurations that reach this one in one move: for each position
+     * the strings with a character there whose next or previous character is the
+     * current one. Next to the wrap from Z to A these are not the neighbors, as '@'
+     * turns into 'A' but 'A' never turns into '@'.
+     * @return a collection of predecessor configurations
+     */
+    @Override
+    public Collection<Configuration> getPredecessors() {
+        List<Configuration> predecessors = new ArrayList<>();
         for (int i = 0; i < string.length(); i++) {
             char currentChar = string.charAt(i);
-            char nextChar = getNextCharacter(currentChar);
-            char prevChar = getPreviousCharacter(currentChar);
-            // make new strings by replacing position
-            String nextString = string.substring(0, i) + nextChar + string.substring(i + 1);
-            String prevString = string.substring(0, i) + prevChar + string.substring(i + 1);
-            //neigbors as configuration.
-            neighbors.add(new StringsConfiguration(nextString, FinishedString));
-            neighbors.add(new StringsConfiguration(prevString, FinishedString));
+            char[] candidates = {(char) (currentChar - 1), (char) (currentChar + 1), 'A', 'Z'};
+            for (int c = 0; c < candidates.length; c++) {
+                char candidate = candidates[c];
+                boolean repeated = false;
+                for (int earlier = 0; earlier < c; earlier++) {
+                    repeated |= candidates[earlier] == candidate;
+                }
+                if (!repeated && (getNextCharacter(candidate) == currentChar
+                        || getPreviousCharacter(candidate) == currentChar)) {
+                    char[] chars = string.toCharArray();
+                    chars[i] = candidate;
+                    predecessors.add(new StringsConfiguration(new String(chars), FinishedString));
+                }
+            }
         }
-        return neighbors;
+        return predecessors;
     }
 
     /**
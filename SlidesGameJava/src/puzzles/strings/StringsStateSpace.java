@@ -0,0 +1,147 @@
+package puzzles.strings;
+
+import puzzles.common.solver.RankedStateSpace;
+
+/**
+ * Ranks the strings of A to Z of one length as numbers in base 26, the first
+ * character the most significant digit. Letters only turn into letters, so a
+ * start of letters never leaves the space. The finish string is held by the space.
+ */
+public class StringsStateSpace implements RankedStateSpace<StringsConfiguration> {
+
+    /** Number of letters, the base of the ranks. */
+    private static final int LETTERS = 26;
+
+    /** Longest string whose ranks fit in a long. */
+    public static final int MAX_LENGTH = 13;
+
+    /** The finish string shared by every configuration of the solve. */
+    private final String finish;
+
+    /** Length of the strings. */
+    private final int length;
+
+    /** place[i] is 26 to the power of the number of characters after position i. */
+    private final long[] place;
+
+    /** Rank of the finish string, -1 if it is not in the space. */
+    private final long finishRank;
+
+    /**
+     * Creates the space of the strings of a length that aim for a finish string.
+     * @param length the length of the strings
+     * @param finish the finish string
+     * @throws IllegalArgumentException if the length is not from 1 to MAX_LENGTH
+     */
+    public StringsStateSpace(int length, String finish) {
+        if (length < 1 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Strings of length " + length + " cannot be ranked, at most "
+                    + MAX_LENGTH + " characters");
+        }
+        this.finish = finish;
+        this.length = length;
+        this.place = new long[length];
+        long power = 1;
+        for (int i = length - 1; i >= 0; i--) {
+            place[i] = power;
+            power *= LETTERS;
+        }
+        this.finishRank = isLetters(finish) && finish.length() == length ? rank(finish) : -1;
+    }
+
+    /**
+     * Checks whether a string has only the letters A to Z.
+     * @param string the string
+     * @return true if every character is a letter from A to Z
+     */
+    public static boolean isLetters(String string) {
+        return string.chars().allMatch(ch -> ch >= 'A' && ch <= 'Z');
+    }
+
+    /**
+     * Gives the number of strings of the length, 26^length.
+     * @return the size of the space
+     */
+    @Override
+    public long size() {
+        return place[0] * LETTERS;
+    }
+
+    /**
+     * Gives the rank of a configuration's string.
+     * @param config the configuration
+     * @return its rank
+     */
+    @Override
+    public long rank(StringsConfiguration config) {
+        String string = config.getString();
+        if (string.length() != length || !isLetters(string)) {
+            throw new IllegalArgumentException("'" + string + "' is not " + length + " letters from A to Z");
+        }
+        return rank(string);
+    }
+
+    /**
+     * Gives the rank of a string of letters.
+     * @param string the string, length letters from A to Z
+     * @return its rank
+     */
+    private long rank(String string) {
+        long rank = 0;
+        for (int i = 0; i < length; i++) {
+            rank = rank * LETTERS + (string.charAt(i) - 'A');
+        }
+        return rank;
+    }
+
+    /**
+     * Builds the configuration of a rank.
+     * @param rank the rank
+     * @return the configuration
+     */
+    @Override
+    public StringsConfiguration unrank(long rank) {
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('A' + rank % LETTERS);
+            rank /= LETTERS;
+        }
+        return new StringsConfiguration(new String(chars), finish);
+    }
+
+    /**
+     * Checks whether a rank is the finish string's.
+     * @param rank the rank
+     * @return true if it is the finish string
+     */
+    @Override
+    public boolean isSolution(long rank) {
+        return rank == finishRank;
+    }
+
+    /**
+     * Gives the number of neighbors of every string, two per position.
+     * @return twice the length
+     */
+    @Override
+    public int maxNeighbors() {
+        return 2 * length;
+    }
+
+    /**
+     * Makes an expander that turns each position to the next letter, then to the
+     * previous one, wrapping from Z to A, as StringsConfiguration does.
+     * @return the expander
+     */
+    @Override
+    public Expander expander() {
+        return (rank, neighbors) -> {
+            for (int i = 0; i < length; i++) {
+                long digit = rank / place[i] % LETTERS;
+                neighbors[2 * i] = digit == LETTERS - 1 ? rank - digit * place[i] : rank + place[i];
+                neighbors[2 * i + 1] = digit == 0 ? rank + (LETTERS - 1) * place[i] : rank - place[i];
+            }
+            return 2 * length;
+        };
+    }
+}